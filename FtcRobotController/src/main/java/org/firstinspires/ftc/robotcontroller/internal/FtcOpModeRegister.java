@@ -35,6 +35,7 @@ import com.google.blocks.ftcrobotcontroller.runtime.BlocksOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;
 import com.qualcomm.robotcore.eventloop.opmode.OpModeRegister;
 import com.qualcomm.robotcore.eventloop.opmode.AnnotatedOpModeRegistrar;
+import com.qualcomm.robotcore.util.RobotLog;
 import org.firstinspires.ftc.robotcontroller.external.samples.ConceptNullOp;
 
 /**
@@ -43,6 +44,17 @@ import org.firstinspires.ftc.robotcontroller.external.samples.ConceptNullOp;
  */
 public class FtcOpModeRegister implements OpModeRegister {
 
+    public static final String TAG = "FtcOpModeRegister";
+
+    /**
+     * Registration tables written at compile time by OpModeProcessor, one per module. They are
+     * looked up by name as TeamCode builds on top of this module.
+     */
+    static final String[] OPMODE_TABLES = {
+            "org.firstinspires.ftc.robotcontroller.internal.SampleOpModes",
+            "org.firstinspires.ftc.teamcode.TeamOpModes"
+    };
+
     /**
      * {@link #register(OpModeManager)} is called by the SDK game in order to register
      * OpMode classes or instances that will participate in an FTC game.
@@ -63,6 +75,7 @@ public class FtcOpModeRegister implements OpModeRegister {
      * @see com.qualcomm.robotcore.eventloop.opmode.Autonomous
      */
     public void register(OpModeManager manager) {
+        int span = StartupTrace.begin("registerOpModes");
 
         /**
          * Register OpModes implemented in the Blocks visual programming language.
@@ -70,12 +83,56 @@ public class FtcOpModeRegister implements OpModeRegister {
         BlocksOpMode.registerAll(manager);
 
         /**
-         * Register OpModes that use the annotation-based registration mechanism.
+         * Register OpModes that use the annotation-based registration mechanism.  The tables
+         * the build made from the annotations save checking every class in the app for OpModes
+         * during the class scan; if one is missing the scan looks for them and we use that.
          */
-        AnnotatedOpModeRegistrar.register(manager);
+        if (!registerTables(manager)) {
+            AnnotatedOpModeRegistrar.register(manager);
+        }
 
         /**
          * Any manual OpMode class registrations should go here.
          */
+
+        StartupTrace.end(span);
+    }
+
+    /**
+     * @return true if the build made every table, so the class scan doesn't need to look for
+     * OpModes
+     */
+    static boolean tablesPresent() {
+        for (String table : OPMODE_TABLES) {
+            try {
+                Class.forName(table);
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Register from the compile time tables.  All of them are loaded before any registers so a
+     * missing one can't leave us half registered when we fall back to the scan.
+     *
+     * @return true if every table was there and has registered
+     */
+    boolean registerTables(OpModeManager manager) {
+        OpModeRegister[] tables = new OpModeRegister[OPMODE_TABLES.length];
+        for (int i = 0; i < OPMODE_TABLES.length; i++) {
+            try {
+                tables[i] = (OpModeRegister) Class.forName(OPMODE_TABLES[i]).newInstance();
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+                RobotLog.ww(TAG, "OpMode table %s not found, scanning for OpModes: %s", OPMODE_TABLES[i], e.toString());
+                return false;
+            }
+        }
+        for (OpModeRegister table : tables) {
+            table.register(manager);
+        }
+        RobotLog.vv(TAG, "registered OpModes from %d compile time tables", tables.length);
+        return true;
     }
 }
@@ -61,7 +61,6 @@ import com.google.blocks.ftcrobotcontroller.ProgrammingModeActivity;
 import com.google.blocks.ftcrobotcontroller.ProgrammingModeControllerImpl;
 import com.google.blocks.ftcrobotcontroller.runtime.BlocksOpMode;
 import com.qualcomm.ftccommon.AboutActivity;
-import com.qualcomm.ftccommon.ClassManagerFactory;
 import com.qualcomm.ftccommon.Device;
 import com.qualcomm.ftccommon.FtcEventLoop;
 import com.qualcomm.ftccommon.FtcEventLoopIdle;
@@ -77,11 +76,18 @@ import com.qualcomm.ftccommon.configuration.EditParameters;
 import com.qualcomm.ftccommon.configuration.FtcLoadFileActivity;
 import com.qualcomm.ftccommon.configuration.RobotConfigFile;
 import com.qualcomm.ftccommon.configuration.RobotConfigFileManager;
+import com.qualcomm.ftccommon.configuration.RobotConfigResFilter;
 import com.qualcomm.ftcrobotcontroller.R;
 import com.qualcomm.hardware.HardwareFactory;
+import com.qualcomm.robotcore.eventloop.EventLoopManager;
+import com.qualcomm.robotcore.eventloop.opmode.AnnotatedOpModeRegistrar;
 import com.qualcomm.robotcore.eventloop.opmode.OpModeRegister;
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+import com.qualcomm.robotcore.hardware.configuration.UserSensorTypeManager;
 import com.qualcomm.robotcore.hardware.configuration.Utility;
 import com.qualcomm.robotcore.robocol.PeerAppRobotController;
+import com.qualcomm.robotcore.util.ClassManager;
 import com.qualcomm.robotcore.util.Dimmer;
 import com.qualcomm.robotcore.util.ImmersiveMode;
 import com.qualcomm.robotcore.util.ReadWriteFile;
@@ -94,6 +100,7 @@ import org.firstinspires.ftc.robotcore.internal.AppUtil;
 import org.firstinspires.inspection.RcInspectionActivity;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -136,6 +143,10 @@ public class FtcRobotControllerActivity extends Activity {
   protected FtcEventLoop eventLoop;
   protected Queue<UsbDevice> receivedUsbAttachmentNotifications;
 
+  // Start up trace spans that end in a callback
+  protected int bindSpan = -1;
+  protected int setupSpan = -1;
+
   protected class RobotRestarter implements Restarter {
 
     public void requestRestart() {
@@ -195,6 +206,8 @@ public class FtcRobotControllerActivity extends Activity {
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
+    StartupTrace.setFolder(new File(AppUtil.FIRST_FOLDER, StartupTrace.FOLDER_NAME));
+    int span = StartupTrace.begin("onCreate");
     super.onCreate(savedInstanceState);
     RobotLog.writeLogcatToDisk();
     RobotLog.vv(TAG, "onCreate()");
@@ -219,7 +232,9 @@ public class FtcRobotControllerActivity extends Activity {
 
     BlocksOpMode.setActivityAndWebView(this, (WebView) findViewById(R.id.webViewBlocksRuntime));
 
-    ClassManagerFactory.processClasses();
+    int classesSpan = StartupTrace.begin("processClasses");
+    processClasses();
+    StartupTrace.end(classesSpan);
     cfgFileMgr = new RobotConfigFileManager(this);
 
     // Clean up 'dirty' status after a possible crash
@@ -259,6 +274,7 @@ public class FtcRobotControllerActivity extends Activity {
     callback.networkConnectionUpdate(WifiDirectAssistant.Event.DISCONNECTED);
     readNetworkType(NETWORK_TYPE_FILENAME);
     bindToService();
+    StartupTrace.end(span);
   }
 
   protected UpdateUI createUpdateUI() {
@@ -332,6 +348,7 @@ public class FtcRobotControllerActivity extends Activity {
 
   protected void bindToService() {
     readNetworkType(NETWORK_TYPE_FILENAME);
+    bindSpan = StartupTrace.begin("bindToService");
     Intent intent = new Intent(this, FtcRobotControllerService.class);
     intent.putExtra(NetworkConnectionFactory.NETWORK_CONNECTION_TYPE, networkType);
     bindService(intent, connection, Context.BIND_AUTO_CREATE);
@@ -348,6 +365,7 @@ public class FtcRobotControllerActivity extends Activity {
   }
 
   protected void readNetworkType(String fileName) {
+    int span = StartupTrace.begin("readNetworkType");
     NetworkType defaultNetworkType;
     File directory = RobotConfigFileManager.CONFIG_FILES_DIR;
     File networkTypeFile = new File(directory, fileName);
@@ -369,6 +387,7 @@ public class FtcRobotControllerActivity extends Activity {
     SharedPreferences.Editor editor = preferences.edit();
     editor.putString(NetworkConnectionFactory.NETWORK_CONNECTION_TYPE, networkType.toString());
     editor.commit();
+    StartupTrace.end(span);
   }
 
   private String readFile(File file) {
@@ -476,6 +495,7 @@ public class FtcRobotControllerActivity extends Activity {
 
   public void onServiceBind(FtcRobotControllerService service) {
     RobotLog.vv(FtcRobotControllerService.TAG, "%s.controllerService=bound", TAG);
+    StartupTrace.end(bindSpan);
     controllerService = service;
     updateUI.setControllerService(controllerService);
 
@@ -492,10 +512,11 @@ public class FtcRobotControllerActivity extends Activity {
 
   private void requestRobotSetup() {
     if (controllerService == null) return;
+    int span = StartupTrace.begin("requestRobotSetup");
 
     HardwareFactory factory;
     RobotConfigFile file = cfgFileMgr.getActiveConfigAndUpdateUI();
-    HardwareFactory hardwareFactory = new HardwareFactory(context);
+    HardwareFactory hardwareFactory = new TracedHardwareFactory(context);
     try {
       hardwareFactory.setXmlPullParser(file.getXml());
     } catch (Resources.NotFoundException e) {
@@ -505,13 +526,69 @@ public class FtcRobotControllerActivity extends Activity {
     }
     factory = hardwareFactory;
 
-    eventLoop = new FtcEventLoop(factory, createOpModeRegister(), callback, this, programmingModeController);
+    eventLoop = new FtcEventLoop(factory, createOpModeRegister(), callback, this, programmingModeController) {
+      @Override
+      public void init(EventLoopManager eventLoopManager) throws RobotCoreException, InterruptedException {
+        // Robot setup runs this on the service's thread -- the end of start up
+        int initSpan = StartupTrace.begin("eventLoop.init");
+        try {
+          super.init(eventLoopManager);
+        } finally {
+          StartupTrace.end(initSpan);
+          StartupTrace.end(setupSpan);
+          StartupTrace.flush();
+        }
+      }
+    };
     FtcEventLoopIdle idleLoop = new FtcEventLoopIdle(factory, callback, this, programmingModeController);
 
     controllerService.setCallback(callback);
+    setupSpan = StartupTrace.begin("setupRobot");
     controllerService.setupRobot(eventLoop, idleLoop);
 
     passReceivedUsbAttachmentsToEventLoop();
+    StartupTrace.end(span);
+  }
+
+  /**
+   * Hardware factory that traces how long it takes to find and open all the hardware
+   */
+  protected static class TracedHardwareFactory extends HardwareFactory {
+    public TracedHardwareFactory(Context context) {
+      super(context);
+    }
+
+    @Override
+    public HardwareMap createHardwareMap(EventLoopManager manager) throws RobotCoreException, InterruptedException {
+      int span = StartupTrace.begin("createHardwareMap");
+      try {
+        return super.createHardwareMap(manager);
+      } finally {
+        StartupTrace.end(span);
+      }
+    }
+  }
+
+  /**
+   * ClassManagerFactory.processClasses(), but OpModes are only looked for in the scan if the
+   * build didn't make OpMode tables for FtcOpModeRegister.  The scan itself still has to run for
+   * the robot config and user sensor types.
+   */
+  protected void processClasses() {
+    try {
+      ClassManager classManager = new ClassManager();
+      classManager.registerFilter(new RobotConfigResFilter(RobotConfigFileManager.getRobotConfigTypeAttribute(),
+          RobotConfigFileManager.getXmlResourceIds()));
+      classManager.registerFilter(new RobotConfigResFilter(RobotConfigFileManager.getRobotConfigTemplateAttribute(),
+          RobotConfigFileManager.getXmlResourceTemplateIds()));
+      if (!FtcOpModeRegister.tablesPresent()) {
+        classManager.registerFilter(new AnnotatedOpModeRegistrar());
+      }
+      classManager.registerFilter(UserSensorTypeManager.getInstance());
+      classManager.processAllClasses();
+    } catch (IOException e) {
+      RobotLog.logStacktrace(e);
+    }
   }
 
   protected OpModeRegister createOpModeRegister() {
@@ -524,7 +601,10 @@ public class FtcRobotControllerActivity extends Activity {
   }
 
   private void requestRobotRestart() {
+    StartupTrace.restart("restart");
+    int span = StartupTrace.begin("requestRobotShutdown");
     requestRobotShutdown();
+    StartupTrace.end(span);
     requestRobotSetup();
   }
 
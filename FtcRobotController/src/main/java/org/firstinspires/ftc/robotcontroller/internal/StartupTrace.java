@@ -0,0 +1,282 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.robotcontroller.internal;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing of the robot controller start up, written out as a Chrome trace so it can be looked at
+ * in chrome://tracing or https://ui.perfetto.dev.
+ *
+ * Each phase is a span:
+ *
+ *   int span = StartupTrace.begin("readNetworkType");
+ *   ...
+ *   StartupTrace.end(span);
+ *
+ * A span can end on a different thread from the one it began on, e.g. binding to the service
+ * ends in the connection callback. Spans go in fixed size arrays so tracing costs next to
+ * nothing, and once they are full any more are dropped.
+ *
+ * A trace starts when the app starts and again on every robot restart. Each OpMode INIT starts
+ * its own too, so OpMode spans don't pile up in the start up trace. flush() writes the current
+ * trace to FIRST/DM10337/startup-&lt;time&gt;.json, or init-&lt;time&gt;.json for an OpMode INIT,
+ * rewriting the same file if more spans come in. Each kind keeps its own MAX_FILES, so a day of
+ * INITs can't push out the start up traces. OpMode code uses flushInBackground() so INIT doesn't wait on the file. Nothing is written
+ * until the activity sets the folder, so code that runs off the phone can be traced for free.
+ */
+public class StartupTrace {
+
+  public static final String TAG = "StartupTrace";
+  public static final int MAX_SPANS = 256;
+  public static final int MAX_FILES = 20;             // Oldest traces are deleted past this
+  public static final String FILE_PREFIX = "startup-";
+  public static final String INIT_PREFIX = "init-";   // OpMode INIT traces
+  public static final String FILE_EXTENSION = ".json";
+  public static final String FOLDER_NAME = "DM10337";   // Under the FIRST folder, with our other logs
+
+  static final Object lock = new Object();
+
+  /* Spans of the current trace */
+  static String[] names = new String[MAX_SPANS];
+  static long[] starts = new long[MAX_SPANS];
+  static long[] ends = new long[MAX_SPANS];           // 0 until the span ends
+  static long[] threadIds = new long[MAX_SPANS];
+  static String[] threadNames = new String[MAX_SPANS];
+  static int count = 0;
+  static int dropped = 0;
+  static int generation = 0;                          // Bumped on restart so old spans can't end new ones
+
+  static long origin = System.nanoTime();
+  static String traceName = "start";
+  static String prefix = FILE_PREFIX;
+  static File folder = null;
+  static File file = null;
+
+  /**
+   * Where to write traces. Until this is called flush() does nothing.
+   */
+  public static void setFolder(File traceFolder) {
+    synchronized (lock) {
+      folder = traceFolder;
+    }
+  }
+
+  /**
+   * Throw away the current trace and start a new one, e.g. for a robot restart
+   *
+   * @param name  What started it, for the trace
+   */
+  public static void restart(String name) {
+    restart(name, FILE_PREFIX);
+  }
+
+  /**
+   * Throw away the current trace and start a new one written to its own kind of file
+   *
+   * @param name        What started it, for the trace
+   * @param filePrefix  FILE_PREFIX or INIT_PREFIX
+   */
+  public static void restart(String name, String filePrefix) {
+    synchronized (lock) {
+      Arrays.fill(names, null);
+      Arrays.fill(threadNames, null);
+      count = 0;
+      dropped = 0;
+      origin = System.nanoTime();
+      traceName = name;
+      prefix = filePrefix;
+      file = null;
+      generation++;
+    }
+  }
+
+  /**
+   * Start a span
+   *
+   * @param name  Phase name
+   * @return      Span to pass to end(), -1 if the trace is full
+   */
+  public static int begin(String name) {
+    long now = System.nanoTime();
+    Thread thread = Thread.currentThread();
+    synchronized (lock) {
+      if (count >= MAX_SPANS) {
+        dropped++;
+        return -1;
+      }
+      int span = count++;
+      names[span] = name;
+      starts[span] = now;
+      ends[span] = 0;
+      threadIds[span] = thread.getId();
+      threadNames[span] = thread.getName();
+      return generation * MAX_SPANS + span;
+    }
+  }
+
+  /**
+   * End a span. Does nothing for -1, or a span from before the last restart.
+   *
+   * @param span  From begin()
+   */
+  public static void end(int span) {
+    long now = System.nanoTime();
+    synchronized (lock) {
+      if (span < 0 || span / MAX_SPANS != generation) return;
+      span %= MAX_SPANS;
+      if (span >= count || ends[span] != 0) return;
+      ends[span] = now;
+    }
+  }
+
+  /**
+   * Write the current trace out, if we have a folder. Safe to call from any thread; errors are
+   * only logged as the trace is never worth failing start up for.
+   */
+  public static void flush() {
+    synchronized (lock) {
+      if (folder == null || count == 0) return;
+      try {
+        if (file == null) {
+          folder.mkdirs();
+          file = new File(folder, prefix + System.currentTimeMillis() + FILE_EXTENSION);
+          prune(prefix);
+        }
+        write(file);
+      } catch (IOException e) {
+        RobotLog.ww(TAG, "could not write %s: %s", file, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * flush() on its own thread, for callers that shouldn't wait on the file, like OpMode INIT
+   */
+  public static void flushInBackground() {
+    synchronized (lock) {
+      if (folder == null || count == 0) return;
+    }
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, "StartupTrace flush");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Write the spans as Chrome trace events. Spans still open are written up to now.
+   */
+  static void write(File out) throws IOException {
+    long now = System.nanoTime();
+    PrintWriter writer = new PrintWriter(new FileWriter(out));
+    try {
+      writer.println("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"trace\":" + quote(traceName)
+          + ",\"dropped\":" + dropped + "},\"traceEvents\":[");
+      for (int i = 0; i < count; i++) {
+        boolean open = (ends[i] == 0);
+        writer.print(String.format(Locale.US,
+            "{\"name\":%s,\"cat\":\"startup\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,\"ts\":%.1f,\"dur\":%.1f%s},",
+            quote(names[i]), threadIds[i], (starts[i] - origin) / 1000.0,
+            ((open ? now : ends[i]) - starts[i]) / 1000.0, open ? ",\"args\":{\"open\":true}" : ""));
+        writer.println();
+      }
+
+      // Name each thread once
+      for (int i = 0; i < count; i++) {
+        boolean first = true;
+        for (int j = 0; j < i; j++) {
+          if (threadIds[j] == threadIds[i]) first = false;
+        }
+        if (!first) continue;
+        writer.println(String.format(Locale.US,
+            "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":%s}},",
+            threadIds[i], quote(threadNames[i])));
+      }
+      writer.println("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"tid\":0,\"args\":{\"name\":\"Robot Controller\"}}");
+      writer.println("]}");
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Delete the oldest trace files of one kind so there are at most MAX_FILES with the new one
+   *
+   * @param filePrefix  Kind of trace to prune
+   */
+  static void prune(String filePrefix) {
+    File[] traces = folder.listFiles();
+    if (traces == null) return;
+    String[] found = new String[traces.length];
+    int n = 0;
+    for (File trace : traces) {
+      String name = trace.getName();
+      if (name.startsWith(filePrefix) && name.endsWith(FILE_EXTENSION)) found[n++] = name;
+    }
+    Arrays.sort(found, 0, n);     // Names end in the time so this is oldest first
+    for (int i = 0; i < n - (MAX_FILES - 1); i++) {
+      new File(folder, found[i]).delete();
+    }
+  }
+
+  /**
+   * @return  JSON string literal
+   */
+  static String quote(String value) {
+    StringBuilder out = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < 0x20) {
+        out.append(String.format(Locale.US, "\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    return out.append('"').toString();
+  }
+}
@@ -0,0 +1,344 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.opmodeprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that writes the OpMode registration table for a module at compile time.
+ *
+ * Without it the robot controller finds OpModes by loading every class in the dex and looking
+ * for @TeleOp and @Autonomous, on every app start and robot restart.  This does the same search
+ * over the source while javac has it anyway and writes one class that registers them all:
+ *
+ *      public final class TeamOpModes implements OpModeRegister {
+ *          public void register(OpModeManager manager) {
+ *              manager.register(new OpModeMeta("1. Auto Blue 100", OpModeMeta.Flavor.AUTONOMOUS, "1.BEACONS"),
+ *                      org.firstinspires.ftc.teamcode.Auto100Blue.class);
+ *              ...
+ *
+ * FtcOpModeRegister creates the tables by name and calls them.  The rules are the ones the SDK
+ * scan uses -- @Disabled classes are left out, a blank name means the class name and a blank
+ * group the default group, and static @OpModeRegistrar methods are called -- but a class the
+ * scan would reject at run time (not public, not an OpMode, both TeleOp and Autonomous, no
+ * public no argument constructor) is a compile error here instead.
+ *
+ * The class to write is set per module in build.gradle:
+ *
+ *      javaCompileOptions.annotationProcessorOptions.arguments = [opModeTable: 'org.firstinspires.ftc.teamcode.TeamOpModes']
+ */
+@SupportedAnnotationTypes({
+        OpModeProcessor.TELEOP, OpModeProcessor.AUTONOMOUS, OpModeProcessor.OPMODE_REGISTRAR})
+@SupportedOptions(OpModeProcessor.TABLE_OPTION)
+public class OpModeProcessor extends AbstractProcessor {
+
+    // SDK names -- by name so this doesn't need the SDK to build
+    final static String TELEOP = "com.qualcomm.robotcore.eventloop.opmode.TeleOp";
+    final static String AUTONOMOUS = "com.qualcomm.robotcore.eventloop.opmode.Autonomous";
+    final static String DISABLED = "com.qualcomm.robotcore.eventloop.opmode.Disabled";
+    final static String OPMODE_REGISTRAR = "com.qualcomm.robotcore.eventloop.opmode.OpModeRegistrar";
+    final static String OPMODE = "com.qualcomm.robotcore.eventloop.opmode.OpMode";
+    final static String OPMODE_MANAGER = "com.qualcomm.robotcore.eventloop.opmode.OpModeManager";
+    final static String CONTEXT = "android.content.Context";
+
+    // Processor option with the full name of the class to write
+    final static String TABLE_OPTION = "opModeTable";
+
+    /* One registration line per OpMode or registrar method, keyed by class for a stable order */
+    Map<String, String> lines = new HashMap<String, String>();
+    Map<String, String> names = new HashMap<String, String>();     // OpMode name -> class, for duplicates
+    boolean written = false;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) return false;
+
+        int before = lines.size();
+        collectOpModes(roundEnv, TELEOP, "TELEOP");
+        collectOpModes(roundEnv, AUTONOMOUS, "AUTONOMOUS");
+        collectRegistrars(roundEnv);
+
+        if (!written) {
+            // Every source file of the module is in the first round, so the table is complete
+            writeTable();
+            written = true;
+        } else if (lines.size() > before) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "OpModes in generated sources can't be added to the OpMode table");
+        }
+        return false;
+    }
+
+    /**
+     * Add every enabled class with one of the OpMode annotations
+     */
+    void collectOpModes(RoundEnvironment roundEnv, String annotationName, String flavor) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(annotationName);
+        if (annotation == null) return;
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@" + annotation.getSimpleName() + " only goes on OpMode classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (findAnnotation(type, TELEOP) != null && findAnnotation(type, AUTONOMOUS) != null) {
+                // Only say so once
+                if (flavor.equals("TELEOP")) {
+                    error(type, "'" + type.getSimpleName() + "' is annotated both as 'TeleOp' and 'Autonomous'; please choose at most one");
+                }
+                continue;
+            }
+            if (findAnnotation(type, DISABLED) != null) continue;
+            if (!checkOpModeClass(type)) continue;
+
+            String name = "";
+            String group = "";
+            AnnotationMirror mirror = findAnnotation(type, annotationName);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value :
+                    processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+                String key = value.getKey().getSimpleName().toString();
+                if (key.equals("name")) name = value.getValue().getValue().toString().trim();
+                if (key.equals("group")) group = value.getValue().getValue().toString().trim();
+            }
+            if (name.length() == 0) name = type.getSimpleName().toString();
+
+            String className = type.getQualifiedName().toString();
+            String other = names.put(name, className);
+            if (other != null && !other.equals(className)) {
+                error(type, "OpMode name \"" + name + "\" is already used by " + other);
+                continue;
+            }
+
+            lines.put(className, "manager.register(new OpModeMeta(" + literal(name) + ", OpModeMeta.Flavor." + flavor + ", "
+                    + (group.length() == 0 ? "OpModeMeta.DefaultGroup" : literal(group)) + "), "
+                    + className + ".class);");
+        }
+    }
+
+    /**
+     * Same checks the SDK makes when it registers an annotated class
+     *
+     * @return  true if it can be registered
+     */
+    boolean checkOpModeClass(TypeElement type) {
+        TypeElement opMode = processingEnv.getElementUtils().getTypeElement(OPMODE);
+        if (opMode != null && !processingEnv.getTypeUtils().isSubtype(type.asType(), opMode.asType())) {
+            error(type, "'" + type.getSimpleName() + "' class doesn't inherit from the class 'OpMode'");
+            return false;
+        }
+        if (!isVisible(type)) {
+            error(type, "'" + type.getSimpleName() + "' class is not declared 'public'");
+            return false;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "'" + type.getSimpleName() + "' class is abstract");
+            return false;
+        }
+        if (type.getEnclosingElement().getKind() != ElementKind.PACKAGE && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "'" + type.getSimpleName() + "' inner class must be static");
+            return false;
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) return true;
+        }
+        error(type, "'" + type.getSimpleName() + "' class needs a public constructor with no arguments");
+        return false;
+    }
+
+    /**
+     * Add a call for every static @OpModeRegistrar method
+     */
+    void collectRegistrars(RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(OPMODE_REGISTRAR);
+        if (annotation == null) return;
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.METHOD) continue;
+            ExecutableElement method = (ExecutableElement) element;
+            TypeElement owner = (TypeElement) method.getEnclosingElement();
+            if (!method.getModifiers().contains(Modifier.STATIC) || !method.getModifiers().contains(Modifier.PUBLIC)
+                    || !isVisible(owner)) {
+                error(method, "@OpModeRegistrar methods must be public static in a public class");
+                continue;
+            }
+
+            List<? extends VariableElement> params = method.getParameters();
+            String call = owner.getQualifiedName() + "." + method.getSimpleName();
+            if (params.size() == 1 && isType(params.get(0).asType(), OPMODE_MANAGER)) {
+                call += "(manager);";
+            } else if (params.size() == 2 && isType(params.get(0).asType(), CONTEXT)
+                    && isType(params.get(1).asType(), OPMODE_MANAGER)) {
+                call += "(org.firstinspires.ftc.robotcore.internal.AppUtil.getInstance().getApplication(), manager);";
+            } else {
+                error(method, "@OpModeRegistrar methods take (OpModeManager) or (Context, OpModeManager)");
+                continue;
+            }
+            lines.put(owner.getQualifiedName() + "#" + method.getSimpleName(), call);
+        }
+    }
+
+    /**
+     * Write the table class
+     */
+    void writeTable() {
+        String table = processingEnv.getOptions().get(TABLE_OPTION);
+        if (table == null || table.length() == 0) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "No " + TABLE_OPTION + " option set -- OpMode table not written, the robot controller will scan for OpModes");
+            return;
+        }
+        int dot = table.lastIndexOf('.');
+        String packageName = (dot < 0) ? "" : table.substring(0, dot);
+        String simpleName = table.substring(dot + 1);
+
+        List<String> keys = new ArrayList<String>(lines.keySet());
+        Collections.sort(keys);
+
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(table).openWriter();
+            PrintWriter out = new PrintWriter(writer);
+            try {
+                if (packageName.length() > 0) {
+                    out.println("package " + packageName + ";");
+                    out.println();
+                }
+                out.println("import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;");
+                out.println("import com.qualcomm.robotcore.eventloop.opmode.OpModeMeta;");
+                out.println("import com.qualcomm.robotcore.eventloop.opmode.OpModeRegister;");
+                out.println();
+                out.println("/**");
+                out.println(" * Written by OpModeProcessor at compile time -- do not edit.");
+                out.println(" * " + keys.size() + " registrations.");
+                out.println(" */");
+                out.println("public final class " + simpleName + " implements OpModeRegister {");
+                out.println();
+                out.println("    @Override");
+                out.println("    public void register(OpModeManager manager) {");
+                for (String key : keys) {
+                    out.println("        " + lines.get(key));
+                }
+                out.println("    }");
+                out.println("}");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write OpMode table " + table + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return  The annotation on an element with this name, null if it isn't there
+     */
+    AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(annotationName)) return mirror;
+        }
+        return null;
+    }
+
+    /**
+     * @return  true if a class and every class around it is public
+     */
+    boolean isVisible(TypeElement type) {
+        Element element = type;
+        while (element.getKind() != ElementKind.PACKAGE) {
+            if (!element.getModifiers().contains(Modifier.PUBLIC)) return false;
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    boolean isType(TypeMirror mirror, String typeName) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(typeName);
+        return type != null && processingEnv.getTypeUtils().isSameType(mirror, type.asType());
+    }
+
+    void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * @return  Java string literal for a value, quotes and all
+     */
+    static String literal(String value) {
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -43,11 +43,14 @@ import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.Range;
 
+import org.firstinspires.ftc.robotcore.external.navigation.Acceleration;
 import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
 import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 
+import java.io.File;
+
 
 /**
  * 100 point autonomous main routine.  It processes both blue and red -- based on the amIBlue method return.
@@ -70,7 +73,7 @@ public class Auto100Blue extends LinearOpMode {
 
     /* Declare OpMode members. */
     HardwareDM         robot   = new HardwareDM ();   // Use a Pushbot's hardware
-    private ElapsedTime     runtime = new ElapsedTime();
+    private ElapsedTime     runtime = new DMTimer();
 
     // These constants define the desired driving/control characteristics
     // The can/should be tweaked to suite the specific robot drive train.
@@ -78,16 +81,15 @@ public class Auto100Blue extends LinearOpMode {
     static final double     DRIVE_SPEED_SLOW        = 0.65;     // Slower speed where required
     static final double     TURN_SPEED              = 0.8;     // Turn speed
 
-    static final double     HEADING_THRESHOLD       = 2 ;      // As tight as we can make it with an integer gyro
     static final double     P_TURN_COEFF            = 0.011;   // Larger is more responsive, but also less accurate
     static final double     P_TURN_COEFF2           = 0.025;
     static final double     P_TURN_COEFF_RED        = 0.0095;
+    static final double     TURN_TIMEOUT            = 3.0;     // Seconds before a turn gives up
     static final double     P_DRIVE_COEFF_1         = 0.03;  // Larger is more responsive, but also less accurate
     static final double     P_DRIVE_COEFF_2         = 0.02;
 
-    // Coeff for doing range sensor driving -- 1.25 degrees per CM off
-    static final double     P_DRIVE_COEFF_3         = 1.25;
-    static final double     RANGE_THRESHOLD         = 1.0;  // OK at +/- 1cm
+    // Range sensor driving -- gains are in WallFollower
+    static final double     DRIVE_SPEED_WALL        = 0.8;  // Damped wall follow holds range at full speed
     static final double     WALL_DISTANCE_1           = 12.0; // 12 cm from wall for beacons
     static final double     WALL_DISTANCE_2           = 11.0;
 
@@ -103,7 +105,16 @@ public class Auto100Blue extends LinearOpMode {
 
     // Variables used for reading Gyro
     Orientation             angles;
-    double                  headingBias = 0.0;            // Gyro heading adjustment
+    GyroBiasEstimator       gyroBias = new GyroBiasEstimator();    // Gyro offset and drift, fitted before start
+
+    // Yaw rate is differenced from the heading over at least RATE_MIN_MS (the IMU fuses at
+    // 100 Hz), and starts over if the last heading is older than RATE_MAX_MS
+    static final double     RATE_MIN_MS             = 20.0;
+    static final double     RATE_MAX_MS             = 200.0;
+    double                  rateHeading = Double.NaN;
+    long                    rateNanos = 0;
+    double                  rate = 0.0;
+    double                  lastAccel = Double.NaN;     // readAccel() this cycle, for the recorder
 
     // Keep track of how far we moved to line up to press beacons
     double distCorrection = 0.0;
@@ -116,6 +127,50 @@ public class Auto100Blue extends LinearOpMode {
     // adaValues is a reference to the adaHSV array.
     final float adaValues[] = adaHSV;
 
+    // Records every control cycle for after match analysis
+    FlightRecorder recorder = new FlightRecorder();
+
+    // Time and accuracy of each step for comparing runs
+    AutoProfile profile = new AutoProfile();
+
+    // Heading control for turns in place
+    TurnController turn = new TurnController();
+
+    // Holds distance from the wall while driving along it
+    WallFollower wall = new WallFollower();
+
+    // Catches wheel slip so moves can launch hard
+    TractionControl traction = new TractionControl(robot.COUNTS_PER_INCH, robot.WHEELBASE_INCHES);
+    static final int        SLIP_TARGET_STEP        = 20;   // Counts of slip before we move a target
+
+    // Beacon picture tracking -- null if there is no Vuforia key in robot.cfg
+    BeaconPoseService       vision = null;
+    VuforiaPoseSource       camera = null;
+    long                    visionUsed = 0;             // Time of the last pose we corrected with
+    int                     visionFixes = 0;
+    static final double     VISION_MAX_AGE_MS       = 300;      // Older poses are no use while moving
+    static final double     VISION_HEADING_GAIN     = 0.5;      // Share of the gyro/camera difference to take out
+    static final double     VISION_MAX_HEADING_FIX  = 2.0;      // Most degrees to fix per pose
+    static final double     ROBOT_HALF_WIDTH_CM     = 9.0 * 2.54;   // Robot middle to range sensor face
+    static final double     BEACON_CAMERA_MAX_AGE_MS = 500;     // Camera beacon colors older than this are no use
+    int                     beaconSensorHalf = BeaconClassifier.RIGHT;  // Half of the picture the color sensor is in front of
+    boolean                 cameraBeaconChecked = false;    // Color sensor has agreed with the camera once
+    boolean                 cameraBeaconWrong = false;      // Color sensor disagreed -- don't trust the camera
+
+    // Keeps the path on the match clock so we always get to park
+    static final double     PLAN_MARGIN             = 0.5;      // Spare seconds at the end
+    AutoPlanner             planner = new AutoPlanner(AutoPlanner.AUTO_PERIOD, PLAN_MARGIN);
+    int                     shootStep;
+    int                     approachStep;
+    int                     redCorrectStep;
+    int                     line1CorrectStep;
+    int                     line1Step;
+    int                     beacon1Step;
+    int                     toBeacon2Step;
+    int                     line2CorrectStep;
+    int                     beacon2Step;
+    int                     parkStep;
+
     /**
      * The main routine of the OpMode.
      *
@@ -123,14 +178,39 @@ public class Auto100Blue extends LinearOpMode {
      */
     @Override
     public void runOpMode() throws InterruptedException {
+        try {
+            runAuto();
+        } finally {
+            // Stop pressed during init lands here too -- don't leave Vuforia running
+            if (vision != null) vision.stop();
+        }
+    }
 
-        int beacon = 0;         // What color beacon do we see
+    /**
+     * Init, wait for start and drive the path
+     *
+     * @throws InterruptedException
+     */
+    void runAuto() throws InterruptedException {
 
         DbgLog.msg("DM10337- Starting Auto 100 init.  We are:" + (amIBlue()?"Blue":"Red"));
 
         // Init the robot hardware -- including gyro and range finder
         robot.init(hardwareMap, true);
 
+        // Start tracking the beacon pictures in the background -- Vuforia takes a while to load.
+        // MatchReplay hands us a recorded pose log instead.
+        String visionKey = robot.config.string(RobotConfig.VUFORIA_KEY);
+        if (vision == null && visionKey.length() > 0) {
+            camera = new VuforiaPoseSource(visionKey);
+            vision = new BeaconPoseService(camera);
+            vision.logTo(new File(FlightRecorder.recordFolder(),
+                    getClass().getSimpleName() + "-" + System.currentTimeMillis() + ".poses.csv"));
+        }
+        if (vision != null) vision.start();
+        beaconSensorHalf = robot.config.string(RobotConfig.VISION_SENSOR_HALF).equalsIgnoreCase("LEFT") ?
+                BeaconClassifier.LEFT : BeaconClassifier.RIGHT;
+
         // And turn on the LED on stripe finder
         robot.stripeColor.enableLed(true);
 
@@ -145,46 +225,98 @@ public class Auto100Blue extends LinearOpMode {
 
         DbgLog.msg("DM10337 -- Drive train encoders reset");
 
+        // Lay out the path with how long each part usually takes
+        setupPlan();
+
         DbgLog.msg("DM10337- Finished Init");
 
-        // Show telemetry for gyro status
-        telemetry.addData("IMU calibrated: ", robot.adaGyro.isSystemCalibrated());
-        telemetry.addData("IMU Gyro calibrated:  ", robot.adaGyro.isGyroCalibrated());
-        telemetry.update();
+        // Show telemetry for gyro status -- rate limited to 2 updates a second
+        TelemetryDM tel = new TelemetryDM(telemetry, 2.0);
+        int imuCalSlot = tel.addBoolean("IMU calibrated: ");
+        int gyroCalSlot = tel.addBoolean("IMU Gyro calibrated:  ");
+        int headingSlot = tel.addDouble("Gyro heading: ", "%.1f");
+        int driftSlot = tel.addDouble("Gyro drift: ", "%.4f");
+        tel.setBoolean(imuCalSlot, robot.adaGyro.isSystemCalibrated());
+        tel.setBoolean(gyroCalSlot, robot.adaGyro.isGyroCalibrated());
+        tel.forceUpdate();
 
         // Wait for the game to start (driver presses PLAY)
 
         // Set a timer of how often to update gyro status telemetry
-        ElapsedTime updateGyroStatTimer = new ElapsedTime();
+        ElapsedTime updateGyroStatTimer = new DMTimer();
         updateGyroStatTimer.reset();
+        ElapsedTime biasSampleTimer = new DMTimer();
         while (!isStarted()) {
+            if (biasSampleTimer.milliseconds() >= GyroBiasEstimator.SAMPLE_MS) {
+                // Sample heading and rate while we sit still to work out the gyro drift
+                double heading = readGyro();
+                gyroBias.sample(heading, gyroRate(heading));
+                biasSampleTimer.reset();
+            }
             if (updateGyroStatTimer.milliseconds() >= 500) {
-                // Update telemetry every 0.5 seconds
-                telemetry.addData("IMU calibrated: ", robot.adaGyro.isSystemCalibrated());
-                telemetry.addData("IMU Gyro calibrated:  ", robot.adaGyro.isGyroCalibrated());
-
-                // Do a gyro read to keep it "fresh"
-                telemetry.addData("Gyro heading: ", readGyro());
-                telemetry.update();
+                // Read gyro status every 0.5 seconds
+                tel.setBoolean(imuCalSlot, robot.adaGyro.isSystemCalibrated());
+                tel.setBoolean(gyroCalSlot, robot.adaGyro.isGyroCalibrated());
+                tel.setDouble(headingSlot, readGyro());
+                tel.setDouble(driftSlot, gyroBias.driftEstimate());
 
                 // And reset the timer
                 updateGyroStatTimer.reset();
             }
+            // Only sends when something changed
+            tel.update();
             idle();
         }
 
         DbgLog.msg("DM10337- Auto Pressed Start");
+        planner.start();
         // Step through each leg of the path,
 
-        // Make sure the gyro is zeroed
+        // No more IMU calibration captures -- they drop the IMU out of fusion mode
+        robot.imuCalibration.pause();
+
+        // Make sure the gyro is zeroed -- and take out the drift we saw while waiting
         zeroGyro();
 
-        DbgLog.msg("DM10337 - Gyro bias set to " + headingBias);
+        DbgLog.msg("DM10337 - Gyro bias set to " + gyroBias.offset() + " drift " + gyroBias.drift());
+
+        // Start recording -- Red and Blue get their own file names
+        recorder.open(getClass().getSimpleName());
+        profile.open(getClass().getSimpleName(), planner);
+
+        try {
+            runPath();
+
+            // And stop
+            robot.intake.setPower(0.0);
+
+            DbgLog.msg("DM10337- Finished last move of auto");
+        } finally {
+            // Stop pressed mid path lands here too -- those are the runs we most want on file
+            recorder.close();
+            if (vision != null) vision.stop();
+            profile.close();
+        }
+        sleep(10000);
+        robot.intake.setPower(0.0);
+
+
 
+        tel.clear();
+        telemetry.addData("Path", "Complete");
+        telemetry.update();
+    }
+
+    /**
+     * Drive the auto path, from just after start until parked
+     *
+     * @throws InterruptedException
+     */
+    void runPath() throws InterruptedException {
 
         // Spin up the shooter
-        robot.lShoot.setPower(robot.SHOOT_DEFAULT);
-        robot.rShoot.setPower(robot.SHOOT_DEFAULT);
+        planner.begin(shootStep);
+        robot.setShootPower(robot.SHOOT_DEFAULT);
 
         // Move forward  to line up for shooting particles
         // Use gyro to hold heading
@@ -192,14 +324,15 @@ public class Auto100Blue extends LinearOpMode {
 
         // Fire the balls
         camDrive(1.0, 3, 50, 1500);
+        planner.end(shootStep);
 
         // Turn towards the beacons using gyro
+        planner.begin(approachStep);
         gyroTurn(TURN_SPEED, amIBlue()?-85.0:85.0, P_TURN_COEFF);
 
         // Stop the shooter
         robot.fire.setPower(0.0);
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
 
         // Reverse the intake to keep any particles or cap balls out of our way
         robot.intake.setPower(-1.0);
@@ -220,23 +353,26 @@ public class Auto100Blue extends LinearOpMode {
 
         if (!amIBlue()) {
             double headingThreshold = getError(180);
-            if (headingThreshold > 2){
+            if (headingThreshold > 2 && planner.begin(redCorrectStep)){
                 gyroTurn(TURN_SPEED, 180, P_TURN_COEFF2);
+                planner.end(redCorrectStep);
             }
         }
         //waitForSwitch();
 
-        // Move slowly to approach 1st beacon -- Slow allows us to be more accurate w/ alignment
+        // Approach 1st beacon along the wall -- the damped wall follow keeps us lined up at speed
         // Autocorrects any heading errors while driving
-        encoderDrive(DRIVE_SPEED_SLOW, amIBlue()?-14.0:35, 5.0, true,
+        encoderDrive(DRIVE_SPEED_WALL, amIBlue()?-14.0:35, 5.0, true,
                 amIBlue()?0.0:180.0, false, true, amIBlue()?WALL_DISTANCE_1:WALL_DISTANCE_2);
+        planner.end(approachStep);
 
 
         //waitForSwitch();
 
         // If heading is more than 5 degrees from target heading after wall follow, robot turns to correct heading
         double headingThreshold = getError(amIBlue()?0:180);
-        if (headingThreshold > 2){
+        boolean correctHeading = headingThreshold > 2 && planner.begin(line1CorrectStep);
+        if (correctHeading){
             gyroTurn(TURN_SPEED, amIBlue()?0:180, P_TURN_COEFF2);
             DbgLog.msg ("DM10337 - adjusted heading before find line1 by " + headingThreshold);
         }
@@ -244,66 +380,35 @@ public class Auto100Blue extends LinearOpMode {
         //waitForSwitch();
 
         // Use line finder to align to white line
-        findLine(amIBlue()?-0.10:0.10, 5.0);
+        planner.begin(line1Step);
+        findLine(amIBlue()?-0.10:0.10, planner.timeout(line1Step, 5.0));
+        planner.end(line1Step);
 
-        if (headingThreshold > 2){
+        if (correctHeading){
             gyroTurn(TURN_SPEED, amIBlue()?0:180, P_TURN_COEFF2);
             DbgLog.msg ("DM10337 - adjusted heading after find line1 by " + headingThreshold);
+            planner.end(line1CorrectStep);
         }
         //waitForSwitch();
         // Wait for beacon color sensor
-        sleep(1000);
-
-        beacon = beaconColor();
-        if (beacon == 1) {
-            // We see blue
-            distCorrection = amIBlue()?1.2:-2.15;
-        } else if (beacon == -1) {
-            // We see red
-            distCorrection = amIBlue()?-1.85:1.1;
-        } else {
-            // We see neither
-            distCorrection = 0;
-        }
-
-        encoderDrive(0.2, distCorrection, 2.5, true,
-                amIBlue()?(0):(180), true);
-
-        if (beacon == 1) {
-            // We see blue
-            distCorrection_2 = amIBlue()?4.5:-4.5;
-        } else if (beacon == -1) {
-            // We see red
-            distCorrection_2 = amIBlue()?-4.5:4.5;
-        } else {
-            // We see neither
-            distCorrection_2 = 0;
-        }
-
-        if (beacon != 0) {
-            // We saw the beacon color so press the center of the beacon
-            robot.beacon.setPosition(robot.BEACON_MAX_RANGE);
-            //waitForSwitch();
-            encoderDrive(0.15, distCorrection_2, 2.5, true,
-                    amIBlue()?(0):(180), true);
-
-            // Return beacon arm back to home position
-            //waitForSwitch();
-            robot.beacon.setPosition((robot.BEACON_HOME));
-            sleep(100);
-
-        }
+        planner.begin(beacon1Step);
+        pressBeacon("beacon1", amIBlue()?0:180, amIBlue()?1.2:-2.15, amIBlue()?-1.85:1.1, amIBlue()?4.5:-4.5);
+        planner.end(beacon1Step);
 
         // Drive to the 2nd beacon.  Tweaked Red heading to correct alignment errors.
         // Use rangefinder correction to get us to 10cm from all
-        encoderDrive(DRIVE_SPEED_SLOW, amIBlue()?42.0 - distCorrection - distCorrection_2:-44.0 - distCorrection - distCorrection_2, 4.0,
+        // We need to be here to park even if we end up skipping the beacon itself
+        planner.begin(toBeacon2Step);
+        encoderDrive(DRIVE_SPEED_WALL, amIBlue()?42.0 - distCorrection - distCorrection_2:-44.0 - distCorrection - distCorrection_2, 4.0,
                 true, amIBlue()?0.0:180.0, false, true, WALL_DISTANCE_1);
+        planner.end(toBeacon2Step);
 
         //waitForSwitch();
 
         // If heading is more than 5 degrees from target heading after wall follow, robot turns to correct heading
         headingThreshold = getError(amIBlue()?0:180);
-        if (headingThreshold > 2){
+        correctHeading = headingThreshold > 2 && planner.begin(line2CorrectStep);
+        if (correctHeading){
             gyroTurn(TURN_SPEED, amIBlue()?0:180, P_TURN_COEFF2);
             DbgLog.msg ("DM10337 - adjusted heading before find line2 by " + headingThreshold);
 
@@ -311,57 +416,14 @@ public class Auto100Blue extends LinearOpMode {
 
         //waitForSwitch();
 
-        // Find the 2nd white line
-        findLine(amIBlue()?0.10:-0.10, 5.0);
-
-        if (headingThreshold > 2){
-            gyroTurn(TURN_SPEED, amIBlue()?0:180, P_TURN_COEFF2);
-            DbgLog.msg ("DM10337 - adjusted heading after find line2 by " + headingThreshold);
-        }
-        // wait for color sensor
-        sleep(1000);
-
-        //waitForSwitch();
-
-        // Check the beacon color
-        beacon = beaconColor();
-        if (beacon == 1) {
-            // I see blue
-            distCorrection = amIBlue()?1.2:-2.25;
-        } else if (beacon == -1) {
-            // I see red
-            distCorrection = amIBlue()?-1.85:1.1;
-        } else {
-            // I see neither
-            distCorrection = 0;
-        }
-
-        encoderDrive(0.2, distCorrection, 2.5, true,
-                amIBlue()?(0):(180), true);
-
-        if (beacon == 1) {
-            // I see blue
-            distCorrection_2 = amIBlue()?4.5:-4.5;
-        } else if (beacon == -1) {
-            // I see red
-            distCorrection_2 = amIBlue()?-4.5:4.5;
-        } else {
-            // I see neither
-            distCorrection_2 = 0;
-        }
-
-        if (beacon != 0) {
-            // We saw the beacon color so press the center of the beacon
-            robot.beacon.setPosition(robot.BEACON_MAX_RANGE);
-            //waitForSwitch();
-            encoderDrive(0.15, distCorrection_2, 2.5, true,
-                    amIBlue()?(0):(180), true);
-
-            // Return beacon arm back to home position
-            //waitForSwitch();
-            robot.beacon.setPosition((robot.BEACON_HOME));
-            sleep(100);
+        // Only go for the 2nd beacon if we can still make it to the center vortex in time
+        distCorrection = 0;
+        distCorrection_2 = 0;
+        if (planner.begin(beacon2Step)) {
+            beacon2(correctHeading, headingThreshold);
+            planner.end(beacon2Step);
         }
+        if (correctHeading) planner.end(line2CorrectStep);
 
         if (!amIBlue()){
             // Reverse the intake to keep any particles or cap balls out of our way
@@ -382,26 +444,116 @@ public class Auto100Blue extends LinearOpMode {
         // And drive to the center vortex, knock cap ball, and park
         // Note that we are turning while moving to save time at the expense of accuracy
         // Distances adjusted to "inside" of requested turn
-        encoderDrive(1.0, amIBlue()?-72.0:58.0, 10.0, true,
+        planner.begin(parkStep);
+        encoderDrive(1.0, amIBlue()?-72.0:58.0, planner.timeout(parkStep, 10.0), true,
                 angleAdjust + (amIBlue()?-51.5:249), false);
+        planner.end(parkStep);
+    }
 
+    /*
+     *
+     */
 
-        // And stop
-        robot.intake.setPower(0.0);
 
-        DbgLog.msg("DM10337- Finished last move of auto");
-        sleep(10000);
-        robot.intake.setPower(0.0);
+    /**
+     * Lay out the auto path for the planner.  Estimates are typical times from match logs.
+     */
+    void setupPlan() {
+        shootStep        = planner.addStep("Shoot",               5.0, AutoPlanner.REQUIRED);
+        approachStep     = planner.addStep("Approach beacons",    5.5, AutoPlanner.REQUIRED);
+        redCorrectStep   = planner.addStep("Red heading fix",     0.75, AutoPlanner.EXTRA);
+        line1CorrectStep = planner.addStep("Line 1 heading fix",  1.5, AutoPlanner.EXTRA);
+        line1Step        = planner.addStep("Find line 1",         1.5, AutoPlanner.REQUIRED);
+        beacon1Step      = planner.addStep("Press beacon 1",      2.5, AutoPlanner.REQUIRED);
+        toBeacon2Step    = planner.addStep("Drive to beacon 2",   3.0, AutoPlanner.REQUIRED);
+        line2CorrectStep = planner.addStep("Line 2 heading fix",  1.5, AutoPlanner.EXTRA);
+        beacon2Step      = planner.addStep("Press beacon 2",      4.0, AutoPlanner.OPTIONAL);
+        parkStep         = planner.addStep("Park",                3.5, AutoPlanner.REQUIRED);
+    }
 
+    /**
+     * Line up on the 2nd beacon and press our color.  Leaves distCorrection and distCorrection_2
+     * set to how far we moved so the park move can allow for it.
+     *
+     * @param correctHeading    true to touch up the heading again after finding the line
+     * @param headingThreshold  Heading error we are correcting, for the log
+     * @throws InterruptedException
+     */
+    void beacon2(boolean correctHeading, double headingThreshold) throws InterruptedException {
+        // Find the 2nd white line
+        findLine(amIBlue()?0.10:-0.10, planner.timeout(beacon2Step, 5.0));
 
+        if (correctHeading){
+            gyroTurn(TURN_SPEED, amIBlue()?0:180, P_TURN_COEFF2);
+            DbgLog.msg ("DM10337 - adjusted heading after find line2 by " + headingThreshold);
+        }
 
-        telemetry.addData("Path", "Complete");
-        telemetry.update();
+        pressBeacon("beacon2", amIBlue()?0:180, amIBlue()?1.2:-2.25, amIBlue()?-1.85:1.1, amIBlue()?4.5:-4.5);
     }
 
-    /*
+    /**
+     * Read the beacon color, line the presser up on our half and press it.  Leaves
+     * distCorrection and distCorrection_2 set to how far we moved.
      *
+     * @param name          Beacon name for the saved camera frame
+     * @param heading       Heading to hold along the wall
+     * @param blueOffset    Inches to move to line up if the sensor half is blue
+     * @param redOffset     Inches to move to line up if the sensor half is red
+     * @param press         Inches to drive with the presser out if blue, the other way if red
+     * @return              Color we saw, 1 blue, -1 red, 0 neither
+     * @throws InterruptedException
      */
+    int pressBeacon(String name, double heading, double blueOffset, double redOffset, double press)
+            throws InterruptedException {
+        // Check the beacon color -- from the camera if it already knows, else wait for color sensor.
+        // The first camera color is checked against the color sensor before we go on it alone.
+        int beacon = cameraBeacon(name);
+        if (beacon == 0 || !cameraBeaconChecked) {
+            sleep(1000);
+
+            //waitForSwitch();
+
+            int sensor = beaconColor();
+            if (beacon != 0 && sensor != 0) {
+                if (sensor == beacon) {
+                    cameraBeaconChecked = true;
+                } else {
+                    DbgLog.msg("DM10337- Camera beacon " + beacon + " but color sensor " + sensor +
+                            " -- check vision.sensor.half in robot.cfg.  Using the color sensor.");
+                    cameraBeaconWrong = true;
+                }
+            }
+            if (sensor != 0) beacon = sensor;
+        }
+        if (beacon == 1) {
+            // I see blue
+            distCorrection = blueOffset;
+            distCorrection_2 = press;
+        } else if (beacon == -1) {
+            // I see red
+            distCorrection = redOffset;
+            distCorrection_2 = -press;
+        } else {
+            // I see neither
+            distCorrection = 0;
+            distCorrection_2 = 0;
+        }
+
+        encoderDrive(0.2, distCorrection, 2.5, true, heading, true);
+
+        if (beacon != 0) {
+            // We saw the beacon color so press the center of the beacon
+            robot.beaconMove.setPosition(robot.BEACON_MAX_RANGE);
+            //waitForSwitch();
+            encoderDrive(0.15, distCorrection_2, 2.5, true, heading, true);
+
+            // Return beacon arm back to home position
+            //waitForSwitch();
+            robot.beaconMove.setPosition((robot.BEACON_HOME));
+            waitForServo(robot.beaconMove);
+        }
+        return beacon;
+    }
 
 
     /**
@@ -477,14 +629,16 @@ public class Auto100Blue extends LinearOpMode {
         // The potentially adjusted current target heading
         double curHeading = heading;
 
-        // Speed ramp on start of move to avoid wheel slip
-        final double MINSPEED = 0.30;           // Start at this power
-        final double SPEEDINCR = 0.015;         // And increment by this much each cycle
+        // Short speed ramp on start of move -- traction control catches any wheel slip
+        final double MINSPEED = 0.50;           // Start at this power
+        final double SPEEDINCR = 0.05;          // And increment by this much each cycle
         double curSpeed;                        // Keep track of speed as we ramp
 
         // Ensure that the opmode is still active
         if (opModeIsActive()) {
 
+            profile.begin();
+            recorder.watch(HardwareDM.DRIVE | (userange ? HardwareDM.RANGE : 0));
             DbgLog.msg("DM10337- Starting encoderDrive speed:" + speed +
                     "  distance:" + distance + "  timeout:" + timeout +
                     "  useGyro:" + useGyro + " heading:" + heading + "  maintainRange: " + maintainRange);
@@ -500,15 +654,13 @@ public class Auto100Blue extends LinearOpMode {
                 if (Math.abs(headingChange) > 5.0) {
                     //Heading change is significant enough to account for
                     if (headingChange > 0.0) {
-                        // Assume 16 inch wheelbase
                         // Add extra distance to the wheel on outside of turn
-                        rightDistance += Math.signum(distance) * 2 * 3.1415 * 16 * headingChange / 360.0;
+                        rightDistance += Math.signum(distance) * 2 * 3.1415 * robot.WHEELBASE_INCHES * headingChange / 360.0;
                         DbgLog.msg("DM10337 -- Turn adjusted R distance:" + rightDistance);
                     } else {
-                        // Assume 16 inch wheelbase
                         // Add extra distance from the wheel on inside of turn
                         // headingChange is - so this is increasing the left distance
-                        leftDistance -= Math.signum(distance) * 2 * 3.1415 * 16 * headingChange / 360.0;
+                        leftDistance -= Math.signum(distance) * 2 * 3.1415 * robot.WHEELBASE_INCHES * headingChange / 360.0;
                         DbgLog.msg("DM10337 -- Turn adjusted L distance:" + leftDistance);
                     }
                 }
@@ -540,17 +692,23 @@ public class Auto100Blue extends LinearOpMode {
             // Turn On motors to RUN_TO_POSITION
             robot.setDriveMode(DcMotor.RunMode.RUN_TO_POSITION);
 
+            // Wall following measures distance driven from here
+            int startLF = robot.lfDrive.getCurrentPosition();
+            int startRF = robot.rfDrive.getCurrentPosition();
+            if (userange) {
+                wall.start(maintainRange, distance);
+            }
+
             // reset the timeout time and start motion.
             runtime.reset();
+            traction.reset();
+            int[] slipApplied = new int[4];
 
             speed = Math.abs(speed);    // Make sure its positive
             curSpeed = Math.min(MINSPEED,speed);
 
             // Set the motors to the starting power
-            robot.lfDrive.setPower(Math.abs(curSpeed));
-            robot.rfDrive.setPower(Math.abs(curSpeed));
-            robot.lrDrive.setPower(Math.abs(curSpeed));
-            robot.rrDrive.setPower(Math.abs(curSpeed));
+            robot.setDrivePower(Math.abs(curSpeed), Math.abs(curSpeed));
 
             // keep looping while we are still active, and there is time left, until at least 1 motor reaches target
             while (opModeIsActive() &&
@@ -564,29 +722,50 @@ public class Auto100Blue extends LinearOpMode {
                 if (curSpeed < speed) {
                     curSpeed += SPEEDINCR;
                 }
-                double leftSpeed = curSpeed;
-                double rightSpeed = curSpeed;
+
+                // Back off power if the wheels are slipping
+                int lfPos = robot.lfDrive.getCurrentPosition();
+                int lrPos = robot.lrDrive.getCurrentPosition();
+                int rfPos = robot.rfDrive.getCurrentPosition();
+                int rrPos = robot.rrDrive.getCurrentPosition();
+                // One heading read a cycle -- traction, the wall follower, steering and the
+                // recorder all work from it
+                double gyro = readGyro();
+                double raw = angles.firstAngle;
+
+                // Raw heading -- the vision fixes to gyroBias would look like turns
+                double limit = traction.update(lfPos, lrPos, rfPos, rrPos, readAccel(), raw);
+                if (traction.isSlipping()) {
+                    // Push out the target of any wheel that spun so we still go the full distance
+                    for (int i = 0; i < 4; i++) {
+                        int extra = traction.slipCounts(i) - slipApplied[i];
+                        if (extra >= SLIP_TARGET_STEP) {
+                            slipApplied[i] += extra;
+                            DcMotor motor = (i == 0) ? robot.lfDrive : (i == 1) ? robot.lrDrive :
+                                    (i == 2) ? robot.rfDrive : robot.rrDrive;
+                            motor.setTargetPosition(motor.getTargetPosition() + (int) Math.signum(distance) * extra);
+                        }
+                    }
+                }
+
+                double leftSpeed = Math.min(curSpeed, limit);
+                double rightSpeed = Math.min(curSpeed, limit);
 
                 // Doing gyro heading correction?
                 if (useGyro){
 
-                    // Get the difference in distance from wall to desired distance
-                    double errorRange = robot.rangeSensor.getDistance(DistanceUnit.CM) - maintainRange;
-
                     if (userange) {
-                        if (Math.abs(errorRange) >= RANGE_THRESHOLD) {
-                            // We need to course correct to right distance from wall
-                            // Have to adjust sign based on heading forward or backward
-                            curHeading = heading - Math.signum(distance) * errorRange * P_DRIVE_COEFF_3;
-                            DbgLog.msg("DM10337 - Range adjust -- range:" + errorRange + "  heading: " + curHeading + "  actual heading: " + readGyro());
-                        } else {
-                            // We are in the right range zone so just use the desired heading w/ no adjustment
-                            curHeading = heading;
-                        }
+                        // Steer towards or away from the wall based on how far off we are
+                        // and how fast that is changing
+                        double travel = (robot.lfDrive.getCurrentPosition() - startLF +
+                                robot.rfDrive.getCurrentPosition() - startRF) / (2.0 * robot.COUNTS_PER_INCH);
+                        double range = visionCorrect(heading, gyro, robot.rangeSensor.getDistance(DistanceUnit.CM));
+                        gyro = gyroBias.correct(raw);       // A vision fix may have moved the bias
+                        curHeading = heading + wall.update(range, gyro - heading, travel);
                     }
 
                     // adjust relative speed based on heading
-                    double error = getError(curHeading);
+                    double error = headingError(curHeading, gyro);
                     double steer = getSteer(error,
                             (aggressive?P_DRIVE_COEFF_1:P_DRIVE_COEFF_2));
 
@@ -609,16 +788,19 @@ public class Auto100Blue extends LinearOpMode {
                 }
 
                 // And rewrite the motor speeds
-                robot.lfDrive.setPower(Math.abs(leftSpeed));
-                robot.rfDrive.setPower(Math.abs(rightSpeed));
-                robot.lrDrive.setPower(Math.abs(leftSpeed));
-                robot.rrDrive.setPower(Math.abs(rightSpeed));
+                robot.setDrivePower(Math.abs(leftSpeed), Math.abs(rightSpeed));
 
                 // Allow time for other processes to run.
+                recordCycle();
                 idle();
             }
 
 
+            if (userange) {
+                DbgLog.msg("DM10337 - Wall follow done -- range error:" + wall.rangeError() +
+                        "  range rate:" + wall.rangeRate() + "  vision fixes:" + visionFixes);
+            }
+
             DbgLog.msg("DM10337- encoderDrive done" +
                     "  lftarget: " +newLFTarget + "  lfactual:" + robot.lfDrive.getCurrentPosition() +
                     "  lrtarget: " +newLRTarget + "  lractual:" + robot.lrDrive.getCurrentPosition() +
@@ -626,6 +808,12 @@ public class Auto100Blue extends LinearOpMode {
                     "  rrtarget: " +newRRTarget + "  rractual:" + robot.rrDrive.getCurrentPosition() +
                     "  heading:" + readGyro());
 
+            if (traction.slipCycles() > 0) {
+                DbgLog.msg("DM10337 -- Traction control: slip cycles:" + traction.slipCycles() +
+                        "  slip counts lf:" + traction.slipCounts(0) + " lr:" + traction.slipCounts(1) +
+                        " rf:" + traction.slipCounts(2) + " rr:" + traction.slipCounts(3));
+            }
+
             // Stop all motion;
             robot.lfDrive.setPower(0);
             robot.rfDrive.setPower(0);
@@ -634,6 +822,14 @@ public class Auto100Blue extends LinearOpMode {
 
             // Turn off RUN_TO_POSITION
             robot.setDriveMode(DcMotor.RunMode.RUN_USING_ENCODER);
+
+            // Profile how close we got
+            double encoderError = (Math.abs(newLFTarget - robot.lfDrive.getCurrentPosition()) +
+                    Math.abs(newLRTarget - robot.lrDrive.getCurrentPosition()) +
+                    Math.abs(newRFTarget - robot.rfDrive.getCurrentPosition()) +
+                    Math.abs(newRRTarget - robot.rrDrive.getCurrentPosition())) / 4.0;
+            profile.end(AutoProfile.DRIVE, encoderError, useGyro ? getError(curHeading) : Double.NaN,
+                    runtime.seconds() >= timeout);
         }
     }
 
@@ -650,16 +846,16 @@ public class Auto100Blue extends LinearOpMode {
         // loop and read the RGB data.
         // Note we use opModeIsActive() as our loop condition because it is an interruptible method.
 
+        profile.begin();
+        recorder.watch(HardwareDM.COLORS);
         runtime.reset();
         while (opModeIsActive() &&
                 robot.stripeColor.alpha() < WHITE_THRESHOLD &&
                 runtime.seconds() < timeout) {
 
             // Drive til we see the stripe
-            robot.lfDrive.setPower(speed);
-            robot.rfDrive.setPower(speed);
-            robot.lrDrive.setPower(speed);
-            robot.rrDrive.setPower(speed);
+            robot.setDrivePower(speed, speed);
+            recordCycle();
             idle();
         }
 
@@ -678,77 +874,61 @@ public class Auto100Blue extends LinearOpMode {
         // And reset to float mode
         robot.setDriveZeroPower(DcMotor.ZeroPowerBehavior.FLOAT);
 
+        profile.end(AutoProfile.LINE, Double.NaN, Double.NaN, !finished);
         return finished;
     }
 
     /**
      *  Method to spin on central axis to point in a new direction.
-     *  Move will stop if either of these conditions occur:
-     *  1) Move gets to the heading (angle)
-     *  2) Driver stops the opmode running.
+     *  Move will stop if any of these conditions occur:
+     *  1) Move settles on the heading (angle)
+     *  2) Move runs out of time
+     *  3) Driver stops the opmode running.
      *
      * @param speed Desired speed of turn.
      * @param angle      Absolute Angle (in Degrees) relative to last gyro reset.
      *                   0 = fwd. +ve is CCW from fwd. -ve is CW from forward.
      *                   If a relative angle is required, add/subtract from current heading.
+     * @param coefficient   Proportional Gain coefficient
      */
     public void gyroTurn (  double speed, double angle, double coefficient) {
+        gyroTurn(speed, angle, coefficient, TURN_TIMEOUT);
+    }
+
+    /**
+     *  Method to spin on central axis to point in a new direction, giving up after timeout seconds
+     *
+     * @param speed Desired speed of turn.
+     * @param angle      Absolute Angle (in Degrees) relative to last gyro reset.
+     * @param coefficient   Proportional Gain coefficient
+     * @param timeout   Seconds before we give up on settling
+     */
+    public void gyroTurn (  double speed, double angle, double coefficient, double timeout) {
 
         DbgLog.msg("DM10337- gyroTurn start  speed:" + speed +
             "  heading:" + angle);
+        profile.begin();
+        recorder.watch(0);
+        turn.start(speed, coefficient, timeout);
 
-        // keep looping while we are still active, and not on heading.
-        while (opModeIsActive() && !onHeading(speed, angle, coefficient)) {
-            // Allow time for other processes to run.
-            // onHeading() does the work of turning us
-            idle();
-        }
-
-        DbgLog.msg("DM10337- gyroTurn done   heading actual:" + readGyro());
-    }
+        // keep looping while we are still active, and not settled on heading.
+        while (opModeIsActive() && !turn.isDone()) {
+            // Damp the turn with the gyro rate so we can settle in one go -- one heading read for both
+            double gyro = readGyro();
+            double rightSpeed = turn.update(headingError(angle, gyro), gyroRate(gyro));
+            double leftSpeed = -rightSpeed;
 
+            // Send desired speeds to motors.
+            robot.setDrivePower(leftSpeed, rightSpeed);
 
-    /**
-     * Perform one cycle of closed loop heading control.
-     *
-     * @param speed     Desired speed of turn.
-     * @param angle     Absolute Angle (in Degrees) relative to last gyro reset.
-     *                  0 = fwd. +ve is CCW from fwd. -ve is CW from forward.
-     *                  If a relative angle is required, add/subtract from current heading.
-     * @param PCoeff    Proportional Gain coefficient
-     * @return
-     */
-    boolean onHeading(double speed, double angle, double PCoeff) {
-        double   error ;
-        double   steer ;
-        boolean  onTarget = false ;
-        double leftSpeed;
-        double rightSpeed;
-
-        // determine turn power based on +/- error
-        error = getError(angle);
-
-        if (Math.abs(error) <= HEADING_THRESHOLD) {
-            // Close enough so no need to move
-            steer = 0.0;
-            leftSpeed  = 0.0;
-            rightSpeed = 0.0;
-            onTarget = true;
-        }
-        else {
-            // Calculate motor powers
-            steer = getSteer(error, PCoeff);
-            rightSpeed  = speed * steer;
-            leftSpeed   = -rightSpeed;
+            // Allow time for other processes to run.
+            recordCycle();
+            idle();
         }
 
-        // Send desired speeds to motors.
-        robot.lfDrive.setPower(leftSpeed);
-        robot.rfDrive.setPower(rightSpeed);
-        robot.lrDrive.setPower(leftSpeed);
-        robot.rrDrive.setPower(rightSpeed);
-
-        return onTarget;
+        DbgLog.msg("DM10337- gyroTurn done   heading actual:" + readGyro() +
+            "  time:" + turn.elapsed() + (turn.timedOut() ? "  TIMED OUT" : ""));
+        profile.end(AutoProfile.TURN, Double.NaN, getError(angle), turn.timedOut());
     }
 
     /**
@@ -758,12 +938,22 @@ public class Auto100Blue extends LinearOpMode {
      *          +ve error means the robot should turn LEFT (CCW) to reduce error.
      */
     public double getError(double targetAngle) {
+        return headingError(targetAngle, readGyro());
+    }
+
+    /**
+     * getError for a heading we already read this cycle
+     * @param   targetAngle  Desired angle
+     * @param   heading      Heading from readGyro()
+     * @return  error angle: Degrees in the range +/- 180, +ve means turn LEFT (CCW)
+     */
+    double headingError(double targetAngle, double heading) {
 
         double robotError;
 
 
         // calculate error in -179 to +180 range  (
-        robotError = targetAngle - readGyro();
+        robotError = targetAngle - heading;
         while (robotError > 180)  robotError -= 360;
         while (robotError <= -180) robotError += 360;
         return robotError;
@@ -779,6 +969,38 @@ public class Auto100Blue extends LinearOpMode {
         return Range.clip(error * PCoeff, -1, 1);
     }
 
+    /**
+     * Beacon color in front of the color sensor, from the camera.  The camera has been looking
+     * since before we stopped, so there is no wait.  Also saves the frame for testing the
+     * classifier on a PC.
+     *
+     * @param name  Which beacon, for the saved frame's file name
+     * @return      1 for blue, -1 for red, 0 if the camera doesn't know or disagreed with the
+     *              color sensor -- like beaconColor()
+     */
+    int cameraBeacon(String name) {
+        if (camera == null) return 0;
+        camera.saveNextFrame(new File(FlightRecorder.recordFolder(),
+                getClass().getSimpleName() + "-" + name + "-" + System.currentTimeMillis() + ".565"));
+        if (cameraBeaconWrong) return 0;
+
+        BeaconClassifier.Reading reading = camera.beacon(BEACON_CAMERA_MAX_AGE_MS);
+        if (reading == null || !reading.isValid()) {
+            DbgLog.msg("DM10337- Camera beacon unknown: " + reading);
+            return 0;
+        }
+        DbgLog.msg("DM10337- Camera beacon " + reading);
+        return reading.color(beaconSensorHalf);
+    }
+
+    /**
+     * Wait until a servo should have got where it was last sent
+     */
+    void waitForServo(TimedServo servo) {
+        long ms = (long) Math.ceil(servo.millisToArrive());
+        if (ms > 0) sleep(ms);
+    }
+
     public int beaconColor () {
 
         // Return 1 for Blue and -1 for Red
@@ -825,31 +1047,122 @@ public class Auto100Blue extends LinearOpMode {
     }
 
     /**
-     * Record the current heading and use that as the 0 heading point for gyro reads
-     * @return
+     * Record the current heading and use that as the 0 heading point for gyro reads.  Also
+     * locks in the drift rate gyroBias fitted while we waited for start.
      */
     void zeroGyro() {
         angles = robot.adaGyro.getAngularOrientation().toAxesReference(AxesReference.INTRINSIC).toAxesOrder(AxesOrder.ZYX);
-        headingBias = angles.firstAngle;
+        gyroBias.start(angles.firstAngle);
+        recorder.gyroBias(gyroBias.offset(), gyroBias.drift());
+
+        // The corrected heading just jumped -- don't call that a turn
+        rateHeading = Double.NaN;
     }
 
 
     /**
-     * Read the current heading direction.  Use a heading bias if we recorded one at start to account for drift during
-     * the init phase of match
+     * Read the current heading direction.  Takes off the offset and drift gyroBias locked in at
+     * start to account for drift during the init phase and the rest of the match
      *
      * @return      Current heading (Z axis)
      */
     double readGyro() {
         angles = robot.adaGyro.getAngularOrientation().toAxesReference(AxesReference.INTRINSIC).toAxesOrder(AxesOrder.ZYX);
-        return angles.firstAngle - headingBias;
+        return gyroBias.correct(angles.firstAngle);
+    }
+
+    /**
+     * Read how fast we are turning.  This SDK's getAngularVelocity() hands back the sensor's X
+     * (roll) rate as zRotationRate, so the yaw rate is worked out from the fused heading instead.
+     * Costs one heading read, same as the rate read did.
+     *
+     * @return      Rotation rate about Z in degrees/sec, +ve is CCW like the heading
+     */
+    double readGyroRate() {
+        return gyroRate(readGyro());
+    }
+
+    /**
+     * Yaw rate from successive headings
+     *
+     * @param heading   Heading just read from readGyro()
+     * @return          Rotation rate about Z in degrees/sec, +ve is CCW like the heading
+     */
+    double gyroRate(double heading) {
+        long now = DMTimer.nanoTime();
+        double ms = (now - rateNanos) / 1.0e6;
+        if (Double.isNaN(rateHeading) || ms > RATE_MAX_MS) {
+            // Nothing recent to difference against
+            rate = 0.0;
+            rateHeading = heading;
+            rateNanos = now;
+        } else if (ms >= RATE_MIN_MS) {
+            rate = GyroBiasEstimator.wrap(heading - rateHeading) * 1000.0 / ms;
+            rateHeading = heading;
+            rateNanos = now;
+        }
+        return rate;
+    }
+
+    /**
+     * Read how hard we are speeding up or slowing down
+     *
+     * @return      Horizontal acceleration in m/sec/sec, with gravity taken out
+     */
+    double readAccel() {
+        Acceleration accel = robot.adaGyro.getLinearAcceleration();
+        lastAccel = Math.hypot(accel.xAccel, accel.yAccel);
+        return lastAccel;
+    }
+
+    /**
+     * Use a fresh beacon pose, if we have one, to take out gyro drift and to fill in for the
+     * range sensor when it loses its echo, while we follow the beacon wall.
+     *
+     * @param heading   Gyro heading that is parallel to the wall
+     * @param gyro      Heading from readGyro() this cycle
+     * @param range     Range sensor reading in cm
+     * @return          Range to use
+     */
+    double visionCorrect(double heading, double gyro, double range) {
+        BeaconPoseService.Pose pose = (vision != null) ? vision.latest(VISION_MAX_AGE_MS) : null;
+        if (pose == null || pose.isBlue() != amIBlue()) return range;
+
+        if (pose.nanos != visionUsed) {
+            visionUsed = pose.nanos;
+
+            // Gyro and camera should agree on how far off parallel with the wall we are
+            double gyroOffset = GyroBiasEstimator.wrap(gyro - heading);
+            if (Math.abs(gyroOffset) < 45.0) {
+                gyroBias.adjust(Range.clip(VISION_HEADING_GAIN * (gyroOffset - pose.wallHeading()),
+                        -VISION_MAX_HEADING_FIX, VISION_MAX_HEADING_FIX));
+                visionFixes++;
+            }
+        }
+
+        if (range <= 0.0 || range >= WallFollower.MAX_RANGE) {
+            return pose.wallDistance() - ROBOT_HALF_WIDTH_CM;
+        }
+        return range;
+    }
+
+    /**
+     * Add the current control cycle to the flight recorder.  Uses the last heading and
+     * acceleration we read so it doesn't cost another IMU read.  The heading is the raw IMU one
+     * -- a replay hands it back from the IMU and readGyro() takes the offset and drift out again.
+     */
+    void recordCycle() {
+        recorder.sample(robot, null, null, (angles != null) ? angles.firstAngle : Double.NaN, lastAccel);
+        lastAccel = Double.NaN;
     }
 
     // Cam drive code
     public void camDrive (double speed, double shots, long pause, double timeout) throws InterruptedException {
 
-        ElapsedTime     pauseTime = new ElapsedTime();
+        ElapsedTime     pauseTime = new DMTimer();
 
+        profile.begin();
+        recorder.watch(HardwareDM.SHOOTER);
         runtime.reset();
 
         robot.fire.setPower(speed);
@@ -874,10 +1187,12 @@ public class Auto100Blue extends LinearOpMode {
             if (!robot.camSwitch.isPressed() && pauseTime.milliseconds() > 150){
                 camSwitchPressed = false;
             }
+            recordCycle();
             idle();
         }
         DbgLog.msg("DM10337 -- Auto shot: " + totalShots);
         robot.fire.setPower(0.0);
+        profile.end(AutoProfile.CAM, Double.NaN, Double.NaN, runtime.milliseconds() >= timeout);
     }
     /**
      * Always returns true as we are blue.
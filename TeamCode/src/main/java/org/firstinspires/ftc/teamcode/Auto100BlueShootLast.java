@@ -176,6 +176,9 @@ public class Auto100BlueShootLast extends LinearOpMode {
         DbgLog.msg("DM10337- Auto Pressed Start");
         // Step through each leg of the path,
 
+        // No more IMU calibration captures -- they drop the IMU out of fusion mode
+        robot.imuCalibration.pause();
+
         // Make sure the gyro is zeroed
         zeroGyro();
 
@@ -257,15 +260,15 @@ public class Auto100BlueShootLast extends LinearOpMode {
 
         if (beacon != 0) {
             // We saw the beacon color so press the center of the beacon
-            robot.beacon.setPosition(robot.BEACON_MAX_RANGE);
+            robot.beaconMove.setPosition(robot.BEACON_MAX_RANGE);
             //waitForSwitch();
             encoderDrive(0.15, distCorrection_2, 2.5, true,
                     amIBlue()?(0):(180), true);
 
             // Return beacon arm back to home position
             //waitForSwitch();
-            robot.beacon.setPosition((robot.BEACON_HOME));
-            sleep(100);
+            robot.beaconMove.setPosition((robot.BEACON_HOME));
+            waitForServo(robot.beaconMove);
 
         }
 
@@ -327,15 +330,15 @@ public class Auto100BlueShootLast extends LinearOpMode {
 
         if (beacon != 0) {
             // We saw the beacon color so press the center of the beacon
-            robot.beacon.setPosition(robot.BEACON_MAX_RANGE);
+            robot.beaconMove.setPosition(robot.BEACON_MAX_RANGE);
             //waitForSwitch();
             encoderDrive(0.15, distCorrection_2, 2.5, true,
                     amIBlue()?0:180, true);
 
             // Return beacon arm back to home position
             //waitForSwitch();
-            robot.beacon.setPosition((robot.BEACON_HOME));
-            sleep(100);
+            robot.beaconMove.setPosition((robot.BEACON_HOME));
+            waitForServo(robot.beaconMove);
         }
 
 
@@ -350,8 +353,7 @@ public class Auto100BlueShootLast extends LinearOpMode {
 
 
         // Spin up the shooter
-        robot.lShoot.setPower(robot.SHOOT_DEFAULT);
-        robot.rShoot.setPower(robot.SHOOT_DEFAULT);
+        robot.setShootPower(robot.SHOOT_DEFAULT);
 
         encoderDrive(DRIVE_SPEED, amIBlue()?-43.0:34.0, 7.0, true, amIBlue()?-48:243, false);
 
@@ -361,8 +363,7 @@ public class Auto100BlueShootLast extends LinearOpMode {
         // Fire the balls
         camDrive(1.0, 3, 50, 1500);
 
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
 
         if (capBallPush()) {
             if(!amIBlue()) robot.intake.setPower(-1.0);
@@ -759,6 +760,14 @@ public class Auto100BlueShootLast extends LinearOpMode {
         return Range.clip(error * PCoeff, -1, 1);
     }
 
+    /**
+     * Wait until a servo should have got where it was last sent
+     */
+    void waitForServo(TimedServo servo) {
+        long ms = (long) Math.ceil(servo.millisToArrive());
+        if (ms > 0) sleep(ms);
+    }
+
     public int beaconColor () {
 
         // Return 1 for Blue and -1 for Red
@@ -155,6 +155,9 @@ public class AutoBlueDefensePark extends LinearOpMode {
         DbgLog.msg("DM10337- Auto Pressed Start");
         // Step through each leg of the path,
 
+        // No more IMU calibration captures -- they drop the IMU out of fusion mode
+        robot.imuCalibration.pause();
+
         // Make sure the gyro is zeroed
         zeroGyro();
 
@@ -162,8 +165,7 @@ public class AutoBlueDefensePark extends LinearOpMode {
 
 
         // Spin up the shooter
-        robot.lShoot.setPower(robot.SHOOT_DEFAULT);
-        robot.rShoot.setPower(robot.SHOOT_DEFAULT);
+        robot.setShootPower(robot.SHOOT_DEFAULT);
 
         // Move forward  to line up for shooting particles
         // Use gyro to hold heading
@@ -182,8 +184,7 @@ public class AutoBlueDefensePark extends LinearOpMode {
         // Fire the balls
         camDrive(1.0, 3, 50, 1500);
 
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
 
         // Backup
         encoderDrive(DRIVE_SPEED, -10.0, 3.0, true, amIBlue()?-45.0:45.0, false);
@@ -135,8 +135,7 @@ public class AutoFromScrimmage extends LinearOpMode {
         // Step through each leg of the path,
 
         // Spin up the shooter
-        robot.lShoot.setPower(shootSpeed);
-        robot.rShoot.setPower(shootSpeed);
+        robot.setShootPower(shootSpeed);
 
         // Move forward 26 inches
         encoderDrive(DRIVE_SPEED,  26,  26, 5.0);  // S1: Forward 24 Inches with 5 Sec timeout
@@ -147,8 +146,7 @@ public class AutoFromScrimmage extends LinearOpMode {
 
         // Stop the shooter
         robot.fire.setPower(0.0);
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
 
         // Intake full reverse to push cap ball
         robot.intake.setPower(-1.0);
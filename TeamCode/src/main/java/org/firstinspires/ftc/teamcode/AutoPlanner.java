@@ -0,0 +1,247 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Keeps autonomous on the match clock.  Each step of the auto path is registered up front with
+ * how long it usually takes.  While running, before each step we check whether it still fits
+ * in the time left after keeping enough for every later step we can't do without (like parking).
+ * Optional steps that don't fit are skipped, and timeouts can be cut down to what is left.
+ *
+ * Step kinds:
+ *      REQUIRED    always runs, and its time is always kept free
+ *      OPTIONAL    runs if it fits around the later REQUIRED steps (e.g. 2nd beacon)
+ *      EXTRA       runs only if it also leaves time for the later OPTIONAL steps (e.g. heading
+ *                  touch ups) -- so a correction turn never costs us a beacon
+ *
+ * Typical use:
+ *      int beacon2 = planner.addStep("Beacon 2", 4.0, AutoPlanner.OPTIONAL);
+ *      ...
+ *      planner.start();                    // when start is pressed
+ *      ...
+ *      if (planner.begin(beacon2)) {
+ *          // do it
+ *          planner.end(beacon2);
+ *      }
+ */
+public class AutoPlanner {
+
+    // Length of the autonomous period
+    public final static double AUTO_PERIOD = 30.0;
+
+    // Step kinds
+    public final static int REQUIRED = 0;
+    public final static int OPTIONAL = 1;
+    public final static int EXTRA = 2;
+
+    // Most steps we can plan -- room for a whole auto script on top of the built in path
+    final static int MAX_STEPS = 256;
+
+    /* Step table -- parallel arrays indexed by step number */
+    int numSteps = 0;
+    String[] names = new String[MAX_STEPS];
+    double[] estimates = new double[MAX_STEPS];
+    int[] kinds = new int[MAX_STEPS];
+    boolean[] done = new boolean[MAX_STEPS];
+    double[] startedAt = new double[MAX_STEPS];
+    int[] parents = new int[MAX_STEPS];     // Step that was running when this one began
+
+    // Innermost step running now, -1 if none
+    int current = -1;
+
+    double period;
+    double margin;
+    DMTimer matchTimer = new DMTimer();
+
+    /**
+     * Constructor
+     *
+     * @param period    Seconds in the period
+     * @param margin    Seconds to keep spare at the end for slop
+     */
+    public AutoPlanner(double period, double margin) {
+        this.period = period;
+        this.margin = margin;
+    }
+
+    /**
+     * Add the next step of the path.  Steps must be added in the order they run.
+     *
+     * @param name      Name for the log
+     * @param estimate  Seconds the step usually takes
+     * @param kind      REQUIRED, OPTIONAL or EXTRA
+     * @return          Step number
+     */
+    public int addStep(String name, double estimate, int kind) {
+        if (numSteps >= MAX_STEPS) {
+            throw new IllegalStateException("AutoPlanner out of steps: " + name);
+        }
+        int step = numSteps++;
+        names[step] = name;
+        estimates[step] = estimate;
+        kinds[step] = kind;
+        return step;
+    }
+
+    /**
+     * Start the match clock -- call when start is pressed
+     */
+    public void start() {
+        matchTimer.reset();
+        for (int i = 0; i < numSteps; i++) done[i] = false;
+        current = -1;
+    }
+
+    /**
+     * @return  Seconds since start
+     */
+    public double elapsed() {
+        return matchTimer.seconds();
+    }
+
+    /**
+     * @return  Seconds left in the period
+     */
+    public double remaining() {
+        return period - matchTimer.seconds();
+    }
+
+    /**
+     * Time we must keep free for the steps after this one
+     *
+     * @param step      Step about to run
+     * @return          Seconds reserved for later steps
+     */
+    double reservedAfter(int step) {
+        double reserved = 0.0;
+        for (int i = step + 1; i < numSteps; i++) {
+            if (done[i]) continue;
+            if (kinds[i] == REQUIRED || (kinds[step] == EXTRA && kinds[i] == OPTIONAL)) {
+                reserved += estimates[i];
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * @param step      Step about to run
+     * @return          Seconds this step can have without pushing out later steps
+     */
+    public double slack(int step) {
+        return remaining() - margin - reservedAfter(step);
+    }
+
+    /**
+     * @param step      Step about to run
+     * @return          true if the step should run now
+     */
+    public boolean fits(int step) {
+        return kinds[step] == REQUIRED || slack(step) >= estimates[step];
+    }
+
+    /**
+     * Cut a step's timeout down to the time it can have.  Required steps always get at least
+     * their estimate, since they are going to run anyway.
+     *
+     * @param step      Step about to run
+     * @param timeout   Normal timeout in seconds
+     * @return          Timeout to use in seconds
+     */
+    public double timeout(int step, double timeout) {
+        double allowed = slack(step);
+        if (kinds[step] == REQUIRED) allowed = Math.max(allowed, estimates[step]);
+        return Math.max(0.0, Math.min(timeout, allowed));
+    }
+
+    /**
+     * Decide whether to run a step and start timing it if so.  A skipped step is logged and
+     * counted as done.
+     *
+     * @param step      Step about to run
+     * @return          true if the step should run
+     */
+    public boolean begin(int step) {
+        if (!fits(step)) {
+            done[step] = true;
+            DbgLog.msg(String.format(Locale.US, "DM10337 -- Plan: skipping %s at %.2fs, needs %.2fs, slack %.2fs",
+                    names[step], elapsed(), estimates[step], slack(step)));
+            return false;
+        }
+        startedAt[step] = elapsed();
+        parents[step] = current;
+        current = step;
+        return true;
+    }
+
+    /**
+     * Mark a step done and log how long it took
+     *
+     * @param step      Step that finished
+     */
+    public void end(int step) {
+        done[step] = true;
+        if (current == step) current = parents[step];
+        double now = elapsed();
+        DbgLog.msg(String.format(Locale.US, "DM10337 -- Plan: %s took %.2fs (est %.2fs), %.2fs left",
+                names[step], now - startedAt[step], estimates[step], period - now));
+    }
+
+    /**
+     * @return  Innermost step that has begun and not ended, -1 if none
+     */
+    public int current() {
+        return current;
+    }
+
+    /**
+     * @return  Number of steps added
+     */
+    public int size() {
+        return numSteps;
+    }
+
+    /**
+     * @return  Name of a step
+     */
+    public String name(int step) {
+        return names[step];
+    }
+}
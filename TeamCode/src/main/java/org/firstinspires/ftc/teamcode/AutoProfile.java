@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Per step performance profile of one autonomous run.  Each encoderDrive, gyroTurn, findLine and
+ * camDrive call adds one small fixed size record: which AutoPlanner step it ran in, how long it
+ * took, how far off the encoders and heading were when it finished, and whether it ran out of
+ * time.  Records are kept in memory during the run and written as one small file at the end,
+ * next to the flight recordings (FIRST/DM10337/<name>-<time>.dmp), followed by the planner's
+ * step names so runs that skipped different steps can still be matched up.
+ *
+ * AutoProfileReport reads a pile of these on a PC and shows which steps are slow.
+ */
+public class AutoProfile {
+
+    // File layout
+    public final static int MAGIC = 0x444D5046;         // "DMPF"
+    public final static int VERSION = 1;
+    public final static int HEADER_SIZE = 20;           // magic, version, count, start millis
+    public final static int RECORD_SIZE = 16;           // planner step, kind, flags, ms, 2 errors
+    public final static String FILE_EXTENSION = ".dmp";
+
+    // Step kinds
+    public final static int DRIVE = 0;
+    public final static int TURN = 1;
+    public final static int LINE = 2;
+    public final static int CAM = 3;
+    public final static String[] KIND_NAMES = {"encoderDrive", "gyroTurn", "findLine", "camDrive"};
+
+    // Record flags
+    public final static int FLAG_TIMEOUT = 1;
+
+    // More steps than any path we have
+    public final static int MAX_STEPS = 64;
+
+    /* Records for this run */
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + MAX_STEPS * RECORD_SIZE);
+    String name = null;
+    AutoPlanner planner = null;
+    long startMillis = 0;
+    int numSteps = 0;
+    long stepStart = 0;
+
+    /**
+     * Start a new profile -- nothing is written until close
+     *
+     * @param name      Name of the run, usually the OpMode name
+     * @param planner   Planner running the path, or null -- each step is tagged with its current()
+     */
+    public void open(String name, AutoPlanner planner) {
+        this.name = name;
+        this.planner = planner;
+        startMillis = System.currentTimeMillis();
+        numSteps = 0;
+        buffer.clear();
+        buffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * Start timing a step
+     */
+    public void begin() {
+        stepStart = DMTimer.nanoTime();
+    }
+
+    /**
+     * Finish timing a step and store its record
+     *
+     * @param kind          DRIVE, TURN, LINE or CAM
+     * @param encoderError  Average encoder counts off target at the end, NaN if not a move
+     * @param headingError  Degrees off heading at the end, NaN if not known
+     * @param timedOut      true if the step gave up on its timeout
+     */
+    public void end(int kind, double encoderError, double headingError, boolean timedOut) {
+        if (name == null || numSteps >= MAX_STEPS) return;
+
+        int ms = (int) ((DMTimer.nanoTime() - stepStart) / 1000000L);
+        buffer.putShort((short) ((planner != null) ? planner.current() : -1));
+        buffer.put((byte) kind);
+        buffer.put((byte) (timedOut ? FLAG_TIMEOUT : 0));
+        buffer.putInt(ms);
+        buffer.putFloat((float) encoderError);
+        buffer.putFloat((float) headingError);
+        numSteps++;
+    }
+
+    /**
+     * Write the profile out.  Any error just loses this run's profile.
+     */
+    public void close() {
+        if (name == null) return;
+
+        int end = buffer.position();
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(numSteps);
+        buffer.putLong(startMillis);
+
+        File folder = FlightRecorder.recordFolder();
+        File file = new File(folder, name + "-" + startMillis + FILE_EXTENSION);
+        FileOutputStream out = null;
+        try {
+            folder.mkdirs();
+            out = new FileOutputStream(file);
+            out.write(buffer.array(), 0, end);
+
+            // Planner step names, so the report can match steps by name
+            DataOutputStream names = new DataOutputStream(out);
+            int numNames = (planner != null) ? planner.size() : 0;
+            names.writeShort(numNames);
+            for (int i = 0; i < numNames; i++) names.writeUTF(planner.name(i));
+            names.flush();
+            DbgLog.msg("DM10337 -- Auto profile of " + numSteps + " steps written to " + file.getPath());
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Auto profile could not be written: " + e.getMessage());
+        } finally {
+            try {
+                if (out != null) out.close();
+            } catch (IOException e) {
+                // Nothing else we can do
+            }
+        }
+        name = null;
+    }
+
+    /**
+     * One step read back from a profile file
+     */
+    public static class Step {
+        public int index;               // Position in the run
+        public int plan;                // Planner step, -1 if none
+        public String planName;         // Its name, null if none
+        public int kind;
+        public boolean timedOut;
+        public int ms;
+        public float encoderError;
+        public float headingError;
+    }
+
+    /**
+     * Read all the steps of a profile file
+     *
+     * @param in            Stream positioned at the start of the file
+     * @return              Steps in the order they ran
+     * @throws IOException  if this isn't a profile we understand
+     */
+    public static Step[] read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("not an auto profile");
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("profile version " + version + ", expected " + VERSION);
+        }
+        int count = in.readInt();
+        in.readLong();
+
+        Step[] steps = new Step[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                Step step = new Step();
+                step.index = i;
+                step.plan = in.readShort();
+                step.kind = in.readByte();
+                step.timedOut = (in.readByte() & FLAG_TIMEOUT) != 0;
+                step.ms = in.readInt();
+                step.encoderError = in.readFloat();
+                step.headingError = in.readFloat();
+                steps[i] = step;
+            }
+
+            String[] names = new String[in.readShort()];
+            for (int i = 0; i < names.length; i++) names[i] = in.readUTF();
+            for (Step step : steps) {
+                if (step.plan >= 0 && step.plan < names.length) step.planName = names[step.plan];
+            }
+        } catch (EOFException e) {
+            throw new IOException("profile is cut short");
+        }
+        return steps;
+    }
+}
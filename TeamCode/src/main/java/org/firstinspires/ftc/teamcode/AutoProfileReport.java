@@ -0,0 +1,292 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * PC side report over a set of AutoProfile files.  For each step of the path it shows the
+ * median and 95th percentile time, how often it timed out and how far off it usually ends up.
+ * The newest run is compared against the ones before it and any step that got slower than
+ * usual, or timed out when it usually doesn't, is flagged.
+ *
+ *      java org.firstinspires.ftc.teamcode.AutoProfileReport <folder or .dmp files...>
+ *
+ * Runs are grouped by OpMode, from the file name, and put in time order.  Within an OpMode the
+ * steps are matched up by the AutoPlanner step they ran in and their kind, counted in order
+ * within that planner step, so a run that skipped an optional step still lines up with one
+ * that didn't.  Steps run outside any planner step are matched by their order among those.
+ */
+public class AutoProfileReport {
+
+    // Need this many earlier runs before we call anything a regression
+    public final static int MIN_HISTORY = 3;
+
+    // Newest run is flagged if it is this much slower than the earlier median
+    public final static double SLOWER_RATIO = 1.25;
+
+    /* One list of steps per run, oldest first, with its file and OpMode name */
+    List<AutoProfile.Step[]> runs = new ArrayList<AutoProfile.Step[]>();
+    List<String> runNames = new ArrayList<String>();
+    List<String> opModes = new ArrayList<String>();
+
+    /**
+     * Add a run
+     *
+     * @param file          Profile file written by AutoProfile
+     * @throws IOException  if it can't be read
+     */
+    public void add(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            runs.add(AutoProfile.read(in));
+            runNames.add(file.getName());
+            opModes.add(opModeName(file.getName()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Print the report, one table per OpMode
+     *
+     * @return  Number of regressions flagged
+     */
+    public int print() {
+        int regressions = 0;
+        List<String> printed = new ArrayList<String>();
+        for (String opMode : opModes) {
+            if (printed.contains(opMode)) continue;
+            printed.add(opMode);
+            regressions += print(opMode);
+        }
+        if (printed.isEmpty()) System.out.println("No auto profiles");
+        return regressions;
+    }
+
+    /**
+     * Print the table for one OpMode
+     *
+     * @return  Number of regressions flagged
+     */
+    int print(String opMode) {
+        // This OpMode's runs, oldest first, and the key of every step in them
+        List<AutoProfile.Step[]> group = new ArrayList<AutoProfile.Step[]>();
+        List<String[]> groupKeys = new ArrayList<String[]>();
+        String newest = "-";
+        for (int r = 0; r < runs.size(); r++) {
+            if (!opModes.get(r).equals(opMode)) continue;
+            group.add(runs.get(r));
+            groupKeys.add(stepKeys(runs.get(r)));
+            newest = runNames.get(r);
+        }
+
+        // Merge the runs' step orders, so a step only some runs have goes where it ran
+        List<String> order = new ArrayList<String>();
+        List<AutoProfile.Step> examples = new ArrayList<AutoProfile.Step>();
+        for (int r = 0; r < group.size(); r++) {
+            String[] keys = groupKeys.get(r);
+            int at = -1;
+            for (int i = 0; i < keys.length; i++) {
+                int found = order.indexOf(keys[i]);
+                if (found < 0) {
+                    found = at + 1;
+                    order.add(found, keys[i]);
+                    examples.add(found, group.get(r)[i]);
+                }
+                at = found;
+            }
+        }
+
+        System.out.println();
+        System.out.println(opMode + ": auto profile over " + group.size() + " runs, newest " + newest);
+        System.out.println(String.format(Locale.US, "%-20s %-13s %2s %7s %7s %7s %5s %8s %8s  %s",
+                "step", "kind", "#", "p50ms", "p95ms", "lastms", "tmout", "encErr", "hdgErr", "flag"));
+
+        int regressions = 0;
+        double totalP50 = 0.0;
+        for (int k = 0; k < order.size(); k++) {
+            String key = order.get(k);
+
+            // Everything we know about this step, with the newest run held separately
+            List<AutoProfile.Step> history = new ArrayList<AutoProfile.Step>();
+            AutoProfile.Step last = null;
+            for (int r = 0; r < group.size(); r++) {
+                int i = Arrays.asList(groupKeys.get(r)).indexOf(key);
+                if (i < 0) continue;
+                if (r == group.size() - 1) last = group.get(r)[i];
+                else history.add(group.get(r)[i]);
+            }
+
+            List<AutoProfile.Step> all = new ArrayList<AutoProfile.Step>(history);
+            if (last != null) all.add(last);
+            double p50 = percentile(all, 50);
+            totalP50 += p50;
+
+            String flag = "";
+            if (last != null && history.size() >= MIN_HISTORY) {
+                int timeouts = 0;
+                for (AutoProfile.Step step : history) if (step.timedOut) timeouts++;
+                double histP50 = percentile(history, 50);
+                double histP95 = percentile(history, 95);
+                if (last.ms > histP95 && last.ms > histP50 * SLOWER_RATIO) {
+                    flag = "SLOWER";
+                    regressions++;
+                } else if (last.timedOut && timeouts * 2 < history.size()) {
+                    flag = "TIMEOUT";
+                    regressions++;
+                }
+            }
+
+            int timeouts = 0;
+            for (AutoProfile.Step step : all) if (step.timedOut) timeouts++;
+            AutoProfile.Step example = examples.get(k);
+            System.out.println(String.format(Locale.US, "%-20s %-13s %2s %7.0f %7.0f %7s %5d %8.1f %8.1f  %s",
+                    (example.planName != null) ? example.planName : "-", kindName(example.kind),
+                    key.substring(key.lastIndexOf('#') + 1),
+                    p50, percentile(all, 95), (last != null) ? Integer.toString(last.ms) : "-",
+                    timeouts, meanAbs(all, true), meanAbs(all, false), flag));
+        }
+
+        System.out.println(String.format(Locale.US, "Sum of step medians: %.1f s.  %d regressions flagged.",
+                totalP50 / 1000.0, regressions));
+        return regressions;
+    }
+
+    /**
+     * Key each step of a run by its planner step and kind, numbered in order within those.
+     * Steps outside any planner step are all in one "-" group, matched by their order in it.
+     */
+    static String[] stepKeys(AutoProfile.Step[] run) {
+        String[] keys = new String[run.length];
+        for (int i = 0; i < run.length; i++) {
+            String group = ((run[i].planName != null) ? run[i].planName : "-") + "/" + kindName(run[i].kind);
+            int n = 1;
+            for (int j = 0; j < i; j++) {
+                if (keys[j].startsWith(group + "#")) n++;
+            }
+            keys[i] = group + "#" + n;
+        }
+        return keys;
+    }
+
+    /**
+     * @return  Name of a step kind
+     */
+    static String kindName(int kind) {
+        return (kind >= 0 && kind < AutoProfile.KIND_NAMES.length) ? AutoProfile.KIND_NAMES[kind] : "?";
+    }
+
+    /**
+     * @return  OpMode a profile file came from -- the name up to the "-<time>.dmp" AutoProfile adds
+     */
+    static String opModeName(String fileName) {
+        int dash = fileName.lastIndexOf('-');
+        return (dash > 0) ? fileName.substring(0, dash) : fileName;
+    }
+
+    /**
+     * Nearest rank percentile of step times
+     */
+    static double percentile(List<AutoProfile.Step> steps, double p) {
+        if (steps.isEmpty()) return 0.0;
+        int[] ms = new int[steps.size()];
+        for (int i = 0; i < ms.length; i++) ms[i] = steps.get(i).ms;
+        Arrays.sort(ms);
+        int rank = (int) Math.ceil(p / 100.0 * ms.length);
+        return ms[Math.max(0, Math.min(ms.length - 1, rank - 1))];
+    }
+
+    /**
+     * Mean of the absolute encoder or heading error, skipping steps that don't have one
+     */
+    static double meanAbs(List<AutoProfile.Step> steps, boolean encoder) {
+        double sum = 0.0;
+        int count = 0;
+        for (AutoProfile.Step step : steps) {
+            float value = encoder ? step.encoderError : step.headingError;
+            if (!Float.isNaN(value)) {
+                sum += Math.abs(value);
+                count++;
+            }
+        }
+        return (count > 0) ? sum / count : Double.NaN;
+    }
+
+    /**
+     * Command line report
+     *
+     * @param args      Folders and/or profile files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: AutoProfileReport <folder or .dmp files...>");
+            System.exit(1);
+        }
+
+        List<File> files = new ArrayList<File>();
+        for (String arg : args) {
+            File file = new File(arg);
+            File[] contents = file.listFiles();
+            if (contents == null) {
+                files.add(file);
+                continue;
+            }
+            for (File child : contents) {
+                if (child.getName().endsWith(AutoProfile.FILE_EXTENSION)) files.add(child);
+            }
+        }
+
+        // File names end in the start time, so name order is time order within an OpMode
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted);
+
+        AutoProfileReport report = new AutoProfileReport();
+        for (File file : sorted) {
+            report.add(file);
+        }
+        System.exit(report.print() > 0 ? 2 : 0);
+    }
+}
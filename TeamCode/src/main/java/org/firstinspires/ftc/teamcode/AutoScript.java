@@ -0,0 +1,608 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Autonomous path as a text script, so distances and headings can be tuned between matches by
+ * editing FIRST/DM10337/auto.txt on the phone instead of rebuilding the app.  One step per line,
+ * # starts a comment:
+ *
+ *      shooter on|off|<power>                  Flywheels on at the default power, off, or a power
+ *      shoot <shots> [pause <ms>] [timeout <ms>]
+ *      drive <speed> <inches> <timeout> <heading> [wall <cm>] [aggressive] [correct] [dodge <deg>]
+ *      turn <heading> [gain <coeff>] [timeout <sec>] [over <deg>]
+ *      line <speed> <timeout>                  Drive until the stripe sensor sees white
+ *      beacon <heading> <blue offset> <red offset> <press>
+ *      intake <power>
+ *      wait <sec>
+ *      until line|beacon|servo <timeout>       Sit still until it happens or we time out
+ *      until time <sec>                        Sit still until this far into the match
+ *
+ * Any step can start with optional or extra to tell the AutoPlanner it can be dropped when the
+ * clock is short -- see AutoPlanner for what each means.  Steps are required otherwise, e.g.
+ *
+ *      optional beacon 0/180 1.2/-2.25 -1.85/1.1 4.5/-4.5
+ *      extra turn 0/180 gain 0.025 over 2
+ *
+ * Each step's time is estimated from its numbers (e.g. a drive from its distance and speed) so
+ * the planner can keep enough time for the required steps after it.
+ *
+ * Any number can be written blue/red, e.g. "drive 0.8 64/65 5 -42/42", and a - on one side drops
+ * the step for that alliance, e.g. "turn -/180 gain 0.025 over 2" only turns on red.
+ *
+ *      wall        hold this range from the wall with the range sensor
+ *      correct     take off how far the last beacon step moved along the wall
+ *      dodge       add this to the heading if the last beacon press went the same way as it
+ *      over        only turn if we are more than this many degrees clockwise of the heading --
+ *                  like the built in path, which never corrects the other way
+ *
+ * The script is parsed at INIT for our alliance into flat arrays -- an op code, flags and a fixed
+ * block of numbers per step -- so running it is just a switch per step with nothing to look up
+ * or allocate.  The parser finds every error in one go, with line numbers.  Check a script on
+ * the PC before copying it to the phone:
+ *
+ *      java org.firstinspires.ftc.teamcode.AutoScript auto.txt
+ */
+public class AutoScript {
+
+    // Op codes
+    public final static int SHOOTER = 0;
+    public final static int SHOOT   = 1;
+    public final static int DRIVE   = 2;
+    public final static int TURN    = 3;
+    public final static int LINE    = 4;
+    public final static int BEACON  = 5;
+    public final static int INTAKE  = 6;
+    public final static int WAIT    = 7;
+    public final static int UNTIL   = 8;
+    final static String[] OP_NAMES = {
+            "shooter", "shoot", "drive", "turn", "line", "beacon", "intake", "wait", "until"};
+
+    // What until waits for -- first number of an UNTIL step
+    public final static int UNTIL_LINE   = 0;
+    public final static int UNTIL_BEACON = 1;
+    public final static int UNTIL_SERVO  = 2;
+    public final static int UNTIL_TIME   = 3;
+    final static String[] CONDITION_NAMES = {"line", "beacon", "servo", "time"};
+
+    // Planner kind modifiers, in AutoPlanner.REQUIRED, OPTIONAL, EXTRA order
+    final static String[] KIND_NAMES = {"required", "optional", "extra"};
+
+    // Typical step times for the planner, from match logs, in seconds
+    public final static double DRIVE_INCHES_PER_SEC = 20.0;    // At full speed
+    public final static double SHOT_SEC = 1.0;
+    public final static double TURN_SEC = 1.0;
+    public final static double LINE_SEC = 1.5;
+    public final static double BEACON_SEC = 2.5;
+
+    // Drive flags
+    public final static int WALL       = 1;
+    public final static int AGGRESSIVE = 1 << 1;
+    public final static int CORRECT    = 1 << 2;
+
+    // Numbers per step.  Options that aren't given are NaN and the OpMode uses its own default.
+    public final static int ARGS = 6;
+    public final static int MAX_STEPS = 200;
+
+    // Limits checked by the parser
+    public final static double MAX_TIMEOUT = 30.0;      // Whole autonomous period
+    public final static double MAX_HEADING = 360.0;
+    public final static double MAX_WALL_CM = 100.0;
+    public final static int MAX_SHOTS = 10;
+
+    public final static String SCRIPT_FILE = "auto.txt";
+
+    /* The program */
+    int size = 0;
+    int[] ops = new int[MAX_STEPS];
+    int[] flags = new int[MAX_STEPS];
+    double[] args = new double[MAX_STEPS * ARGS];
+    String[] describe = new String[MAX_STEPS];      // Log line for each step, made up front
+    String[] names = new String[MAX_STEPS];         // beacon1, beacon2... for beacon steps
+    String[] labels = new String[MAX_STEPS];        // Planner step names
+    int[] kinds = new int[MAX_STEPS];               // AutoPlanner.REQUIRED, OPTIONAL or EXTRA
+    double[] estimates = new double[MAX_STEPS];     // Planner estimates, seconds
+
+    List<String> errors = new ArrayList<String>();
+
+    /* Parser state for the current line */
+    boolean blue;
+    int lineNum;
+    boolean skip;                                   // A value was - for our alliance
+    int beacons;                                    // Beacon steps so far
+    String[] tokens;
+    int next;
+
+    /**
+     * Load and parse a script file for one alliance
+     *
+     * @param file          Script
+     * @param blue          true for the blue numbers, false for red
+     * @return              Parsed script -- check isValid() before running it
+     * @throws IOException  if it can't be read
+     */
+    public static AutoScript load(File file, boolean blue) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            return parse(in, blue);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parse a script for one alliance
+     */
+    static AutoScript parse(Reader reader, boolean blue) throws IOException {
+        AutoScript script = new AutoScript();
+        script.blue = blue;
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) {
+            script.lineNum++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.length() == 0) continue;
+            script.parseLine(line);
+        }
+        if (script.size == 0 && script.errors.isEmpty()) script.errors.add("no steps");
+        return script;
+    }
+
+    /**
+     * Write the built in path out as a script so there's something to edit
+     */
+    public static void writeDefault(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.print(DEFAULT_SCRIPT);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Parse one line into the next step
+     */
+    void parseLine(String line) {
+        tokens = line.split("\\s+");
+        next = 1;
+        skip = false;
+        int errorCount = errors.size();
+
+        int kind = lookup(tokens[0], KIND_NAMES);
+        if (kind < 0) {
+            kind = AutoPlanner.REQUIRED;
+        } else if (tokens.length < 2) {
+            error("missing step after '" + tokens[0] + "'");
+            return;
+        } else {
+            tokens = Arrays.copyOfRange(tokens, 1, tokens.length);
+        }
+
+        int op = lookup(tokens[0], OP_NAMES);
+        if (op < 0) {
+            error("unknown step '" + tokens[0] + "'");
+            return;
+        }
+        if (size >= MAX_STEPS) {
+            error("more than " + MAX_STEPS + " steps");
+            return;
+        }
+
+        int base = size * ARGS;
+        for (int i = 0; i < ARGS; i++) args[base + i] = Double.NaN;
+        int stepFlags = 0;
+
+        switch (op) {
+            case SHOOTER:
+                String power = word("on, off or a power");
+                if (power == null) break;
+                if (power.equalsIgnoreCase("on")) {
+                    args[base] = Double.NaN;        // Robot's default power
+                } else if (power.equalsIgnoreCase("off")) {
+                    args[base] = 0.0;
+                } else {
+                    next--;
+                    args[base] = number("power", -1.0, 1.0);
+                }
+                break;
+
+            case SHOOT:
+                args[base] = number("shots", 1, MAX_SHOTS);
+                while (next < tokens.length) {
+                    String option = tokens[next++];
+                    if (option.equalsIgnoreCase("pause")) {
+                        args[base + 1] = number("pause", 0.0, MAX_TIMEOUT * 1000.0);
+                    } else if (option.equalsIgnoreCase("timeout")) {
+                        args[base + 2] = number("timeout", 1.0, MAX_TIMEOUT * 1000.0);
+                    } else {
+                        error("unknown shoot option '" + option + "'");
+                    }
+                }
+                break;
+
+            case DRIVE:
+                args[base] = speed();
+                args[base + 1] = number("inches", -200.0, 200.0);
+                args[base + 2] = number("timeout", 0.1, MAX_TIMEOUT);
+                args[base + 3] = number("heading", -MAX_HEADING, MAX_HEADING);
+                args[base + 5] = 0.0;
+                while (next < tokens.length) {
+                    String option = tokens[next++];
+                    if (option.equalsIgnoreCase("wall")) {
+                        stepFlags |= WALL;
+                        args[base + 4] = number("wall range", 1.0, MAX_WALL_CM);
+                    } else if (option.equalsIgnoreCase("aggressive")) {
+                        stepFlags |= AGGRESSIVE;
+                    } else if (option.equalsIgnoreCase("correct")) {
+                        stepFlags |= CORRECT;
+                    } else if (option.equalsIgnoreCase("dodge")) {
+                        args[base + 5] = number("dodge", -90.0, 90.0);
+                    } else {
+                        error("unknown drive option '" + option + "'");
+                    }
+                }
+                break;
+
+            case TURN:
+                args[base] = number("heading", -MAX_HEADING, MAX_HEADING);
+                args[base + 3] = 0.0;
+                while (next < tokens.length) {
+                    String option = tokens[next++];
+                    if (option.equalsIgnoreCase("gain")) {
+                        args[base + 1] = number("gain", 0.0001, 1.0);
+                    } else if (option.equalsIgnoreCase("timeout")) {
+                        args[base + 2] = number("timeout", 0.1, MAX_TIMEOUT);
+                    } else if (option.equalsIgnoreCase("over")) {
+                        args[base + 3] = number("over", 0.0, 180.0);
+                    } else {
+                        error("unknown turn option '" + option + "'");
+                    }
+                }
+                break;
+
+            case LINE:
+                args[base] = speed();
+                args[base + 1] = number("timeout", 0.1, MAX_TIMEOUT);
+                break;
+
+            case BEACON:
+                args[base] = number("heading", -MAX_HEADING, MAX_HEADING);
+                args[base + 1] = number("blue offset", -24.0, 24.0);
+                args[base + 2] = number("red offset", -24.0, 24.0);
+                args[base + 3] = number("press", -24.0, 24.0);
+                break;
+
+            case INTAKE:
+                args[base] = number("power", -1.0, 1.0);
+                break;
+
+            case WAIT:
+                args[base] = number("seconds", 0.0, MAX_TIMEOUT);
+                break;
+
+            case UNTIL:
+                String what = word("line, beacon, servo or time");
+                if (what == null) break;
+                int condition = lookup(what, CONDITION_NAMES);
+                if (condition < 0) {
+                    error("can't wait until '" + what + "'");
+                    break;
+                }
+                args[base] = condition;
+                args[base + 1] = number((condition == UNTIL_TIME) ? "match time" : "timeout", 0.0, MAX_TIMEOUT);
+                break;
+        }
+        if (errors.size() == errorCount && next < tokens.length) {
+            error("unexpected '" + tokens[next] + "'");
+        }
+
+        // Steps with errors or for the other alliance don't go in the program
+        if (errors.size() > errorCount || skip) return;
+        ops[size] = op;
+        flags[size] = stepFlags;
+        describe[size] = "DM10337 -- Script line " + lineNum + ": " + line;
+        if (op == BEACON) names[size] = "beacon" + (++beacons);
+        labels[size] = (op == BEACON) ? names[size] : OP_NAMES[op] + " (line " + lineNum + ")";
+        kinds[size] = kind;
+        estimates[size] = estimate(op, base);
+        size++;
+    }
+
+    /**
+     * How long a step usually takes, for the planner
+     */
+    double estimate(int op, int base) {
+        switch (op) {
+            case SHOOT:
+                return args[base] * SHOT_SEC;
+            case DRIVE:
+                return Math.abs(args[base + 1] / (args[base] * DRIVE_INCHES_PER_SEC));
+            case TURN:
+                return TURN_SEC;
+            case LINE:
+                return LINE_SEC;
+            case BEACON:
+                return BEACON_SEC;
+            case WAIT:
+                return args[base];
+            case UNTIL:
+                return (args[base] == UNTIL_TIME) ? 0.0 : args[base + 1];
+            default:
+                return 0.0;
+        }
+    }
+
+    /**
+     * Next token as a word
+     */
+    String word(String expected) {
+        if (next >= tokens.length) {
+            error("missing " + expected);
+            return null;
+        }
+        return tokens[next++];
+    }
+
+    /**
+     * Drive speed -- either direction, but not stopped
+     */
+    double speed() {
+        double speed = number("speed", -1.0, 1.0);
+        if (speed == 0.0) error("speed can't be 0");
+        return speed;
+    }
+
+    /**
+     * Next token as a number for our alliance, checked against its limits
+     */
+    double number(String name, double min, double max) {
+        if (next >= tokens.length) {
+            error("missing " + name);
+            return Double.NaN;
+        }
+        String token = tokens[next++];
+
+        // blue/red pair -- check both sides so the validator catches the other alliance too
+        String[] sides = token.split("/", -1);
+        if (sides.length > 2) {
+            error(name + " '" + token + "' has more than one /");
+            return Double.NaN;
+        }
+        double value = Double.NaN;
+        for (int i = 0; i < sides.length; i++) {
+            boolean ours = (sides.length == 1) || ((i == 0) == blue);
+            if (sides[i].equals("-")) {
+                if (sides.length == 1) {
+                    error(name + " '-' is only allowed in a blue/red pair");
+                } else if (ours) {
+                    skip = true;
+                }
+                continue;
+            }
+            double side;
+            try {
+                side = Double.parseDouble(sides[i]);
+            } catch (NumberFormatException e) {
+                error(name + " '" + sides[i] + "' is not a number");
+                continue;
+            }
+            if (Double.isNaN(side) || side < min || side > max) {
+                error(name + " " + sides[i] + " is outside " + min + " to " + max);
+                continue;
+            }
+            if (ours) value = side;
+        }
+        return value;
+    }
+
+    /**
+     * @return  Index of a name in the list, ignoring case, -1 if not there
+     */
+    static int lookup(String name, String[] names) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) return i;
+        }
+        return -1;
+    }
+
+    void error(String message) {
+        errors.add("line " + lineNum + ": " + message);
+    }
+
+    /**
+     * @return  true if the script parsed with no errors
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * @return  Parse errors, with line numbers
+     */
+    public List<String> errors() {
+        return errors;
+    }
+
+    /**
+     * @return  Number of steps for our alliance
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return  Op code of a step
+     */
+    public int op(int step) {
+        return ops[step];
+    }
+
+    /**
+     * @return  true if a drive flag is set on a step
+     */
+    public boolean flag(int step, int flag) {
+        return (flags[step] & flag) != 0;
+    }
+
+    /**
+     * @param step  Step
+     * @param i     Which number, 0 to ARGS-1 in the order they are written
+     * @return      The number, NaN if it was an option that wasn't given
+     */
+    public double arg(int step, int i) {
+        return args[step * ARGS + i];
+    }
+
+    /**
+     * @return  Log line for a step
+     */
+    public String describe(int step) {
+        return describe[step];
+    }
+
+    /**
+     * @return  Name of a beacon step, numbered like the built in path's -- beacon1, beacon2...
+     */
+    public String name(int step) {
+        return names[step];
+    }
+
+    /**
+     * @return  Name of a step for the planner and profile
+     */
+    public String label(int step) {
+        return labels[step];
+    }
+
+    /**
+     * @return  AutoPlanner.REQUIRED, OPTIONAL or EXTRA
+     */
+    public int kind(int step) {
+        return kinds[step];
+    }
+
+    /**
+     * @return  Seconds a step usually takes
+     */
+    public double estimate(int step) {
+        return estimates[step];
+    }
+
+    /**
+     * PC side script checker.  Parses each file for both alliances and prints every error.
+     *
+     * @param args      Script files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: AutoScript <script files...>");
+            System.exit(1);
+        }
+
+        int errorCount = 0;
+        for (String arg : args) {
+            File file = new File(arg);
+            for (int side = 0; side < 2; side++) {
+                boolean blue = (side == 0);
+                AutoScript script = load(file, blue);
+                for (String error : script.errors()) {
+                    System.out.println(file.getPath() + " (" + (blue ? "blue" : "red") + ") " + error);
+                }
+                errorCount += script.errors().size();
+                if (script.isValid()) {
+                    System.out.println(file.getPath() + " (" + (blue ? "blue" : "red") + ") ok, "
+                            + script.size() + " steps");
+                }
+            }
+        }
+        System.exit(errorCount > 0 ? 2 : 0);
+    }
+
+    /**
+     * Same path as Auto100Blue/Auto100Red
+     */
+    final static String DEFAULT_SCRIPT =
+            "# DM10337 autonomous script -- see AutoScript.java.  blue/red values, - skips a step.\n" +
+            "# Delete this file to get the default path back\n" +
+            "\n" +
+            "# Shoot 2 into the center vortex\n" +
+            "shooter on\n" +
+            "drive 0.8 25 5 0\n" +
+            "shoot 3 pause 50 timeout 1500\n" +
+            "\n" +
+            "# Over to the beacon wall\n" +
+            "turn -85/85\n" +
+            "shooter off\n" +
+            "intake -1\n" +
+            "drive 0.8 64/65 5 -42/42\n" +
+            "intake 0\n" +
+            "turn 0/180 gain 0.011/0.0095\n" +
+            "extra turn -/180 gain 0.025 over 2\n" +
+            "\n" +
+            "# First beacon\n" +
+            "drive 0.8 -14/35 5 0/180 wall 12/11\n" +
+            "extra turn 0/180 gain 0.025 over 2\n" +
+            "line -0.10/0.10 5\n" +
+            "extra turn 0/180 gain 0.025 over 2\n" +
+            "beacon 0/180 1.2/-2.15 -1.85/1.1 4.5/-4.5\n" +
+            "\n" +
+            "# Second beacon\n" +
+            "drive 0.8 42/-44 4 0/180 wall 12 correct\n" +
+            "extra turn 0/180 gain 0.025 over 2\n" +
+            "optional line 0.10/-0.10 5\n" +
+            "extra turn 0/180 gain 0.025 over 2\n" +
+            "optional beacon 0/180 1.2/-2.25 -1.85/1.1 4.5/-4.5\n" +
+            "\n" +
+            "# Knock the cap ball and park\n" +
+            "intake -/-1\n" +
+            "drive 1.0 -72/58 10 -51.5/249 dodge 15/-15\n" +
+            "intake 0\n";
+}
@@ -0,0 +1,236 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
+import com.qualcomm.robotcore.util.ElapsedTime;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Autonomous driven by the script in FIRST/DM10337/auto.txt -- see AutoScript for the steps.
+ * Init, gyro handling and every move are the same as Auto100Blue; only the path comes from the
+ * script.  If the file isn't there the built in path is written out as a script to start from.
+ * If the script has errors they are logged and shown on the driver station, and we run the
+ * built in Auto100Blue path instead.
+ *
+ * Every script step is a planner step too, after the built in ones, so optional and extra steps
+ * are dropped and timeouts cut when the match clock runs short, the same as the built in path.
+ */
+
+@Autonomous(name="1. Auto Blue Script", group="1.BEACONS")
+// @Disabled
+public class AutoScriptBlue extends Auto100Blue {
+
+    // Script for our alliance, null to run the built in path
+    AutoScript script = null;
+
+    // For wait and until steps
+    ElapsedTime scriptTimer = new DMTimer();
+
+    // Planner step for each script step
+    int[] planSteps = null;
+
+    /**
+     * Load the script at INIT along with the built in plan, which we need if the script is bad.
+     */
+    @Override
+    void setupPlan() {
+        super.setupPlan();
+
+        File file = new File(FlightRecorder.recordFolder(), AutoScript.SCRIPT_FILE);
+        try {
+            if (!file.exists()) {
+                file.getParentFile().mkdirs();
+                AutoScript.writeDefault(file);
+                DbgLog.msg("DM10337 -- Wrote default auto script to " + file.getPath());
+            }
+            script = AutoScript.load(file, amIBlue());
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Auto script could not be read, using built in path: " + e.getMessage());
+            telemetry.log().add("Script unreadable -- built in path");
+            script = null;
+            return;
+        }
+
+        if (!script.isValid()) {
+            for (String error : script.errors()) {
+                DbgLog.error("DM10337 -- Auto script " + error);
+            }
+            telemetry.log().add("Script " + script.errors().get(0) + " -- built in path");
+            script = null;
+            return;
+        }
+        planSteps = new int[script.size()];
+        for (int step = 0; step < script.size(); step++) {
+            planSteps[step] = planner.addStep(script.label(step), script.estimate(step), script.kind(step));
+        }
+        DbgLog.msg("DM10337 -- Auto script loaded, " + script.size() + " steps");
+    }
+
+    /**
+     * Run the script one step at a time
+     */
+    @Override
+    void runPath() throws InterruptedException {
+        if (script == null) {
+            super.runPath();
+            return;
+        }
+
+        distCorrection = 0.0;
+        distCorrection_2 = 0.0;
+        for (int step = 0; step < script.size() && opModeIsActive(); step++) {
+            DbgLog.msg(script.describe(step));
+            int planStep = planSteps[step];
+            if (!planner.begin(planStep)) continue;
+            switch (script.op(step)) {
+                case AutoScript.SHOOTER:
+                    double power = script.arg(step, 0);
+                    robot.setShootPower(Double.isNaN(power) ? robot.SHOOT_DEFAULT : power);
+                    if (power == 0.0) robot.fire.setPower(0.0);
+                    break;
+
+                case AutoScript.SHOOT:
+                    camDrive(1.0, script.arg(step, 0), (long) or(script.arg(step, 1), 50),
+                            1000.0 * planner.timeout(planStep, or(script.arg(step, 2), 1500) / 1000.0));
+                    break;
+
+                case AutoScript.DRIVE:
+                    scriptDrive(step, planner.timeout(planStep, script.arg(step, 2)));
+                    break;
+
+                case AutoScript.TURN:
+                    double heading = script.arg(step, 0);
+                    double over = script.arg(step, 3);
+                    if (over > 0.0 && getError(heading) <= over) break;
+                    gyroTurn(TURN_SPEED, heading, or(script.arg(step, 1), P_TURN_COEFF),
+                            planner.timeout(planStep, or(script.arg(step, 2), TURN_TIMEOUT)));
+                    break;
+
+                case AutoScript.LINE:
+                    findLine(script.arg(step, 0), planner.timeout(planStep, script.arg(step, 1)));
+                    break;
+
+                case AutoScript.BEACON:
+                    pressBeacon(script.name(step), script.arg(step, 0), script.arg(step, 1),
+                            script.arg(step, 2), script.arg(step, 3));
+                    break;
+
+                case AutoScript.INTAKE:
+                    robot.intake.setPower(script.arg(step, 0));
+                    break;
+
+                case AutoScript.WAIT:
+                    waitUntil(-1, script.arg(step, 0));
+                    break;
+
+                case AutoScript.UNTIL:
+                    int condition = (int) script.arg(step, 0);
+                    waitUntil(condition, (condition == AutoScript.UNTIL_TIME) ? script.arg(step, 1) :
+                            planner.timeout(planStep, script.arg(step, 1)));
+                    break;
+            }
+            planner.end(planStep);
+        }
+    }
+
+    /**
+     * Drive step -- applies the beacon correction and dodge if asked for
+     *
+     * @param step      Script step
+     * @param timeout   Timeout in seconds, as cut down by the planner
+     */
+    void scriptDrive(int step, double timeout) throws InterruptedException {
+        double distance = script.arg(step, 1);
+        if (script.flag(step, AutoScript.CORRECT)) distance -= distCorrection + distCorrection_2;
+
+        double heading = script.arg(step, 3);
+        double dodge = script.arg(step, 5);
+        if (dodge != 0.0 && Math.signum(dodge) == Math.signum(distCorrection_2)) heading += dodge;
+
+        boolean wall = script.flag(step, AutoScript.WALL);
+        encoderDrive(script.arg(step, 0), distance, timeout, true, heading,
+                script.flag(step, AutoScript.AGGRESSIVE), wall, wall ? script.arg(step, 4) : 0.0);
+    }
+
+    /**
+     * Sit still until something happens
+     *
+     * @param condition     AutoScript.UNTIL_xxx, -1 to just wait
+     * @param seconds       Timeout, or match time for UNTIL_TIME
+     */
+    void waitUntil(int condition, double seconds) {
+        scriptTimer.reset();
+        recorder.watch((condition == AutoScript.UNTIL_LINE || condition == AutoScript.UNTIL_BEACON) ?
+                HardwareDM.COLORS : 0);
+        robot.setDrivePower(0.0, 0.0);
+        while (opModeIsActive()) {
+            if (condition == AutoScript.UNTIL_TIME) {
+                if (planner.elapsed() >= seconds) break;
+            } else {
+                if (scriptTimer.seconds() >= seconds) {
+                    if (condition >= 0) DbgLog.msg("DM10337 -- Script wait timed out");
+                    break;
+                }
+                if (condition == AutoScript.UNTIL_LINE && robot.stripeColor.alpha() >= WHITE_THRESHOLD) break;
+                if (condition == AutoScript.UNTIL_BEACON && beaconSeen()) break;
+                if (condition == AutoScript.UNTIL_SERVO && robot.beaconMove.isArrived()) break;
+            }
+            recordCycle();
+            idle();
+        }
+    }
+
+    /**
+     * @return  true if the camera or the color sensor can see a beacon color
+     */
+    boolean beaconSeen() {
+        if (camera != null) {
+            BeaconClassifier.Reading reading = camera.beacon(BEACON_CAMERA_MAX_AGE_MS);
+            if (reading != null && reading.isValid()) return true;
+        }
+        return robot.beaconColor.alpha() >= BEACON_ALPHA_MIN;
+    }
+
+    /**
+     * @return  value, or the default if the script didn't give it
+     */
+    static double or(double value, double defaultValue) {
+        return Double.isNaN(value) ? defaultValue : value;
+    }
+}
@@ -155,6 +155,9 @@ public class AutoShootBlue extends LinearOpMode {
         DbgLog.msg("DM10337- Auto Pressed Start");
         // Step through each leg of the path,
 
+        // No more IMU calibration captures -- they drop the IMU out of fusion mode
+        robot.imuCalibration.pause();
+
         // Make sure the gyro is zeroed
         zeroGyro();
 
@@ -162,8 +165,7 @@ public class AutoShootBlue extends LinearOpMode {
 
 
         // Spin up the shooter
-        robot.lShoot.setPower(robot.SHOOT_DEFAULT);
-        robot.rShoot.setPower(robot.SHOOT_DEFAULT);
+        robot.setShootPower(robot.SHOOT_DEFAULT);
 
         // Move forward  to line up for shooting particles
         // Use gyro to hold heading
@@ -178,8 +180,7 @@ public class AutoShootBlue extends LinearOpMode {
         // Fire the balls
         camDrive(1.0, 3, 50, 1500);
 
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
 
         while (waitTime.milliseconds() < 27000) {
             idle();
@@ -202,8 +203,7 @@ public class AutoShootBlue extends LinearOpMode {
 
         // Stop the shooter
         robot.fire.setPower(0.0);
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
 
 
 
@@ -0,0 +1,333 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Works out which color each half of the beacon is from a camera frame, so we know which side
+ * to push before we have stopped at the line.  Frames are RGB565, the format Vuforia hands out.
+ *
+ * Only a region of interest around where the beacon sits in the picture is looked at, and only
+ * every STEP'th pixel of that each way.  Each sample votes red, blue or nothing, using integer
+ * math on the 565 channels straight out of the frame buffer -- no copies, no floats, nothing
+ * allocated but the result.  A half is red or blue if enough of its samples voted and one
+ * color clearly outvoted the other.
+ *
+ * Also runs on a PC over saved frames:
+ *
+ *      java org.firstinspires.ftc.teamcode.BeaconClassifier <.565 or .ppm files...>
+ *
+ * .565 files are frames saved on the robot with writeFrame().  Any other picture can be turned
+ * into a binary .ppm with e.g. "convert beacon.jpg beacon.ppm".
+ */
+public class BeaconClassifier {
+
+    // Colors, same as Auto100Blue.beaconColor()
+    public final static int RED = -1;
+    public final static int UNKNOWN = 0;
+    public final static int BLUE = 1;
+
+    // Halves of the beacon
+    public final static int LEFT = 0;
+    public final static int RIGHT = 1;
+
+    // Sample every STEP'th pixel each way
+    public final static int STEP = 4;
+
+    // A channel must beat the others by this much, out of 255, to vote
+    public final static int COLOR_MARGIN = 40;
+
+    // Percent of a half's samples that must vote for it to have a color...
+    public final static int MIN_SHARE = 10;
+
+    // ...and the winning color needs this many times the other's votes
+    public final static int MAJORITY = 2;
+
+    // Biggest frame we will read from a file
+    public final static int MAX_WIDTH = 1280;
+    public final static int MAX_HEIGHT = 720;
+
+    final static int FRAME_MAGIC = 0x444D3635;      // "DM65"
+
+    /**
+     * Colors of both halves from one frame
+     */
+    public static class Reading {
+        public final long nanos;
+        public final int left;
+        public final int right;
+
+        Reading(long nanos, int left, int right) {
+            this.nanos = nanos;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return  Color of LEFT or RIGHT half
+         */
+        public int color(int half) {
+            return (half == LEFT) ? left : right;
+        }
+
+        /**
+         * @return  true if the halves are different known colors -- anything else is a bad look
+         */
+        public boolean isValid() {
+            return left != UNKNOWN && right != UNKNOWN && left != right;
+        }
+
+        @Override
+        public String toString() {
+            return "left " + name(left) + "  right " + name(right);
+        }
+    }
+
+    // Region of interest in percent of the frame
+    int roiLeft = 20;
+    int roiTop = 10;
+    int roiRight = 80;
+    int roiBottom = 60;
+
+    /* Votes from the last frame, by half */
+    int[] samples = new int[2];
+    int[] red = new int[2];
+    int[] blue = new int[2];
+
+    /**
+     * Set the region of interest
+     *
+     * @param left, top, right, bottom     Edges in percent of the frame width and height
+     */
+    public void setRegion(int left, int top, int right, int bottom) {
+        roiLeft = left;
+        roiTop = top;
+        roiRight = right;
+        roiBottom = bottom;
+    }
+
+    /**
+     * Classify one frame
+     *
+     * @param pixels    RGB565 pixels, little endian, starting at index 0
+     * @param width     Width in pixels
+     * @param height    Height in pixels
+     * @param stride    Bytes from one row to the next
+     * @param nanos     When the frame was taken
+     */
+    public Reading classify(ByteBuffer pixels, int width, int height, int stride, long nanos) {
+        int x0 = width * roiLeft / 100;
+        int x1 = width * roiRight / 100;
+        int y0 = height * roiTop / 100;
+        int y1 = height * roiBottom / 100;
+        int middle = (x0 + x1) / 2;
+
+        for (int half = LEFT; half <= RIGHT; half++) {
+            samples[half] = 0;
+            red[half] = 0;
+            blue[half] = 0;
+        }
+
+        for (int y = y0; y < y1; y += STEP) {
+            int row = y * stride;
+            for (int x = x0; x < x1; x += STEP) {
+                int index = row + 2 * x;
+                int pixel = (pixels.get(index) & 0xFF) | ((pixels.get(index + 1) & 0xFF) << 8);
+
+                // Widen 5/6/5 bits to 8 so the margins mean the same for every channel
+                int r = (pixel >> 11) & 0x1F;
+                int g = (pixel >> 5) & 0x3F;
+                int b = pixel & 0x1F;
+                r = (r << 3) | (r >> 2);
+                g = (g << 2) | (g >> 4);
+                b = (b << 3) | (b >> 2);
+
+                int half = (x < middle) ? LEFT : RIGHT;
+                samples[half]++;
+                if (r > g + COLOR_MARGIN && r > b + COLOR_MARGIN) {
+                    red[half]++;
+                } else if (b > r + COLOR_MARGIN && b >= g) {
+                    // Beacon blue has a lot of green in it on camera
+                    blue[half]++;
+                }
+            }
+        }
+
+        return new Reading(nanos, vote(LEFT), vote(RIGHT));
+    }
+
+    int vote(int half) {
+        int needed = samples[half] * MIN_SHARE / 100;
+        if (red[half] > needed && red[half] >= MAJORITY * blue[half]) return RED;
+        if (blue[half] > needed && blue[half] >= MAJORITY * red[half]) return BLUE;
+        return UNKNOWN;
+    }
+
+    /**
+     * @return  Samples that voted red / blue in a half of the last frame, and how many there were
+     */
+    public int redVotes(int half) {
+        return red[half];
+    }
+
+    public int blueVotes(int half) {
+        return blue[half];
+    }
+
+    public int samples(int half) {
+        return samples[half];
+    }
+
+    static String name(int color) {
+        return (color == RED) ? "RED" : (color == BLUE) ? "BLUE" : "?";
+    }
+
+    /**
+     * Save a frame so it can be classified again on a PC
+     */
+    public static void writeFrame(File file, ByteBuffer pixels, int width, int height, int stride) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FRAME_MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            for (int y = 0; y < height; y++) {
+                for (int i = 0; i < 2 * width; i++) {
+                    out.write(pixels.get(y * stride + i));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a .565 frame or a binary .ppm into a buffer as RGB565, stride 2 * width
+     *
+     * @param buffer    Buffer to fill, MAX_WIDTH * MAX_HEIGHT * 2 bytes, reused between files
+     * @return          {width, height}
+     */
+    public static int[] readFrame(File file, ByteBuffer buffer) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int width, height;
+            in.mark(4);
+            if (in.readInt() == FRAME_MAGIC) {
+                width = in.readInt();
+                height = in.readInt();
+                checkSize(file, width, height);
+                for (int i = 0; i < width * height * 2; i++) {
+                    buffer.put(i, in.readByte());
+                }
+            } else {
+                // Binary PPM: "P6 <width> <height> <maxval>" then RGB bytes
+                in.reset();
+                if (!ppmToken(in).equals("P6")) throw new IOException(file + ": not a .565 or P6 .ppm file");
+                width = Integer.parseInt(ppmToken(in));
+                height = Integer.parseInt(ppmToken(in));
+                int maxVal = Integer.parseInt(ppmToken(in));
+                checkSize(file, width, height);
+                for (int i = 0; i < width * height; i++) {
+                    int r = in.readUnsignedByte() * 255 / maxVal;
+                    int g = in.readUnsignedByte() * 255 / maxVal;
+                    int b = in.readUnsignedByte() * 255 / maxVal;
+                    int pixel = ((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3);
+                    buffer.put(2 * i, (byte) pixel);
+                    buffer.put(2 * i + 1, (byte) (pixel >> 8));
+                }
+            }
+            return new int[] {width, height};
+        } finally {
+            in.close();
+        }
+    }
+
+    static void checkSize(File file, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || width > MAX_WIDTH || height > MAX_HEIGHT) {
+            throw new IOException(file + ": frame size " + width + "x" + height + " not supported");
+        }
+    }
+
+    /**
+     * Next whitespace separated header field of a PPM, skipping comments.  Eats the one
+     * whitespace byte after it, as the format wants.
+     */
+    static String ppmToken(InputStream in) throws IOException {
+        StringBuilder token = new StringBuilder();
+        int c = in.read();
+        while (c == '#' || Character.isWhitespace(c)) {
+            if (c == '#') {
+                while (c != '\n' && c != -1) c = in.read();
+            }
+            c = in.read();
+        }
+        while (c != -1 && !Character.isWhitespace(c)) {
+            token.append((char) c);
+            c = in.read();
+        }
+        return token.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: BeaconClassifier <.565 or .ppm files...>");
+            System.exit(1);
+        }
+
+        BeaconClassifier classifier = new BeaconClassifier();
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_WIDTH * MAX_HEIGHT * 2);
+        for (String name : args) {
+            int[] size = readFrame(new File(name), buffer);
+            Reading reading = classifier.classify(buffer, size[0], size[1], 2 * size[0], 0);
+            System.out.println(String.format("%-30s %-24s red %d/%d blue %d/%d of %d/%d",
+                    new File(name).getName(), reading,
+                    classifier.redVotes(LEFT), classifier.redVotes(RIGHT),
+                    classifier.blueVotes(LEFT), classifier.blueVotes(RIGHT),
+                    classifier.samples(LEFT), classifier.samples(RIGHT)));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Robot pose from the four beacon picture targets, tracked on a background thread.  Every
+ * PERIOD_MS the thread asks its PoseSource for the newest fix and publishes it as an immutable
+ * Pose, so the control loop just picks up latest() with no locking and no vision work of its own.
+ *
+ * On the robot the source is a VuforiaPoseSource.  This class doesn't touch Vuforia itself, so
+ * on the JVM it can be fed a RecordedPoseSource instead -- poses logged on the robot with
+ * logTo() replay through exactly the same code.
+ *
+ * Field coordinates are Vuforia's: millimeters from the center of the field, the blue targets
+ * (Wheels, Legos) on the +Y wall and the red ones (Tools, Gears) on the -X wall.  Headings are
+ * degrees CCW from +X, like the gyro.
+ *
+ * The thread stops when stop() is called or the OpMode thread that started it ends.
+ */
+public class BeaconPoseService implements Runnable {
+
+    // How often to ask for a new pose -- plenty at beacon approach speeds
+    public final static long PERIOD_MS = 100;
+
+    // Targets, in the order they are in FTC_2016-17.xml
+    public final static int WHEELS = 0;
+    public final static int TOOLS = 1;
+    public final static int LEGOS = 2;
+    public final static int GEARS = 3;
+    public final static String[] TARGET_NAMES = {"Wheels", "Tools", "Legos", "Gears"};
+
+    // The FTC field is ~11'10" center to center of the glass panels
+    public final static double FIELD_WIDTH_MM = (12 * 12 - 2) * 25.4;
+
+    // Robot front is its +Y axis, 90 degrees CCW of the +X the heading is measured from
+    final static double FORWARD_OFFSET = 90.0;
+
+    /**
+     * One robot position fix
+     */
+    public static class Pose {
+        public final long nanos;            // DMTimer.nanoTime() when we got it
+        public final int target;            // Which picture we saw
+        public final double x;              // mm
+        public final double y;              // mm
+        public final double heading;        // degrees
+
+        public Pose(long nanos, int target, double x, double y, double heading) {
+            this.nanos = nanos;
+            this.target = target;
+            this.x = x;
+            this.y = y;
+            this.heading = heading;
+        }
+
+        /**
+         * @return  true if the target is on the blue beacon wall
+         */
+        public boolean isBlue() {
+            return target == WHEELS || target == LEGOS;
+        }
+
+        /**
+         * @return  cm from the middle of the robot to the wall the target is on
+         */
+        public double wallDistance() {
+            double mm = isBlue() ? FIELD_WIDTH_MM / 2.0 - y : x + FIELD_WIDTH_MM / 2.0;
+            return mm / 10.0;
+        }
+
+        /**
+         * @return  Robot front relative to the wall the target is on, -90..90 degrees CCW.
+         *          Driving along the wall either way is 0.
+         */
+        public double wallHeading() {
+            double angle = heading + FORWARD_OFFSET - (isBlue() ? 0.0 : 90.0);
+            while (angle > 90.0) angle -= 180.0;
+            while (angle <= -90.0) angle += 180.0;
+            return angle;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s x:%.0f y:%.0f heading:%.1f", TARGET_NAMES[target], x, y, heading);
+        }
+    }
+
+    /**
+     * Where poses come from -- Vuforia on the robot, a recording on the JVM
+     */
+    public interface PoseSource {
+        /** Get ready.  Called on the service thread, so it can take its time. */
+        void start();
+
+        /** @return  Newest pose since the last call stamped with nanos, or null if none */
+        Pose read(long nanos);
+
+        /** Let go of everything */
+        void stop();
+    }
+
+    final PoseSource source;
+
+    Thread thread = null;
+    Thread owner = null;
+    volatile boolean running = false;
+    volatile Pose latest = null;
+    volatile int poseCount = 0;
+
+    /* Optional log of every pose, for replaying on the JVM */
+    File logFile = null;
+    PrintWriter log = null;
+
+    /**
+     * Constructor
+     *
+     * @param source    Where to get poses
+     */
+    public BeaconPoseService(PoseSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Log every pose to a CSV file RecordedPoseSource can play back.  Call before start().
+     * Times are DMTimer nanos, the same clock as the flight recording, so MatchReplay can line
+     * the two up.
+     */
+    public void logTo(File file) {
+        logFile = file;
+    }
+
+    /**
+     * Start tracking.  The calling thread is taken as the OpMode's -- we stop when it ends.
+     */
+    public synchronized void start() {
+        if (running) return;
+        owner = Thread.currentThread();
+        running = true;
+        thread = new Thread(this, "DM10337 beacon pose");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop tracking
+     */
+    public synchronized void stop() {
+        running = false;
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            openLog();
+            source.start();
+            DbgLog.msg("DM10337 -- Beacon pose service started");
+
+            long next = DMTimer.nanoTime();
+            while (running && owner.isAlive()) {
+                poll(DMTimer.nanoTime());
+
+                // Fixed rate -- if we fell behind just start over from now
+                next += PERIOD_MS * 1000000L;
+                long wait = (next - DMTimer.nanoTime()) / 1000000L;
+                if (wait > 0) {
+                    Thread.sleep(Math.min(wait, PERIOD_MS));
+                } else {
+                    next = DMTimer.nanoTime();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Just stop
+        } catch (RuntimeException e) {
+            DbgLog.error("DM10337 -- Beacon pose service failed: " + e);
+        } finally {
+            running = false;
+            source.stop();
+            if (log != null) log.close();
+            DbgLog.msg("DM10337 -- Beacon pose service stopped after " + poseCount + " poses");
+        }
+    }
+
+    /**
+     * One cycle -- pick up and publish a new pose if there is one
+     */
+    void poll(long nanos) {
+        Pose pose = source.read(nanos);
+        if (pose == null) return;
+        latest = pose;
+        poseCount++;
+        if (log != null) {
+            log.printf(Locale.US, "%d,%d,%.1f,%.1f,%.2f\n", pose.nanos, pose.target, pose.x, pose.y, pose.heading);
+        }
+    }
+
+    void openLog() {
+        if (logFile == null) return;
+        try {
+            log = new PrintWriter(new FileWriter(logFile));
+            log.println("nanos,target,x,y,heading");
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Could not open pose log: " + e.getMessage());
+            log = null;
+        }
+    }
+
+    /**
+     * @param maxAgeMs  Oldest pose worth having
+     * @return          Newest pose if it is recent enough, else null
+     */
+    public Pose latest(double maxAgeMs) {
+        Pose pose = latest;
+        if (pose == null || DMTimer.nanoTime() - pose.nanos > maxAgeMs * 1.0e6) return null;
+        return pose;
+    }
+
+    /**
+     * @return  true while the thread is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return  Poses published so far
+     */
+    public int poseCount() {
+        return poseCount;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Base for OpModes that run their control loop at a fixed rate.  After start, controlStep() is
+ * called every period (10 ms = 100 Hz by default) on its own top priority thread, instead of
+ * however often idle() and the blocking reads let a LinearOpMode loop come round.
+ *
+ * Telemetry and logging don't belong on that thread.  controlStep() puts telemetry values and
+ * log lines on the lock free report queue, and the OpMode's own thread, at lower priority,
+ * drains it into TelemetryDM and DbgLog and does the sending.
+ *
+ * Every cycle is timed.  A cycle that runs past the start of the next period is a deadline
+ * miss; if we are more than a whole period behind those periods are skipped rather than run
+ * back to back.  Misses show on the driver station and a summary goes to the log at the end.
+ *
+ * Subclasses:
+ *      setup()         INIT -- map hardware, register telemetry slots on tel
+ *      starting()      Once at start, before the first step
+ *      controlStep()   One control cycle -- return false when done.  Only use report, not tel.
+ *      finish()        After the last step -- stop motors etc.
+ */
+public abstract class ControlOpMode extends LinearOpMode {
+
+    // Default control period
+    public final static double DEFAULT_PERIOD_MS = 10.0;
+
+    // How often the reporter drains the queue
+    public final static long REPORT_PERIOD_MS = 20;
+
+    // Room for this many telemetry values and log lines between drains
+    public final static int REPORT_QUEUE_SIZE = 1024;
+
+    // How long to wait for the control thread to stop
+    final static long JOIN_MS = 500;
+
+    // Telemetry -- register slots in setup(), after that it belongs to the reporter
+    protected TelemetryDM tel;
+
+    // Telemetry values and log lines from controlStep()
+    protected final ReportQueue report = new ReportQueue(REPORT_QUEUE_SIZE);
+
+    long periodNanos = (long) (DEFAULT_PERIOD_MS * 1.0e6);
+    volatile boolean controlRunning = false;
+    volatile RuntimeException failure = null;
+    int missSlot;
+
+    /* Cycle timing, written by the control thread */
+    int cycles = 0;
+    int misses = 0;
+    int skipped = 0;
+    long worstLateNanos = 0;
+    LatencyHistogram stepTimes = new LatencyHistogram(40, 0.5);
+
+    /**
+     * INIT -- runs on the OpMode thread before start
+     */
+    protected abstract void setup() throws InterruptedException;
+
+    /**
+     * Once at start, on the OpMode thread before the control thread starts
+     */
+    protected void starting() {
+    }
+
+    /**
+     * One control cycle, on the control thread
+     *
+     * @return  false to finish
+     */
+    protected abstract boolean controlStep();
+
+    /**
+     * After the last cycle, on the OpMode thread
+     */
+    protected void finish() {
+    }
+
+    /**
+     * Change the control period.  Call from setup().
+     */
+    protected void setPeriod(double ms) {
+        periodNanos = (long) (ms * 1.0e6);
+    }
+
+    @Override
+    public final void runOpMode() throws InterruptedException {
+        tel = new TelemetryDM(telemetry);
+        missSlot = tel.addInt("Loop misses: ");
+        setup();
+        tel.forceUpdate();
+
+        waitForStart();
+        starting();
+
+        Thread control = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                controlLoop();
+            }
+        }, "DM10337 control");
+        control.setPriority(Thread.MAX_PRIORITY);
+        controlRunning = true;
+        control.start();
+
+        // From here this thread is the reporter, below the control thread
+        int priority = Thread.currentThread().getPriority();
+        Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
+        try {
+            while (controlRunning && opModeIsActive()) {
+                report.drainTo(tel);
+                tel.update();
+                sleep(REPORT_PERIOD_MS);
+            }
+        } finally {
+            controlRunning = false;
+
+            // Stop leaves this thread interrupted, which would make join() return straight away.
+            // Clear it while we wait for the control thread, and put it back for the SDK after.
+            boolean interrupted = Thread.interrupted();
+            long deadline = System.nanoTime() + JOIN_MS * 1000000L;
+            long waitMs;
+            while (control.isAlive() && (waitMs = (deadline - System.nanoTime()) / 1000000L) > 0) {
+                try {
+                    control.join(waitMs);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            report.drainTo(tel);
+            Thread.currentThread().setPriority(priority);
+
+            DbgLog.msg("DM10337 -- Control loop " + cycles + " cycles at " + (periodNanos / 1.0e6) + "ms" +
+                    "  misses:" + misses + "  skipped:" + skipped +
+                    "  worst late:" + (worstLateNanos / 1.0e6) + "ms  reports dropped:" + report.dropped());
+            DbgLog.msg("DM10337 -- Control step " + stepTimes.summary());
+            if (control.isAlive()) {
+                // finish() would race a controlStep() still writing -- the SDK stops the motors anyway
+                DbgLog.error("DM10337 -- Control thread still running after " + JOIN_MS + "ms, skipping finish()");
+            } else {
+                finish();
+            }
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * The control thread.  Runs on System.nanoTime() -- this is real time scheduling.
+     */
+    void controlLoop() {
+        long next = System.nanoTime();
+        try {
+            while (controlRunning && !isStopRequested()) {
+                long stepStart = System.nanoTime();
+                boolean more = controlStep();
+                long stepEnd = System.nanoTime();
+                cycles++;
+                stepTimes.add((stepEnd - stepStart) / 1.0e6);
+                if (!more) break;
+
+                next += periodNanos;
+                long late = stepEnd - next;
+                if (late > 0) {
+                    // Missed the start of the next period
+                    misses++;
+                    report.setInt(missSlot, misses);
+                    if (late > worstLateNanos) worstLateNanos = late;
+                    if (late >= periodNanos) {
+                        // Skip whole periods rather than run them back to back
+                        long behind = late / periodNanos;
+                        skipped += behind;
+                        next += behind * periodNanos;
+                    }
+                }
+
+                long wait;
+                while ((wait = next - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            controlRunning = false;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.util.ElapsedTime;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Drop in replacement for ElapsedTime that reads the time from one place we control.
+ * On the robot that is just System.nanoTime().  When replaying a recorded match the
+ * replay sets the time from each record, so every timer in the OpMode sees exactly the
+ * times it saw on the field no matter how fast the replay runs.
+ *
+ * Use it anywhere an OpMode would use "new ElapsedTime()".
+ */
+public class DMTimer extends ElapsedTime {
+
+    // Recorded time when replaying, or -1 to use the real clock
+    static volatile long replayNanos = -1;
+
+    // Our own start time -- ElapsedTime keeps its start private
+    long start;
+
+    /**
+     * Constructor -- starts the timer now
+     */
+    public DMTimer() {
+        super();
+        reset();
+    }
+
+    /**
+     * @return  Current time in nanoseconds, recorded time if we are replaying
+     */
+    public static long nanoTime() {
+        long replay = replayNanos;
+        return (replay >= 0) ? replay : System.nanoTime();
+    }
+
+    /**
+     * Drive all timers from recorded time.  Only the replay should call this.
+     *
+     * @param nanos     Time of the record being replayed
+     */
+    public static void setReplayTime(long nanos) {
+        replayNanos = nanos;
+    }
+
+    /**
+     * Go back to the real clock
+     */
+    public static void clearReplayTime() {
+        replayNanos = -1;
+    }
+
+    @Override
+    public void reset() {
+        start = nanoTime();
+    }
+
+    @Override
+    public double startTime() {
+        return start / (double) SECOND_IN_NANO;
+    }
+
+    @Override
+    public double time() {
+        return seconds();
+    }
+
+    @Override
+    public double seconds() {
+        return (nanoTime() - start) / (double) SECOND_IN_NANO;
+    }
+
+    @Override
+    public double milliseconds() {
+        return (nanoTime() - start) / (double) MILLIS_IN_NANO;
+    }
+}
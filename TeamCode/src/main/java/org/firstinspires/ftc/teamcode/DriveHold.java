@@ -0,0 +1,164 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Holds the drive train where it is against defense.  On engage we snapshot the four drive
+ * encoders, then each cycle every wheel gets power in proportion to how far it has been pushed
+ * off its snapshot.  The motors stay in RUN_USING_ENCODER the whole time -- no RUN_TO_POSITION
+ * or zero power behavior switches -- so engaging and releasing are just the powers we write
+ * that cycle anyway, and the joysticks take over again the same cycle the button comes up.
+ *
+ * effort() reports how hard we are pushing back, for telemetry and the log.
+ *
+ * Typical use:
+ *      if (holdRequested) {
+ *          if (!hold.isEngaged()) hold.engage();
+ *          hold.update();
+ *      } else {
+ *          hold.release();
+ *          // set joystick powers
+ *      }
+ */
+public class DriveHold {
+
+    // Power per encoder count pushed off the snapshot -- full power at about 1.5 inches
+    public final static double P_HOLD = 1.0 / 150.0;
+
+    // Don't fight for anything this close, it just buzzes the motors
+    public final static int TOLERANCE = 5;
+
+    // Most power any wheel gets while holding
+    public final static double MAX_POWER = 1.0;
+
+    // Effort above this counts as being pushed
+    public final static double PUSHED_EFFORT = 0.25;
+
+    /* Drive motors and their snapshots, in lf, lr, rf, rr order */
+    HardwareDM robot;
+    DcMotor[] motors;
+    int[] holdPosn;
+
+    boolean engaged = false;
+    double effort = 0.0;
+    double peakEffort = 0.0;
+
+    /**
+     * Constructor
+     *
+     * @param robot     Robot whose drive train to hold
+     */
+    public DriveHold(HardwareDM robot) {
+        this.robot = robot;
+        motors = new DcMotor[] {robot.lfDrive, robot.lrDrive, robot.rfDrive, robot.rrDrive};
+        holdPosn = new int[motors.length];
+    }
+
+    /**
+     * Snapshot where we are and start holding there
+     */
+    public void engage() {
+        for (int i = 0; i < motors.length; i++) {
+            holdPosn[i] = motors[i].getCurrentPosition();
+        }
+        engaged = true;
+        effort = 0.0;
+        peakEffort = 0.0;
+    }
+
+    /**
+     * Stop holding.  The motors are left alone -- the caller sets joystick powers next.
+     */
+    public void release() {
+        engaged = false;
+        effort = 0.0;
+    }
+
+    /**
+     * One hold cycle -- read the encoders and push each wheel back to its snapshot
+     *
+     * @return  Effort this cycle
+     */
+    public double update() {
+        if (!engaged) return 0.0;
+
+        double total = 0.0;
+        for (int i = 0; i < motors.length; i++) {
+            int error = holdPosn[i] - motors[i].getCurrentPosition();
+            double power = 0.0;
+            if (Math.abs(error) > TOLERANCE) {
+                power = Range.clip(error * P_HOLD, -MAX_POWER, MAX_POWER);
+            }
+            motors[i].setPower(robot.compensate(motors[i], power));
+            total += Math.abs(power);
+        }
+        effort = total / motors.length;
+        peakEffort = Math.max(peakEffort, effort);
+        return effort;
+    }
+
+    /**
+     * @return  true while holding
+     */
+    public boolean isEngaged() {
+        return engaged;
+    }
+
+    /**
+     * @return  Average absolute hold power over the four wheels last cycle, 0 to 1
+     */
+    public double effort() {
+        return effort;
+    }
+
+    /**
+     * @return  Highest effort since we engaged
+     */
+    public double peakEffort() {
+        return peakEffort;
+    }
+
+    /**
+     * @return  true if we are having to push back
+     */
+    public boolean isPushed() {
+        return effort >= PUSHED_EFFORT;
+    }
+}
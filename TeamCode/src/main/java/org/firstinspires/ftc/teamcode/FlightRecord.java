@@ -0,0 +1,185 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This is NOT an opmode.
+ *
+ * One fixed width flight recorder record -- everything we know about the robot for one
+ * control cycle.  The layout is shared by the FlightRecorder on the phone and the
+ * FlightRecordReader on a PC, so only ever add fields to the end and bump VERSION.
+ *
+ * Record layout (big endian, RECORD_SIZE bytes):
+ *      long    timestamp in nanoseconds
+ *      int     NUM_INTS integer fields  (encoders, color channels, switches, gamepad buttons)
+ *      float   NUM_FLOATS float fields  (heading, range, gamepad axes, commanded powers, accel, gyro bias)
+ *
+ * This class has no Android dependencies so it can be used on the JVM.
+ */
+public class FlightRecord {
+
+    // File header
+    public final static int MAGIC = 0x444D4652;     // "DMFR"
+    public final static int VERSION = 1;
+    public final static String FILE_EXTENSION = ".dmr";
+
+    /* Integer fields */
+    public final static int LF_ENC          = 0;
+    public final static int LR_ENC          = 1;
+    public final static int RF_ENC          = 2;
+    public final static int RR_ENC          = 3;
+    public final static int L_SHOOT_ENC     = 4;
+    public final static int R_SHOOT_ENC     = 5;
+    public final static int INTAKE_ENC      = 6;
+    public final static int LIFT_ENC        = 7;
+    public final static int BEACON_RED      = 8;
+    public final static int BEACON_GREEN    = 9;
+    public final static int BEACON_BLUE     = 10;
+    public final static int BEACON_ALPHA    = 11;
+    public final static int STRIPE_RED      = 12;
+    public final static int STRIPE_GREEN    = 13;
+    public final static int STRIPE_BLUE     = 14;
+    public final static int STRIPE_ALPHA    = 15;
+    public final static int TOUCH_BITS      = 16;   // bit 0 lift limit, bit 1 cam switch
+    public final static int G1_BUTTONS      = 17;
+    public final static int G2_BUTTONS      = 18;
+    public final static int NUM_INTS        = 19;
+
+    /* Float fields */
+    public final static int HEADING         = 0;    // As read from the IMU, before any bias correction
+    public final static int RANGE_CM        = 1;
+    public final static int G1_LEFT_X       = 2;
+    public final static int G1_LEFT_Y       = 3;
+    public final static int G1_RIGHT_X      = 4;
+    public final static int G1_RIGHT_Y      = 5;
+    public final static int G1_LEFT_TRIG    = 6;
+    public final static int G1_RIGHT_TRIG   = 7;
+    public final static int G2_LEFT_X       = 8;
+    public final static int G2_LEFT_Y       = 9;
+    public final static int G2_RIGHT_X      = 10;
+    public final static int G2_RIGHT_Y      = 11;
+    public final static int G2_LEFT_TRIG    = 12;
+    public final static int G2_RIGHT_TRIG   = 13;
+    public final static int LF_POWER        = 14;
+    public final static int LR_POWER        = 15;
+    public final static int RF_POWER        = 16;
+    public final static int RR_POWER        = 17;
+    public final static int L_SHOOT_POWER   = 18;
+    public final static int R_SHOOT_POWER   = 19;
+    public final static int INTAKE_POWER    = 20;
+    public final static int LIFT_POWER      = 21;
+    public final static int FIRE_POWER      = 22;
+    public final static int BEACON_POS      = 23;
+    public final static int PIVOT_POS       = 24;
+    public final static int LIFT_DEPLOY_POS = 25;
+    public final static int CAPHOLD_POS     = 26;
+    public final static int ACCEL           = 27;   // Horizontal IMU acceleration m/s/s, NaN if not read that cycle
+    public final static int GYRO_OFFSET     = 28;   // Gyro bias locked in at start, NaN if none
+    public final static int GYRO_DRIFT      = 29;   // deg/sec
+    public final static int NUM_FLOATS      = 30;
+
+    public final static int RECORD_SIZE = 8 + 4 * NUM_INTS + 4 * NUM_FLOATS;
+
+    // Column names -- in record order -- for CSV export
+    public final static String[] INT_NAMES = {
+            "lfEnc", "lrEnc", "rfEnc", "rrEnc", "lShootEnc", "rShootEnc", "intakeEnc", "liftEnc",
+            "beaconR", "beaconG", "beaconB", "beaconA", "stripeR", "stripeG", "stripeB", "stripeA",
+            "touch", "g1Buttons", "g2Buttons"
+    };
+    public final static String[] FLOAT_NAMES = {
+            "heading", "rangeCm",
+            "g1LX", "g1LY", "g1RX", "g1RY", "g1LT", "g1RT",
+            "g2LX", "g2LY", "g2RX", "g2RY", "g2LT", "g2RT",
+            "lfPwr", "lrPwr", "rfPwr", "rrPwr", "lShootPwr", "rShootPwr", "intakePwr", "liftPwr", "firePwr",
+            "beaconPos", "pivotPos", "liftDeployPos", "capholdPos", "accel", "gyroOffset", "gyroDrift"
+    };
+
+    // Gamepad button bits -- same order the SDK uses on the wire
+    public final static int BTN_RIGHT_BUMPER       = 1;
+    public final static int BTN_LEFT_BUMPER        = 1 << 1;
+    public final static int BTN_BACK               = 1 << 2;
+    public final static int BTN_START              = 1 << 3;
+    public final static int BTN_GUIDE              = 1 << 4;
+    public final static int BTN_Y                  = 1 << 5;
+    public final static int BTN_X                  = 1 << 6;
+    public final static int BTN_B                  = 1 << 7;
+    public final static int BTN_A                  = 1 << 8;
+    public final static int BTN_DPAD_RIGHT         = 1 << 9;
+    public final static int BTN_DPAD_LEFT          = 1 << 10;
+    public final static int BTN_DPAD_DOWN          = 1 << 11;
+    public final static int BTN_DPAD_UP            = 1 << 12;
+    public final static int BTN_RIGHT_STICK        = 1 << 13;
+    public final static int BTN_LEFT_STICK         = 1 << 14;
+
+    /* Record contents */
+    public long timestamp = 0;
+    public final int[] ints = new int[NUM_INTS];
+    public final float[] floats = new float[NUM_FLOATS];
+
+    /**
+     * Write this record at the current position of the buffer
+     *
+     * @param buffer    Buffer with at least RECORD_SIZE bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        for (int i = 0; i < NUM_INTS; i++) {
+            buffer.putInt(ints[i]);
+        }
+        for (int i = 0; i < NUM_FLOATS; i++) {
+            buffer.putFloat(floats[i]);
+        }
+    }
+
+    /**
+     * Fill this record from a stream written by writeTo
+     *
+     * @param in            Stream positioned at the start of a record
+     * @throws IOException  on read error or end of file
+     */
+    public void readFrom(DataInputStream in) throws IOException {
+        timestamp = in.readLong();
+        for (int i = 0; i < NUM_INTS; i++) {
+            ints[i] = in.readInt();
+        }
+        for (int i = 0; i < NUM_FLOATS; i++) {
+            floats[i] = in.readFloat();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Reads flight recorder files written by FlightRecorder.  Runs on a PC -- no Android needed.
+ *
+ * To convert a recording to CSV:
+ *      java org.firstinspires.ftc.teamcode.FlightRecordReader TeleOpMain-1487000000000.dmr [out.csv]
+ *
+ * The CSV has one row per control cycle with the time in seconds from the first record
+ * followed by every field in FlightRecord order.
+ */
+public class FlightRecordReader implements Closeable {
+
+    DataInputStream in;
+
+    /**
+     * Open a recording and check its header
+     *
+     * @param file          Recording written by FlightRecorder
+     * @throws IOException  if the file can't be read or isn't a recording we understand
+     */
+    public FlightRecordReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        int magic = in.readInt();
+        int version = in.readInt();
+        int recordSize = in.readInt();
+        int numInts = in.readInt();
+        int numFloats = in.readInt();
+        if (magic != FlightRecord.MAGIC) {
+            close();
+            throw new IOException(file + " is not a flight recording");
+        }
+        if (version != FlightRecord.VERSION || recordSize != FlightRecord.RECORD_SIZE ||
+                numInts != FlightRecord.NUM_INTS || numFloats != FlightRecord.NUM_FLOATS) {
+            close();
+            throw new IOException(file + " has record layout version " + version +
+                    ", this reader understands version " + FlightRecord.VERSION);
+        }
+    }
+
+    /**
+     * Read the next record
+     *
+     * @param record        Record to fill in
+     * @return              false at the end of the recording
+     * @throws IOException  on read error
+     */
+    public boolean next(FlightRecord record) throws IOException {
+        try {
+            record.readFrom(in);
+            return true;
+        } catch (EOFException e) {
+            // End of file -- a partial last record from a pulled battery is dropped too
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Convert a whole recording to CSV
+     *
+     * @param out           Where to write the CSV text
+     * @return              Number of records converted
+     * @throws IOException  on read or write error
+     */
+    public int toCsv(Writer out) throws IOException {
+        FlightRecord record = new FlightRecord();
+        StringBuilder line = new StringBuilder(512);
+
+        // Header row
+        line.append("time");
+        for (String name : FlightRecord.INT_NAMES) {
+            line.append(',').append(name);
+        }
+        for (String name : FlightRecord.FLOAT_NAMES) {
+            line.append(',').append(name);
+        }
+        out.write(line.append('\n').toString());
+
+        int count = 0;
+        long startTime = 0;
+        while (next(record)) {
+            if (count == 0) startTime = record.timestamp;
+
+            line.setLength(0);
+            line.append((record.timestamp - startTime) / 1.0e9);
+            for (int i = 0; i < FlightRecord.NUM_INTS; i++) {
+                line.append(',').append(record.ints[i]);
+            }
+            for (int i = 0; i < FlightRecord.NUM_FLOATS; i++) {
+                line.append(',').append(record.floats[i]);
+            }
+            out.write(line.append('\n').toString());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Command line converter
+     *
+     * @param args      recording file and optional CSV file name
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FlightRecordReader <recording.dmr> [output.csv]");
+            System.exit(1);
+        }
+
+        File inFile = new File(args[0]);
+        File outFile;
+        if (args.length > 1) {
+            outFile = new File(args[1]);
+        } else {
+            String name = inFile.getPath();
+            if (name.endsWith(FlightRecord.FILE_EXTENSION)) {
+                name = name.substring(0, name.length() - FlightRecord.FILE_EXTENSION.length());
+            }
+            outFile = new File(name + ".csv");
+        }
+
+        FlightRecordReader reader = new FlightRecordReader(inFile);
+        Writer out = new BufferedWriter(new FileWriter(outFile));
+        try {
+            int count = reader.toCsv(out);
+            System.out.println("Wrote " + count + " records to " + outFile);
+        } finally {
+            out.close();
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.internal.AppUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Flight recorder for the Dark Matter robot.  Call sample() once per control cycle and it
+ * captures every encoder, sensor, gamepad axis and commanded power into one fixed width
+ * FlightRecord.  Records are packed into a preallocated buffer and written to a file on the
+ * phone a chunk at a time, so the control loop never formats any text.
+ *
+ * Reading every device costs I/O on the control thread, so the OpMode says with watch() which
+ * parts it is reading in the current step.  Those are sampled every cycle; the rest only every
+ * SLOW_CYCLES cycles and on the first cycle after each watch(), which covers the reads an OpMode
+ * makes between steps.  Commanded powers and servo positions are what we last sent, so they are
+ * recorded every cycle.
+ *
+ * Files go to FIRST/DM10337/<name>-<time>.dmr on the phone.  Pull them off with adb and use
+ * FlightRecordReader to turn them into CSV.
+ *
+ * Any file error just turns the recorder off -- it must never take down a match.
+ */
+public class FlightRecorder {
+
+    // Number of records we buffer before writing them out
+    public final static int RECORDS_PER_CHUNK = 128;
+
+    // Parts the OpMode isn't watching are sampled once every this many cycles
+    public final static int SLOW_CYCLES = 10;
+
+    /* The record we fill in each cycle */
+    public final FlightRecord record = new FlightRecord();
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * FlightRecord.RECORD_SIZE);
+    FileChannel channel = null;
+    File file = null;
+    int recordCount = 0;
+
+    /* Which parts to sample -- HardwareDM part bits */
+    int watched = HardwareDM.ALL;
+    boolean sampleAll = true;
+    int slowCount = 0;
+
+    /* Gyro bias the OpMode locked in at start -- a replay has no INIT loop to fit it again */
+    double gyroOffset = Double.NaN;
+    double gyroDrift = Double.NaN;
+
+    /**
+     *
+     *   Constructor -- no work to do here.  Use open to start a recording
+     */
+    public FlightRecorder() {
+    }
+
+    /**
+     * Start a new recording file
+     *
+     * @param name      Name of the recording, usually the OpMode name
+     * @return          true if the file is open and recording
+     */
+    public boolean open(String name) {
+        close();
+
+        try {
+            File folder = recordFolder();
+            folder.mkdirs();
+            file = new File(folder, name + "-" + System.currentTimeMillis() + FlightRecord.FILE_EXTENSION);
+            channel = new FileOutputStream(file).getChannel();
+
+            // Header so the reader can check it knows this layout
+            ByteBuffer header = ByteBuffer.allocate(20);
+            header.putInt(FlightRecord.MAGIC);
+            header.putInt(FlightRecord.VERSION);
+            header.putInt(FlightRecord.RECORD_SIZE);
+            header.putInt(FlightRecord.NUM_INTS);
+            header.putInt(FlightRecord.NUM_FLOATS);
+            header.flip();
+            channel.write(header);
+
+            buffer.clear();
+            recordCount = 0;
+            sampleAll = true;
+            DbgLog.msg("DM10337 -- Flight recorder writing to " + file.getPath());
+            return true;
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Flight recorder could not open file: " + e.getMessage());
+            channel = null;
+            return false;
+        }
+    }
+
+    /**
+     * @return  Where recordings are kept on the phone
+     */
+    public static File recordFolder() {
+        return new File(AppUtil.FIRST_FOLDER, "DM10337");
+    }
+
+    /**
+     * @return  true if we are currently recording
+     */
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Say which parts the OpMode reads from here on, e.g. at the start of each auto step.  The
+     * next record samples everything, then only these parts until the next slow cycle.
+     *
+     * @param parts     HardwareDM part bits, e.g. DRIVE | RANGE
+     */
+    public void watch(int parts) {
+        watched = parts;
+        sampleAll = true;
+    }
+
+    /**
+     * Set the gyro bias to write into every record from here on
+     *
+     * @param offset    Offset in degrees, as GyroBiasEstimator.offset()
+     * @param drift     Drift in degrees/sec, as GyroBiasEstimator.drift()
+     */
+    public void gyroBias(double offset, double drift) {
+        gyroOffset = offset;
+        gyroDrift = drift;
+    }
+
+    /**
+     * Capture one control cycle from the robot hardware and gamepads and append it.
+     *
+     * @param robot     Robot hardware -- any device that was not mapped is recorded as 0
+     * @param gamepad1  Driver 1 gamepad, may be null in autonomous
+     * @param gamepad2  Driver 2 gamepad, may be null in autonomous
+     * @param heading   IMU heading in degrees as read, before bias correction, or NaN if not known
+     * @param accel     Horizontal IMU acceleration in m/sec/sec read this cycle, or NaN if none
+     */
+    public void sample(HardwareDM robot, Gamepad gamepad1, Gamepad gamepad2, double heading, double accel) {
+        if (channel == null) return;
+
+        int[] ints = record.ints;
+        float[] floats = record.floats;
+
+        record.timestamp = DMTimer.nanoTime();
+
+        // Parts not sampled this cycle keep their last values
+        int parts = watched;
+        if (sampleAll || ++slowCount >= SLOW_CYCLES) {
+            parts = HardwareDM.ALL;
+            sampleAll = false;
+            slowCount = 0;
+        }
+        boolean drive = (parts & HardwareDM.DRIVE) != 0;
+        boolean shooter = (parts & HardwareDM.SHOOTER) != 0;
+        boolean lift = (parts & HardwareDM.LIFT) != 0;
+
+        // Encoders and commanded powers
+        sampleMotor(robot.lfDrive, FlightRecord.LF_ENC, FlightRecord.LF_POWER, drive);
+        sampleMotor(robot.lrDrive, FlightRecord.LR_ENC, FlightRecord.LR_POWER, drive);
+        sampleMotor(robot.rfDrive, FlightRecord.RF_ENC, FlightRecord.RF_POWER, drive);
+        sampleMotor(robot.rrDrive, FlightRecord.RR_ENC, FlightRecord.RR_POWER, drive);
+        sampleMotor(robot.lShoot, FlightRecord.L_SHOOT_ENC, FlightRecord.L_SHOOT_POWER, shooter);
+        sampleMotor(robot.rShoot, FlightRecord.R_SHOOT_ENC, FlightRecord.R_SHOOT_POWER, shooter);
+        sampleMotor(robot.intake, FlightRecord.INTAKE_ENC, FlightRecord.INTAKE_POWER,
+                (parts & HardwareDM.INTAKE) != 0);
+        sampleMotor(robot.liftMotor, FlightRecord.LIFT_ENC, FlightRecord.LIFT_POWER, lift);
+        floats[FlightRecord.FIRE_POWER] = (robot.fire != null) ? (float) robot.fire.getPower() : 0f;
+
+        // Servo positions
+        floats[FlightRecord.BEACON_POS] = (robot.beacon != null) ? (float) robot.beacon.getPosition() : 0f;
+        floats[FlightRecord.PIVOT_POS] = (robot.pivot != null) ? (float) robot.pivot.getPosition() : 0f;
+        floats[FlightRecord.LIFT_DEPLOY_POS] = (robot.liftDeploy != null) ? (float) robot.liftDeploy.getPosition() : 0f;
+        floats[FlightRecord.CAPHOLD_POS] = (robot.caphold != null) ? (float) robot.caphold.getPosition() : 0f;
+
+        // Sensors
+        floats[FlightRecord.HEADING] = (float) heading;
+        floats[FlightRecord.ACCEL] = (float) accel;
+        floats[FlightRecord.GYRO_OFFSET] = (float) gyroOffset;
+        floats[FlightRecord.GYRO_DRIFT] = (float) gyroDrift;
+        if ((parts & HardwareDM.RANGE) != 0 && robot.rangeSensor != null) {
+            floats[FlightRecord.RANGE_CM] = (float) robot.rangeSensor.getDistance(DistanceUnit.CM);
+        }
+        if ((parts & HardwareDM.COLORS) != 0) {
+            if (robot.beaconColor != null) {
+                ints[FlightRecord.BEACON_RED] = robot.beaconColor.red();
+                ints[FlightRecord.BEACON_GREEN] = robot.beaconColor.green();
+                ints[FlightRecord.BEACON_BLUE] = robot.beaconColor.blue();
+                ints[FlightRecord.BEACON_ALPHA] = robot.beaconColor.alpha();
+            }
+            if (robot.stripeColor != null) {
+                ints[FlightRecord.STRIPE_RED] = robot.stripeColor.red();
+                ints[FlightRecord.STRIPE_GREEN] = robot.stripeColor.green();
+                ints[FlightRecord.STRIPE_BLUE] = robot.stripeColor.blue();
+                ints[FlightRecord.STRIPE_ALPHA] = robot.stripeColor.alpha();
+            }
+        }
+        int touch = ints[FlightRecord.TOUCH_BITS];
+        if (lift && robot.liftLimit != null) {
+            touch = robot.liftLimit.isPressed() ? (touch | 1) : (touch & ~1);
+        }
+        if (shooter && robot.camSwitch != null) {
+            touch = robot.camSwitch.isPressed() ? (touch | 2) : (touch & ~2);
+        }
+        ints[FlightRecord.TOUCH_BITS] = touch;
+
+        // Driver inputs
+        if (gamepad1 != null) {
+            putGamepadAxes(gamepad1, FlightRecord.G1_LEFT_X);
+            ints[FlightRecord.G1_BUTTONS] = packButtons(gamepad1);
+        }
+        if (gamepad2 != null) {
+            putGamepadAxes(gamepad2, FlightRecord.G2_LEFT_X);
+            ints[FlightRecord.G2_BUTTONS] = packButtons(gamepad2);
+        }
+
+        write();
+    }
+
+    /**
+     * Append the current contents of record -- for callers that fill it in themselves
+     */
+    public void write() {
+        if (channel == null) return;
+
+        record.writeTo(buffer);
+        recordCount++;
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+    }
+
+    /**
+     * Write any buffered records out to the file
+     */
+    public void flush() {
+        if (channel == null) return;
+
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Flight recorder write failed, stopping: " + e.getMessage());
+            closeQuietly();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flush and close the recording.  Safe to call more than once.
+     */
+    public void close() {
+        if (channel == null) return;
+
+        flush();
+        if (channel != null) {
+            DbgLog.msg("DM10337 -- Flight recorder closed after " + recordCount + " records");
+        }
+        closeQuietly();
+    }
+
+    void closeQuietly() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            // Nothing else we can do
+        }
+        channel = null;
+    }
+
+    /**
+     * Record power of one motor, and its encoder if we are sampling it this cycle
+     */
+    void sampleMotor(DcMotor motor, int encField, int powerField, boolean encoder) {
+        if (motor == null) return;
+        if (encoder) record.ints[encField] = motor.getCurrentPosition();
+        record.floats[powerField] = (float) motor.getPower();
+    }
+
+    /**
+     * Copy the gamepad sticks and triggers into the record
+     *
+     * @param gamepad   Gamepad to read
+     * @param base      First float field for this gamepad, G1_LEFT_X or G2_LEFT_X
+     */
+    void putGamepadAxes(Gamepad gamepad, int base) {
+        float[] floats = record.floats;
+        floats[base]     = gamepad.left_stick_x;
+        floats[base + 1] = gamepad.left_stick_y;
+        floats[base + 2] = gamepad.right_stick_x;
+        floats[base + 3] = gamepad.right_stick_y;
+        floats[base + 4] = gamepad.left_trigger;
+        floats[base + 5] = gamepad.right_trigger;
+    }
+
+    /**
+     * Pack all the gamepad buttons into a single int
+     *
+     * @param gamepad   Gamepad to read
+     * @return          FlightRecord.BTN_ bits for each pressed button
+     */
+    public static int packButtons(Gamepad gamepad) {
+        int buttons = 0;
+        if (gamepad.right_bumper)       buttons |= FlightRecord.BTN_RIGHT_BUMPER;
+        if (gamepad.left_bumper)        buttons |= FlightRecord.BTN_LEFT_BUMPER;
+        if (gamepad.back)               buttons |= FlightRecord.BTN_BACK;
+        if (gamepad.start)              buttons |= FlightRecord.BTN_START;
+        if (gamepad.guide)              buttons |= FlightRecord.BTN_GUIDE;
+        if (gamepad.y)                  buttons |= FlightRecord.BTN_Y;
+        if (gamepad.x)                  buttons |= FlightRecord.BTN_X;
+        if (gamepad.b)                  buttons |= FlightRecord.BTN_B;
+        if (gamepad.a)                  buttons |= FlightRecord.BTN_A;
+        if (gamepad.dpad_right)         buttons |= FlightRecord.BTN_DPAD_RIGHT;
+        if (gamepad.dpad_left)          buttons |= FlightRecord.BTN_DPAD_LEFT;
+        if (gamepad.dpad_down)          buttons |= FlightRecord.BTN_DPAD_DOWN;
+        if (gamepad.dpad_up)            buttons |= FlightRecord.BTN_DPAD_UP;
+        if (gamepad.right_stick_button) buttons |= FlightRecord.BTN_RIGHT_STICK;
+        if (gamepad.left_stick_button)  buttons |= FlightRecord.BTN_LEFT_STICK;
+        return buttons;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Reads a gamepad once per loop and turns it into button events.  Every button (and the
+ * triggers and right stick, past a threshold) is one bit in an int, so working out what was
+ * pressed or released since last loop is a couple of bit operations and nothing is allocated.
+ *
+ * Typical use:
+ *      pad1.update(gamepad1);                          // once, at the top of loop()
+ *      if (pad1.pressed(GamepadEvents.A)) ...          // went down this loop
+ *      if (pad1.isDown(GamepadEvents.RIGHT_BUMPER)) ...// is down now
+ *      if (pad1.released(GamepadEvents.X)) ...         // came up this loop
+ *      if (pad1.heldFor(GamepadEvents.BACK, 1000)) ... // has been down a full second, once
+ *
+ * The button bits are the same ones FlightRecord uses.
+ */
+public class GamepadEvents {
+
+    // Buttons
+    public final static int RIGHT_BUMPER   = FlightRecord.BTN_RIGHT_BUMPER;
+    public final static int LEFT_BUMPER    = FlightRecord.BTN_LEFT_BUMPER;
+    public final static int BACK           = FlightRecord.BTN_BACK;
+    public final static int START          = FlightRecord.BTN_START;
+    public final static int GUIDE          = FlightRecord.BTN_GUIDE;
+    public final static int Y              = FlightRecord.BTN_Y;
+    public final static int X              = FlightRecord.BTN_X;
+    public final static int B              = FlightRecord.BTN_B;
+    public final static int A              = FlightRecord.BTN_A;
+    public final static int DPAD_RIGHT     = FlightRecord.BTN_DPAD_RIGHT;
+    public final static int DPAD_LEFT      = FlightRecord.BTN_DPAD_LEFT;
+    public final static int DPAD_DOWN      = FlightRecord.BTN_DPAD_DOWN;
+    public final static int DPAD_UP        = FlightRecord.BTN_DPAD_UP;
+    public final static int RIGHT_STICK    = FlightRecord.BTN_RIGHT_STICK;
+    public final static int LEFT_STICK     = FlightRecord.BTN_LEFT_STICK;
+
+    // Analog inputs treated as buttons once past their threshold
+    public final static int LEFT_TRIGGER     = 1 << 15;
+    public final static int RIGHT_TRIGGER    = 1 << 16;
+    public final static int RIGHT_STICK_UP   = 1 << 17;
+    public final static int RIGHT_STICK_DOWN = 1 << 18;
+
+    final static int NUM_BITS = 19;
+
+    /* Thresholds for the analog "buttons" */
+    double leftTriggerThreshold;
+    double rightTriggerThreshold;
+    double stickThreshold;
+
+    /* Button bits this loop and last loop */
+    int down = 0;
+    int previous = 0;
+
+    /* Time each button went down, and buttons whose heldFor event already fired */
+    long[] downSince = new long[NUM_BITS];
+    int heldFired = 0;
+    long now = 0;
+
+    /* Analog values this loop -- Y axes are as the gamepad sends them, up is negative */
+    public float leftStickX;
+    public float leftStickY;
+    public float rightStickX;
+    public float rightStickY;
+    public float leftTrigger;
+    public float rightTrigger;
+    public long timestamp;
+
+    /**
+     * Constructor
+     *
+     * @param leftTriggerThreshold      Left trigger counts as down above this
+     * @param rightTriggerThreshold     Right trigger counts as down above this
+     * @param stickThreshold            Right stick counts as up/down past this
+     */
+    public GamepadEvents(double leftTriggerThreshold, double rightTriggerThreshold, double stickThreshold) {
+        this.leftTriggerThreshold = leftTriggerThreshold;
+        this.rightTriggerThreshold = rightTriggerThreshold;
+        this.stickThreshold = stickThreshold;
+    }
+
+    /**
+     * Read the gamepad for this loop.  Call exactly once per loop before checking events.
+     *
+     * @param gamepad   Gamepad to read
+     */
+    public void update(Gamepad gamepad) {
+        now = DMTimer.nanoTime();
+
+        leftStickX = gamepad.left_stick_x;
+        leftStickY = gamepad.left_stick_y;
+        rightStickX = gamepad.right_stick_x;
+        rightStickY = gamepad.right_stick_y;
+        leftTrigger = gamepad.left_trigger;
+        rightTrigger = gamepad.right_trigger;
+        timestamp = gamepad.timestamp;
+
+        int bits = FlightRecorder.packButtons(gamepad);
+        if (leftTrigger > leftTriggerThreshold)  bits |= LEFT_TRIGGER;
+        if (rightTrigger > rightTriggerThreshold) bits |= RIGHT_TRIGGER;
+        if (rightStickY < -stickThreshold)       bits |= RIGHT_STICK_UP;
+        if (rightStickY > stickThreshold)        bits |= RIGHT_STICK_DOWN;
+
+        previous = down;
+        down = bits;
+
+        // Start the hold clock on anything newly pressed
+        int newlyDown = down & ~previous;
+        while (newlyDown != 0) {
+            int bit = Integer.numberOfTrailingZeros(newlyDown);
+            downSince[bit] = now;
+            newlyDown &= newlyDown - 1;
+        }
+        heldFired &= down;
+    }
+
+    /**
+     * @return  true if any of the buttons in mask is down
+     */
+    public boolean isDown(int mask) {
+        return (down & mask) != 0;
+    }
+
+    /**
+     * @return  true if any of the buttons in mask went down this loop
+     */
+    public boolean pressed(int mask) {
+        return (down & ~previous & mask) != 0;
+    }
+
+    /**
+     * @return  true if any of the buttons in mask came up this loop
+     */
+    public boolean released(int mask) {
+        return (previous & ~down & mask) != 0;
+    }
+
+    /**
+     * How long a button has been held
+     *
+     * @param button    A single button bit
+     * @return          Milliseconds it has been down, 0 if it is up
+     */
+    public double heldMs(int button) {
+        if ((down & button) == 0) return 0.0;
+        return (now - downSince[Integer.numberOfTrailingZeros(button)]) / 1.0e6;
+    }
+
+    /**
+     * One time event when a button has been held long enough
+     *
+     * @param button    A single button bit
+     * @param ms        How long it has to be held
+     * @return          true on the one loop the hold time is first reached
+     */
+    public boolean heldFor(int button, double ms) {
+        if ((heldFired & button) != 0 || heldMs(button) < ms) return false;
+        heldFired |= button;
+        return true;
+    }
+}
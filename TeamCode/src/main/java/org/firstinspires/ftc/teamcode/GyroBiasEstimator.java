@@ -0,0 +1,267 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Works out the gyro's offset and drift while the robot sits still before start.  A single
+ * heading read at start gets the offset right at that moment, but any drift carries straight on
+ * into the match as heading error.  Instead we sample heading and rotation rate every cycle of
+ * the INIT wait and fit a straight line to the heading over the last MAX_FIT_SEC of stillness:
+ *
+ *      heading = offset + drift * time
+ *
+ * At start the line gives the offset and the drift rate, and correct() takes both off every
+ * heading for the rest of the run.
+ *
+ * Moving the robot (rate over STILL_RATE, or a heading jump) throws the samples away and starts
+ * the fit again.  With less than MIN_FIT_SEC of stillness we don't trust a drift rate and just
+ * zero on the heading at start, same as before.
+ *
+ * Headings are unwrapped while sampling so a robot sitting near +/-180 fits cleanly.
+ */
+public class GyroBiasEstimator {
+
+    // Time between samples
+    public final static double SAMPLE_MS = 50;
+
+    // Still means turning slower than this in degrees/sec...
+    public final static double STILL_RATE = 0.5;
+
+    // ...and no heading jump bigger than this between samples, in degrees
+    public final static double STILL_JUMP = 0.5;
+
+    // Need this long still to believe a drift rate, in seconds
+    public final static double MIN_FIT_SEC = 5.0;
+
+    // Only fit the most recent stillness
+    public final static double MAX_FIT_SEC = 60.0;
+
+    // Real drift is well under this, in degrees/sec -- clip anything more
+    public final static double MAX_DRIFT = 0.05;
+
+    final static int MAX_SAMPLES = (int) (MAX_FIT_SEC * 1000.0 / SAMPLE_MS);
+
+    /* Samples in the fit, a ring buffer.  Times in seconds since the window began */
+    double[] time = new double[MAX_SAMPLES];
+    double[] heading = new double[MAX_SAMPLES];
+    int first = 0;
+    int count = 0;
+
+    /* Running sums for the least squares line */
+    double sumT, sumH, sumTT, sumTH;
+
+    long windowStart = 0;
+    long lastSample = 0;
+    double lastRaw = Double.NaN;
+    double lastHeading = 0.0;       // Unwrapped
+
+    /* Result, set by start() or preset() */
+    boolean started = false;
+    boolean preset = false;
+    long startTime = 0;
+    double offset = 0.0;
+    double drift = 0.0;
+
+    /**
+     * Take a sample if SAMPLE_MS has passed since the last one.  Call every cycle before start.
+     *
+     * @param raw       Heading from the gyro in degrees
+     * @param rate      Rotation rate in degrees/sec, NaN if not read
+     */
+    public void sample(double raw, double rate) {
+        sample(raw, rate, DMTimer.nanoTime());
+    }
+
+    void sample(double raw, double rate, long nanos) {
+        if (count > 0 && (nanos - lastSample) < SAMPLE_MS * 1.0e6) return;
+        lastSample = nanos;
+
+        double unwrapped = Double.isNaN(lastRaw) ? raw : lastHeading + wrap(raw - lastRaw);
+        boolean still = (Double.isNaN(rate) || Math.abs(rate) < STILL_RATE) &&
+                (count == 0 || Math.abs(unwrapped - lastHeading) < STILL_JUMP);
+        lastRaw = raw;
+        lastHeading = unwrapped;
+
+        if (!still) {
+            clear();
+            return;
+        }
+
+        if (count == 0) windowStart = nanos;
+        if (count == MAX_SAMPLES) {
+            // Forget the oldest
+            double t = time[first];
+            double h = heading[first];
+            sumT -= t;
+            sumH -= h;
+            sumTT -= t * t;
+            sumTH -= t * h;
+            first = (first + 1) % MAX_SAMPLES;
+            count--;
+        }
+        double t = (nanos - windowStart) / 1.0e9;
+        int i = (first + count) % MAX_SAMPLES;
+        time[i] = t;
+        heading[i] = unwrapped;
+        sumT += t;
+        sumH += unwrapped;
+        sumTT += t * t;
+        sumTH += t * unwrapped;
+        count++;
+    }
+
+    /**
+     * Throw away the samples and start fitting again
+     */
+    void clear() {
+        first = 0;
+        count = 0;
+        sumT = sumH = sumTT = sumTH = 0.0;
+    }
+
+    /**
+     * @return  Seconds of stillness in the fit
+     */
+    public double fitSeconds() {
+        if (count < 2) return 0.0;
+        return time[(first + count - 1) % MAX_SAMPLES] - time[first];
+    }
+
+    /**
+     * @return  Drift in degrees/sec from the samples so far, 0 until there are MIN_FIT_SEC of them
+     */
+    public double driftEstimate() {
+        if (fitSeconds() < MIN_FIT_SEC) return 0.0;
+        double meanT = sumT / count;
+        double varT = sumTT / count - meanT * meanT;
+        if (varT <= 0.0) return 0.0;
+        double slope = (sumTH / count - meanT * sumH / count) / varT;
+        return Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, slope));
+    }
+
+    /**
+     * Lock in the offset and drift.  Call at start.
+     *
+     * @param raw       Heading read from the gyro at start
+     */
+    public void start(double raw) {
+        start(raw, DMTimer.nanoTime());
+    }
+
+    void start(double raw, long nanos) {
+        startTime = nanos;
+        started = true;
+        if (preset) return;
+        drift = driftEstimate();
+        offset = raw;
+        if (drift != 0.0) {
+            // Where the line says we are now -- unless we have been bumped since the last sample
+            double meanT = sumT / count;
+            double fitted = sumH / count + drift * ((nanos - windowStart) / 1.0e9 - meanT);
+            double diff = wrap(raw - fitted);
+            if (Math.abs(diff) < STILL_JUMP) {
+                offset = raw - diff;
+            } else {
+                drift = 0.0;
+            }
+        }
+        DbgLog.msg(String.format("DM10337 -- Gyro offset %.2f drift %.4f deg/sec from %.1f sec still",
+                offset, drift, fitSeconds()));
+    }
+
+    /**
+     * Use an offset and drift worked out before -- e.g. read back from a recording -- instead of
+     * fitting them.  start() still starts the drift clock but keeps these.
+     *
+     * @param offset    Offset in degrees
+     * @param drift     Drift in degrees/sec
+     */
+    public void preset(double offset, double drift) {
+        this.offset = offset;
+        this.drift = drift;
+        preset = true;
+    }
+
+    /**
+     * Take the offset and drift off a heading.  Before start() headings pass through as is.
+     *
+     * @param raw       Heading from the gyro in degrees
+     * @return          Heading relative to where we started
+     */
+    public double correct(double raw) {
+        return correct(raw, DMTimer.nanoTime());
+    }
+
+    double correct(double raw, long nanos) {
+        if (!started) return raw;
+        return raw - offset - drift * ((nanos - startTime) / 1.0e9);
+    }
+
+    /**
+     * Shift the offset, e.g. when something better than the gyro tells us our heading
+     *
+     * @param degrees   Added to the offset -- corrected headings drop by this much
+     */
+    public void adjust(double degrees) {
+        offset += degrees;
+    }
+
+    /**
+     * @return  Offset locked in at start
+     */
+    public double offset() {
+        return offset;
+    }
+
+    /**
+     * @return  Drift locked in at start, degrees/sec
+     */
+    public double drift() {
+        return drift;
+    }
+
+    /**
+     * @return  An angle difference brought into -180..180
+     */
+    static double wrap(double angle) {
+        while (angle > 180.0) angle -= 360.0;
+        while (angle <= -180.0) angle += 360.0;
+        return angle;
+    }
+}
@@ -38,16 +38,23 @@ import com.qualcomm.ftccommon.DbgLog;
 import com.qualcomm.hardware.adafruit.BNO055IMU;
 import com.qualcomm.hardware.adafruit.JustLoggingAccelerationIntegrator;
 import com.qualcomm.hardware.modernrobotics.ModernRoboticsI2cRangeSensor;
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
 import com.qualcomm.robotcore.hardware.CRServo;
 import com.qualcomm.robotcore.hardware.ColorSensor;
 import com.qualcomm.robotcore.hardware.DcMotor;
-import com.qualcomm.robotcore.hardware.DcMotorSimple;
 import com.qualcomm.robotcore.hardware.DeviceInterfaceModule;
 import com.qualcomm.robotcore.hardware.DigitalChannelController;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.Servo;
 import com.qualcomm.robotcore.hardware.TouchSensor;
+import com.qualcomm.robotcore.hardware.VoltageSensor;
 import com.qualcomm.robotcore.util.ElapsedTime;
+import com.qualcomm.robotcore.util.Range;
+
+import org.firstinspires.ftc.robotcontroller.internal.StartupTrace;
+
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -86,6 +93,12 @@ public class HardwareDM
     public Servo liftDeploy = null;
     public Servo caphold = null;
 
+    /* Same servos with a model of when they get where they were sent.  Move them through these. */
+    public TimedServo beaconMove = null;
+    public TimedServo pivotMove = null;
+    public TimedServo liftDeployMove = null;
+    public TimedServo capholdMove = null;
+
     /* lift limit switch - touch sensor */
     public TouchSensor liftLimit = null;
 
@@ -98,6 +111,9 @@ public class HardwareDM
     // Adafruit IMU gyro & motion sensor object
     BNO055IMU adaGyro;
 
+    // Saves the IMU calibration once it is complete -- pause() it before steering on the heading
+    ImuCalibrationSaver imuCalibration = null;
+
     /* Adafruit RGB Sensor */
     ColorSensor beaconColor;
     // Device interface module (for controlling Adafruit RGB sensor LED)
@@ -107,8 +123,11 @@ public class HardwareDM
     // Modern Robotics Color sensor on bottom
     ColorSensor stripeColor;
 
+    // Tunables below come from robot.cfg on the phone -- see RobotConfig for the defaults
+    public final RobotConfig config = RobotConfig.get();
+
     // Shooter default speed
-    public final static double SHOOT_DEFAULT = 0.925;
+    public final double SHOOT_DEFAULT = config.number(RobotConfig.SHOOT_DEFAULT);
     public final static double SHOOT_SPEED_INCR = 0.005;
 
     // Lift motor speeds
@@ -126,30 +145,63 @@ public class HardwareDM
     static final int     SHOOT_MAX_RPM           = NR_MAX_RPM * COUNTS_PER_MOTOR_REV;
 
     /* Drive train constants */
-    static final double     DRIVE_GEAR_REDUCTION    = 40.0 ;     // This is < 1.0 if geared UP
-    static final double     WHEEL_DIAMETER_INCHES   = 4.0 ;     // For figuring circumference
-    static final double     COUNTS_PER_INCH         = (4 * COUNTS_PER_MOTOR_REV * DRIVE_GEAR_REDUCTION) /
+    final double     DRIVE_GEAR_REDUCTION    = config.number(RobotConfig.DRIVE_GEAR_REDUCTION);  // This is < 1.0 if geared UP
+    final double     WHEEL_DIAMETER_INCHES   = config.number(RobotConfig.WHEEL_DIAMETER_INCHES); // For figuring circumference
+    final double     COUNTS_PER_INCH         = (4 * COUNTS_PER_MOTOR_REV * DRIVE_GEAR_REDUCTION) /
             (WHEEL_DIAMETER_INCHES * 3.1415);
+    final double     WHEELBASE_INCHES        = config.number(RobotConfig.WHEELBASE_INCHES);      // Left to right wheel spacing
 
     // Servo max min ranges
-    public final static double PIVOT_HOME = 0.025;
-    public final static double BEACON_HOME = 0.22;
-    public final static double CAPHOLD_HOME = 0.0;
-    public final static double LIFT_DEPLOY_HOME = 0.27;
-    public final static double PIVOT_MIN_RANGE  = 0.025;
-    public final static double PIVOT_MAX_RANGE  = 0.55;
-    public final static double BEACON_MIN_RANGE  = 0.22;
-    public final static double BEACON_MAX_RANGE  = 0.82;
-    public final static double LIFT_DEPLOY_MIN_RANGE = 0.0;
-    public final static double LIFT_DEPLOY_MAX_RANGE = 0.27;
-    public final static double CAPHOLD_DEPLOY_MIN_RANGE = 0.0;
-    public final static double CAPHOLD_DEPLOY_MAX_RANGE = 0.80;
-
-        // How long to wait for cap lift forks to deploy
-    public final static double DEPLOY_WAIT = 150;  // Wait 1 second for ball pickup to deploy
+    public final double PIVOT_HOME = config.number(RobotConfig.PIVOT_HOME);
+    public final double BEACON_HOME = config.number(RobotConfig.BEACON_HOME);
+    public final double CAPHOLD_HOME = config.number(RobotConfig.CAPHOLD_HOME);
+    public final double LIFT_DEPLOY_HOME = config.number(RobotConfig.LIFT_DEPLOY_HOME);
+    public final double PIVOT_MIN_RANGE  = config.number(RobotConfig.PIVOT_MIN_RANGE);
+    public final double PIVOT_MAX_RANGE  = config.number(RobotConfig.PIVOT_MAX_RANGE);
+    public final double BEACON_MIN_RANGE  = config.number(RobotConfig.BEACON_MIN_RANGE);
+    public final double BEACON_MAX_RANGE  = config.number(RobotConfig.BEACON_MAX_RANGE);
+    public final double LIFT_DEPLOY_MIN_RANGE = config.number(RobotConfig.LIFT_DEPLOY_MIN_RANGE);
+    public final double LIFT_DEPLOY_MAX_RANGE = config.number(RobotConfig.LIFT_DEPLOY_MAX_RANGE);
+    public final double CAPHOLD_DEPLOY_MIN_RANGE = config.number(RobotConfig.CAPHOLD_DEPLOY_MIN_RANGE);
+    public final double CAPHOLD_DEPLOY_MAX_RANGE = config.number(RobotConfig.CAPHOLD_DEPLOY_MAX_RANGE);
+
+    // Battery compensation -- open loop powers are scaled to what they would do at this voltage
+    public final static double NOMINAL_VOLTAGE = 12.5;
+    public final static double VOLTAGE_SAMPLE_MS = 500;     // Battery changes slowly, don't read it often
+    final static double VOLTAGE_FILTER = 0.3;               // Smooths out current spikes, 0..1
+    final static double MIN_VALID_VOLTAGE = 7.0;            // Anything below this is a bad reading
+    // Speed setpoint the motor controller's speed loop can still hold under load at NOMINAL_VOLTAGE.
+    // It scales with the battery, so 0.925 on the flywheels is out of reach below about 11.8V.
+    public final static double SPEED_HEADROOM = 0.98;
+
+    // Fastest the cap ball pivot and holder are allowed to move, position units per second
+    public final static double PIVOT_MAX_RATE = 1.0;
+    public final static double CAPHOLD_MAX_RATE = 1.5;
+
+    // Parts of the robot an OpMode can ask for -- see init(OpMode) and require()
+    public final static int DRIVE   = 1;
+    public final static int SHOOTER = 1 << 1;        // Flywheels, firing cam and cam switch
+    public final static int INTAKE  = 1 << 2;
+    public final static int LIFT    = 1 << 3;        // Lift motor, cap ball servos and lift limit
+    public final static int BEACON  = 1 << 4;        // Beacon pusher servo
+    public final static int IMU     = 1 << 5;
+    public final static int RANGE   = 1 << 6;
+    public final static int COLORS  = 1 << 7;        // Beacon and stripe color sensors
+    public final static int ALL     = (1 << 8) - 1;
+    final static String[] PART_NAMES = {"drive", "shooter", "intake", "lift", "beacon", "imu", "range", "colors"};
+
+    // IMU calibration offsets, in the phone's settings folder
+    public final static String IMU_CALIBRATION_FILE = "AdafruitIMUCalibration.json";
 
     /* Local OpMode members. */
     HardwareMap hwMap  = null;
+    int ready = 0;                                  // Parts set up so far
+
+    /* Battery voltage as last sampled */
+    List<VoltageSensor> voltageSensors = new ArrayList<VoltageSensor>();
+    double batteryVoltage = NOMINAL_VOLTAGE;
+    ElapsedTime voltageTimer = new DMTimer();
+    boolean voltageSampled = false;
 
     /**
      *
@@ -179,119 +231,320 @@ public class HardwareDM
      *
      */
     public void init(HardwareMap ahwMap, boolean useGyroRange) {
+        init(ahwMap, useGyroRange ? ALL : ALL & ~IMU);
+    }
+
+
+    /**
+     * Init just the parts an OpMode says it needs with @RobotParts.  OpModes that don't say get
+     * everything.
+     *
+     * @param opMode    OpMode being set up
+     */
+    public void init(OpMode opMode) {
+        RobotParts needs = opMode.getClass().getAnnotation(RobotParts.class);
+        init(opMode.hardwareMap, (needs != null) ? needs.value() : ALL);
+    }
+
+
+    /**
+     *
+     * @param ahwMap    HardwareMap to use to find all of our hardware
+     * @param parts     Parts to set up now, e.g. DRIVE | IMU.  Others are set up by require().
+     *
+     */
+    public void init(HardwareMap ahwMap, int parts) {
         // save reference to HW Map
 
-        DbgLog.msg("DM10337 -- Starting HardwareDM Init");
+        DbgLog.msg("DM10337 -- Starting HardwareDM Init  parts:" + partNames(parts));
 
-        hwMap = ahwMap;
+        // Each OpMode INIT is its own trace, apart from the robot start up
+        StartupTrace.restart("HardwareDM.init", StartupTrace.INIT_PREFIX);
+        int span = StartupTrace.begin("HardwareDM.init");
 
-        // Only setup the IMU if we are going to need it to save time
-        if (useGyroRange) {
-            // Set up the parameters with which we will use our IMU. Note that integration
-            // algorithm here just reports accelerations to the logcat log; it doesn't actually
-            // provide positional information.
-            // Do this first as it takes the longest to finish
-            BNO055IMU.Parameters parameters = new BNO055IMU.Parameters();
-            parameters.angleUnit           = BNO055IMU.AngleUnit.DEGREES;
-            parameters.accelUnit           = BNO055IMU.AccelUnit.METERS_PERSEC_PERSEC;
-            parameters.calibrationDataFile = "AdafruitIMUCalibration.json"; // see the calibration sample opmode
-            parameters.loggingEnabled      = true;
-            parameters.loggingTag          = "IMU";
-            parameters.accelerationIntegrationAlgorithm = new JustLoggingAccelerationIntegrator();
-
-            // Retrieve and initialize the IMU. We expect the IMU to be attached to an I2C port
-            // on a Core Device Interface Module, configured to be a sensor of type "AdaFruit IMU",
-            // and named "adaGyro".
-            adaGyro = hwMap.get(BNO055IMU.class, "gyro");
-            adaGyro.initialize(parameters);
-
-            DbgLog.msg("DM10337 -- Gyro modes set and gyro initialized.");
+        hwMap = ahwMap;
+        ready = 0;
 
+        // Every motor controller reports the battery -- keep them all and use the lowest
+        voltageSensors.clear();
+        for (VoltageSensor sensor : hwMap.voltageSensor) {
+            voltageSensors.add(sensor);
         }
+        voltageSampled = false;
+
+        require(parts);
+
+        // Written off this thread so INIT doesn't wait on the file
+        StartupTrace.end(span);
+        StartupTrace.flushInBackground();
 
+        DbgLog.msg("DM10337 -- Finished HardwareDM Init.  Battery: " + batteryVoltage() + "V");
+    }
 
-        // Define and Initialize Motors
-        lfDrive   = hwMap.dcMotor.get("lf motor");
-        lrDrive   = hwMap.dcMotor.get("lr motor");
-        rfDrive   = hwMap.dcMotor.get("rf motor");
-        rrDrive   = hwMap.dcMotor.get("rr motor");
-        lShoot    = hwMap.dcMotor.get("l shoot");
-        rShoot    = hwMap.dcMotor.get("r shoot");
-        intake    = hwMap.dcMotor.get("intake");
-        liftMotor = hwMap.dcMotor.get("lift");
 
-        // Define and initialize servos
-        fire = hwMap.crservo.get("fire");
-        beacon = hwMap.servo.get("beacon");
-        pivot = hwMap.servo.get("pivot");
-        liftDeploy = hwMap.servo.get("lift deploy");
-        caphold = hwMap.servo.get("cap hold");
+    /**
+     * Set up any of these parts that aren't already.  Cheap once they are, so call it before
+     * using a part the OpMode didn't ask for at init.
+     *
+     * @param parts     Parts needed, e.g. COLORS
+     */
+    public void require(int parts) {
+        int missing = parts & ~ready;
+        if (missing == 0) return;
+        if (hwMap == null) {
+            throw new IllegalStateException("HardwareDM.require() before init()");
+        }
 
-        beacon.setPosition(BEACON_HOME);
-        pivot.setPosition(PIVOT_HOME);
-        liftDeploy.setPosition(LIFT_DEPLOY_HOME);
-        caphold.setPosition(CAPHOLD_HOME);
+        // Mark them ready first -- the setup code uses our own helpers, which require() too
+        ready |= missing;
+        int span = StartupTrace.begin("HardwareDM.require" + partNames(missing));
+
+        // Do the IMU first as it takes the longest to finish
+        if ((missing & IMU) != 0) initImu();
+        if ((missing & DRIVE) != 0) initDrive();
+        if ((missing & SHOOTER) != 0) initShooter();
+        if ((missing & INTAKE) != 0) initIntake();
+        if ((missing & LIFT) != 0) initLift();
+        if ((missing & BEACON) != 0) initBeacon();
+        if ((missing & RANGE) != 0) initRange();
+        if ((missing & COLORS) != 0) initColors();
+        StartupTrace.end(span);
+    }
 
-        // Define touch sensors
-        liftLimit = hwMap.touchSensor.get("ts");
-        camSwitch = hwMap.touchSensor.get("cs");
+    /**
+     * @return  true if all of these parts are set up
+     */
+    public boolean has(int parts) {
+        return (ready & parts) == parts;
+    }
 
-        rangeSensor = hwMap.get(ModernRoboticsI2cRangeSensor.class, "range");
+    /**
+     * @return  Names of the parts in a mask, for the log
+     */
+    static String partNames(int parts) {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < PART_NAMES.length; i++) {
+            if ((parts & (1 << i)) != 0) names.append(' ').append(PART_NAMES[i]);
+        }
+        return names.toString();
+    }
 
+    void initImu() {
+        // Set up the parameters with which we will use our IMU. Note that integration
+        // algorithm here just reports accelerations to the logcat log; it doesn't actually
+        // provide positional information.
+        BNO055IMU.Parameters parameters = new BNO055IMU.Parameters();
+        parameters.angleUnit           = BNO055IMU.AngleUnit.DEGREES;
+        parameters.accelUnit           = BNO055IMU.AccelUnit.METERS_PERSEC_PERSEC;
+        parameters.calibrationDataFile = IMU_CALIBRATION_FILE;   // Kept fresh by imuCalibration
+        parameters.loggingEnabled      = true;
+        parameters.loggingTag          = "IMU";
+        parameters.accelerationIntegrationAlgorithm = new JustLoggingAccelerationIntegrator();
+
+        // Retrieve and initialize the IMU. We expect the IMU to be attached to an I2C port
+        // on a Core Device Interface Module, configured to be a sensor of type "AdaFruit IMU",
+        // and named "adaGyro".
+        adaGyro = hwMap.get(BNO055IMU.class, config.string(RobotConfig.GYRO));
+        adaGyro.initialize(parameters);
+
+        // Save the offsets in the background once the IMU is fully calibrated
+        if (imuCalibration != null) imuCalibration.stop();
+        imuCalibration = new ImuCalibrationSaver(adaGyro, IMU_CALIBRATION_FILE);
+        imuCalibration.start();
+
+        DbgLog.msg("DM10337 -- Gyro modes set and gyro initialized.");
+    }
 
-        DbgLog.msg("DM10337 -- Finished mapping all hardware.");
+    void initDrive() {
+        lfDrive   = hwMap.dcMotor.get(config.string(RobotConfig.LF_MOTOR));
+        lrDrive   = hwMap.dcMotor.get(config.string(RobotConfig.LR_MOTOR));
+        rfDrive   = hwMap.dcMotor.get(config.string(RobotConfig.RF_MOTOR));
+        rrDrive   = hwMap.dcMotor.get(config.string(RobotConfig.RR_MOTOR));
 
-        // Set all motors to zero power
         lfDrive.setPower(0.0);
         lrDrive.setPower(0.0);
         rfDrive.setPower(0.0);
         rrDrive.setPower(0.0);
+        setDriveMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        setDriveDirection(config.direction(RobotConfig.LEFT_DRIVE_DIR), config.direction(RobotConfig.RIGHT_DRIVE_DIR));
+
+        // Set motors to float mode to protect gearboxes from shock load
+        setDriveZeroPower(DcMotor.ZeroPowerBehavior.FLOAT);
+
+        DbgLog.msg("DM10337 -- Drive train setup.");
+    }
+
+    void initShooter() {
+        lShoot    = hwMap.dcMotor.get(config.string(RobotConfig.L_SHOOT));
+        rShoot    = hwMap.dcMotor.get(config.string(RobotConfig.R_SHOOT));
+        fire = hwMap.crservo.get(config.string(RobotConfig.FIRE));
+        camSwitch = hwMap.touchSensor.get(config.string(RobotConfig.CAM_SWITCH));
+
         lShoot.setPower(0.0);
         rShoot.setPower(0.0);
         fire.setPower(0.0);
-        intake.setPower(0.0);
-
-        // Set all motors to run with or without encoders
-        //
-        setDriveMode(DcMotor.RunMode.RUN_USING_ENCODER);
         lShoot.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
         rShoot.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-        intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-        liftMotor.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-
-        // Set motor directions
-        setDriveDirection(DcMotor.Direction.REVERSE, DcMotor.Direction.FORWARD);
-        lShoot.setDirection(DcMotor.Direction.REVERSE);
-        rShoot.setDirection(DcMotor.Direction.FORWARD);
-        intake.setDirection(DcMotor.Direction.FORWARD);
-        liftMotor.setDirection(DcMotorSimple.Direction.FORWARD);
-
-        // Set motors to float mode to protect gearboxes from shock load
-        setDriveZeroPower(DcMotor.ZeroPowerBehavior.FLOAT);
+        lShoot.setDirection(config.direction(RobotConfig.L_SHOOT_DIR));
+        rShoot.setDirection(config.direction(RobotConfig.R_SHOOT_DIR));
         lShoot.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.FLOAT);
         rShoot.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.FLOAT);
 
-        // Intake and lift can be brake mode to hold positon better
+        DbgLog.msg("DM10337 -- Shooter setup.");
+    }
+
+    void initIntake() {
+        intake    = hwMap.dcMotor.get(config.string(RobotConfig.INTAKE));
+
+        intake.setPower(0.0);
+        intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        intake.setDirection(config.direction(RobotConfig.INTAKE_DIR));
+
+        // Intake can be brake mode to hold positon better
         intake.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+
+        DbgLog.msg("DM10337 -- Intake setup.");
+    }
+
+    void initLift() {
+        liftMotor = hwMap.dcMotor.get(config.string(RobotConfig.LIFT));
+        pivot = hwMap.servo.get(config.string(RobotConfig.PIVOT));
+        liftDeploy = hwMap.servo.get(config.string(RobotConfig.LIFT_DEPLOY));
+        caphold = hwMap.servo.get(config.string(RobotConfig.CAP_HOLD));
+        liftLimit = hwMap.touchSensor.get(config.string(RobotConfig.LIFT_LIMIT));
+
+        pivotMove = new TimedServo(pivot, config.number(RobotConfig.PIVOT_SWEEP_SEC));
+        liftDeployMove = new TimedServo(liftDeploy, config.number(RobotConfig.LIFT_DEPLOY_SWEEP_SEC));
+        capholdMove = new TimedServo(caphold, config.number(RobotConfig.CAPHOLD_SWEEP_SEC));
+
+        pivotMove.setPosition(PIVOT_HOME);
+        liftDeployMove.setPosition(LIFT_DEPLOY_HOME);
+        capholdMove.setPosition(CAPHOLD_HOME);
+
+        // Swinging the cap ball around at full servo speed throws it off the forks
+        pivotMove.setMaxRate(PIVOT_MAX_RATE);
+        capholdMove.setMaxRate(CAPHOLD_MAX_RATE);
+
+        liftMotor.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        liftMotor.setDirection(config.direction(RobotConfig.LIFT_DIR));
+
+        // Lift can be brake mode to hold positon better
         liftMotor.setZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
 
-        DbgLog.msg("DM10337 -- Motor modes set.");
+        DbgLog.msg("DM10337 -- Lift setup.");
+    }
+
+    void initBeacon() {
+        beacon = hwMap.servo.get(config.string(RobotConfig.BEACON));
+        beaconMove = new TimedServo(beacon, config.number(RobotConfig.BEACON_SWEEP_SEC));
+        beaconMove.setPosition(BEACON_HOME);
+    }
+
+    void initRange() {
+        rangeSensor = hwMap.get(ModernRoboticsI2cRangeSensor.class, config.string(RobotConfig.RANGE));
+    }
 
+    void initColors() {
         // Retrieve and initialize the Adafruit color sensor
-        beaconColor = hwMap.colorSensor.get("color");
-        cdim = hwMap.deviceInterfaceModule.get("dim");
+        beaconColor = hwMap.colorSensor.get(config.string(RobotConfig.BEACON_COLOR));
+        cdim = hwMap.deviceInterfaceModule.get(config.string(RobotConfig.DIM));
         cdim.setDigitalChannelMode(LED_CHANNEL, DigitalChannelController.Mode.OUTPUT);
         cdim.setDigitalChannelState(LED_CHANNEL, false); // Turn RGB light off -- never needs to be on
 
         DbgLog.msg("DM10337 -- Adafruit color sensor setup.");
 
         // And also for the MR color sensor
-        stripeColor = hwMap.colorSensor.get("stripe");
+        stripeColor = hwMap.colorSensor.get(config.string(RobotConfig.STRIPE_COLOR));
         stripeColor.enableLed(false);
 
         DbgLog.msg("DM10337 -- MR color sensor setup.");
     }
 
+    /**
+     * Battery voltage, sampled at most every VOLTAGE_SAMPLE_MS and smoothed
+     *
+     * @return  Volts, NOMINAL_VOLTAGE if we have no good reading
+     */
+    public double batteryVoltage() {
+        if (voltageSampled && voltageTimer.milliseconds() < VOLTAGE_SAMPLE_MS) {
+            return batteryVoltage;
+        }
+        voltageTimer.reset();
+
+        double lowest = Double.MAX_VALUE;
+        for (VoltageSensor sensor : voltageSensors) {
+            double voltage = sensor.getVoltage();
+            if (voltage >= MIN_VALID_VOLTAGE) lowest = Math.min(lowest, voltage);
+        }
+        if (lowest == Double.MAX_VALUE) return batteryVoltage;
+
+        if (voltageSampled) {
+            batteryVoltage += VOLTAGE_FILTER * (lowest - batteryVoltage);
+        } else {
+            batteryVoltage = lowest;
+            voltageSampled = true;
+        }
+        return batteryVoltage;
+    }
+
+    /**
+     * Fastest speed setpoint the motor controller can still hold on the battery we have now
+     *
+     * @return  Setpoint, 0..1
+     */
+    public double speedHeadroom() {
+        return Math.min(1.0, SPEED_HEADROOM * batteryVoltage() / NOMINAL_VOLTAGE);
+    }
+
+    /**
+     * Battery compensation stage.  A motor running open loop (RUN_WITHOUT_ENCODER) gets its power
+     * scaled so it pushes as hard as it would on a NOMINAL_VOLTAGE battery.
+     *
+     * Motors running on their encoders are speed controlled, and the controller makes up for the
+     * battery by itself -- right up until the setpoint is faster than the battery can turn the
+     * motor.  Past that it saturates: the speed we get sags with the battery and the controller
+     * winds up chasing the rest, overshooting when the load comes off (e.g. between shots).  So
+     * their setpoint is capped at speedHeadroom(), which keeps the loop in control and the speed
+     * we actually get the same from shot to shot.
+     *
+     * @param motor     Motor the power is for
+     * @param power     Power tuned at nominal voltage
+     * @return          Power to send
+     */
+    public double compensate(DcMotor motor, double power) {
+        if (power == 0.0) return power;
+        if (motor.getMode() != DcMotor.RunMode.RUN_WITHOUT_ENCODER) {
+            double headroom = speedHeadroom();
+            return Range.clip(power, -headroom, headroom);
+        }
+        return Range.clip(power * NOMINAL_VOLTAGE / batteryVoltage(), -1.0, 1.0);
+    }
+
+    /**
+     * Set the drive train powers through battery compensation
+     *
+     * @param left      Left side power
+     * @param right     Right side power
+     */
+    public void setDrivePower(double left, double right) {
+        require(DRIVE);
+        lfDrive.setPower(compensate(lfDrive, left));
+        lrDrive.setPower(compensate(lrDrive, left));
+        rfDrive.setPower(compensate(rfDrive, right));
+        rrDrive.setPower(compensate(rrDrive, right));
+    }
+
+    /**
+     * Set both shooter flywheels through battery compensation
+     *
+     * @param power     Flywheel power, e.g. SHOOT_DEFAULT
+     */
+    public void setShootPower(double power) {
+        require(SHOOTER);
+        lShoot.setPower(compensate(lShoot, power));
+        rShoot.setPower(compensate(rShoot, power));
+    }
+
     /**
      *
      * @param mode  RunMode to set the drive train to (e.g. w/ or w/o encoders)
@@ -299,6 +552,7 @@ public class HardwareDM
      * Sets all drive train motors to the designated mode
      */
     public void setDriveMode(DcMotor.RunMode mode) {
+        require(DRIVE);
         setDriveFrontMode(mode);
         setDriveRearMode(mode);
     }
@@ -333,6 +587,7 @@ public class HardwareDM
      *
      */
     public void setDriveZeroPower(DcMotor.ZeroPowerBehavior behavior) {
+        require(DRIVE);
         setDriveFrontZeroPower(behavior);
         setDriveRearZeroPower(behavior);
     }
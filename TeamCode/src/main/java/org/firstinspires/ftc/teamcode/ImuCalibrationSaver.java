@@ -0,0 +1,222 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+import com.qualcomm.hardware.adafruit.BNO055IMU;
+import com.qualcomm.robotcore.util.ElapsedTime;
+import com.qualcomm.robotcore.util.ReadWriteFile;
+
+import org.firstinspires.ftc.robotcore.internal.AppUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Keeps the IMU calibration file fresh without anyone having to run the calibration sample.
+ * A low priority background thread checks the IMU calibration status every POLL_MS.  The first
+ * time the gyro and accelerometer both read fully calibrated, it reads the offsets and saves
+ * them to the file adaGyro.initialize() loads, so the next INIT starts from them.  HardwareDM
+ * runs the IMU in SensorMode.IMU, which turns the magnetometer off, so its status never gets
+ * there and isn't waited for.
+ *
+ * The BNO055 can only give up its offsets in CONFIG mode, and the SDK drops out of fusion mode
+ * and back to read them -- without taking the IMU's lock, so a heading read from the OpMode
+ * thread at the same time would get CONFIG mode garbage.  We hold the IMU's own lock, the one
+ * all its synchronized reads take, around the capture, so the OpMode's reads wait for it.  The
+ * fusion restarts afterwards, so the heading can jump once (GyroBiasEstimator throws away its
+ * samples on a jump).  None of that is fine once an OpMode is steering on the heading -- so
+ * call pause() before zeroing the gyro at start.  pause() waits for a read that is already under
+ * way, the file write doesn't touch the IMU and carries on regardless.
+ *
+ * The file is written to a temp file and renamed over the old one, so a power cut mid write
+ * leaves the last good calibration rather than half a file.
+ *
+ * The thread stops by itself when the OpMode thread that started it ends, after one save, or
+ * after MAX_WATCH_MS.
+ */
+public class ImuCalibrationSaver implements Runnable {
+
+    // How often to check the calibration status
+    public final static long POLL_MS = 500;
+
+    // Calibration status bits that must be at level 3 -- gyro and accelerometer
+    public final static int CALIBRATED_BITS = 0x3C;
+
+    // Give up after this long -- an iterative OpMode's init thread never ends
+    public final static double MAX_WATCH_MS = 10 * 60 * 1000;
+
+    final BNO055IMU imu;
+    final String fileName;
+
+    // Held while we have the IMU out of fusion mode
+    final Object imuLock = new Object();
+
+    Thread thread = null;
+    Thread owner = null;
+    volatile boolean running = false;
+    volatile boolean paused = false;
+    volatile boolean saved = false;
+    int lastStatus = -1;
+
+    /**
+     * Constructor
+     *
+     * @param imu       IMU to watch, already initialized
+     * @param fileName  Calibration file name in the settings folder, same as Parameters.calibrationDataFile
+     */
+    public ImuCalibrationSaver(BNO055IMU imu, String fileName) {
+        this.imu = imu;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Start watching.  The calling thread is taken as the OpMode's -- we stop when it ends.
+     */
+    public synchronized void start() {
+        if (running) return;
+        owner = Thread.currentThread();
+        running = true;
+        paused = false;
+        thread = new Thread(this, "DM10337 IMU calibration");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Don't take the IMU out of fusion mode from now on.  Returns once any read under way is done.
+     */
+    public void pause() {
+        paused = true;
+        synchronized (imuLock) {
+            // Nothing to do -- just waiting for check() to let go
+        }
+    }
+
+    /**
+     * Stop watching for good
+     */
+    public synchronized void stop() {
+        pause();
+        running = false;
+        thread = null;
+    }
+
+    /**
+     * @return  true once this run has saved (or found already saved) a full calibration
+     */
+    public boolean isSaved() {
+        return saved;
+    }
+
+    @Override
+    public void run() {
+        ElapsedTime watchTimer = new DMTimer();
+        try {
+            while (running && !saved && owner.isAlive() && watchTimer.milliseconds() < MAX_WATCH_MS) {
+                if (!paused) check();
+                Thread.sleep(POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            // Just stop
+        } catch (RuntimeException e) {
+            // Most likely the IMU was closed under us as the OpMode ended
+            DbgLog.msg("DM10337 -- IMU calibration watch stopped: " + e);
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Check the status and capture the offsets if fully calibrated
+     */
+    void check() {
+        BNO055IMU.CalibrationData data;
+        synchronized (imuLock) {
+            if (paused) return;
+            BNO055IMU.CalibrationStatus status = imu.getCalibrationStatus();
+            if (status == null) return;
+            int bits = status.calibrationStatus & 0xFF;
+            if (bits != lastStatus) {
+                DbgLog.msg("DM10337 -- IMU calibration status " + status);
+                lastStatus = bits;
+            }
+            if ((bits & CALIBRATED_BITS) != CALIBRATED_BITS) return;
+
+            // readCalibrationData() isn't synchronized itself -- hold off the other reads
+            synchronized (imu) {
+                data = imu.readCalibrationData();
+            }
+        }
+        if (data == null) return;
+        save(data.serialize());
+        saved = true;
+    }
+
+    /**
+     * Replace the calibration file with new contents, unless it already has them
+     *
+     * @param json      Serialized calibration data
+     */
+    void save(String json) {
+        File file = AppUtil.getInstance().getSettingsFile(fileName);
+        if (file.exists() && json.equals(ReadWriteFile.readFile(file))) {
+            DbgLog.msg("DM10337 -- IMU calibration unchanged");
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(json.getBytes("UTF-8"));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("rename to " + file.getName() + " failed");
+            }
+            DbgLog.msg("DM10337 -- IMU calibration saved to " + file.getPath());
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Could not save IMU calibration: " + e.getMessage());
+            temp.delete();
+        }
+    }
+}
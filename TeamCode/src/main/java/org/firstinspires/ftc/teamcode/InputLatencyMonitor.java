@@ -0,0 +1,91 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Measures how long it takes from a driver moving a stick to the drive motors being told about
+ * it, and keeps the results in a histogram.
+ *
+ * Each gamepad update from the driver station carries the time of the stick event, but on the
+ * driver station phone's clock.  We line the two clocks up using the fastest delivery seen
+ * so far (the smallest gap between the gamepad time and our own clock).  So each sample is the
+ * full robot controller time from seeing the update to writing the motors, plus however much
+ * slower than the best case that update was to arrive.
+ *
+ * Call gamepadRead() when the loop reads the sticks and drivePowerSet() right after the drive
+ * motors get their power.
+ */
+public class InputLatencyMonitor {
+
+    // 1 ms buckets up to 100 ms is plenty -- anything longer the drivers will feel anyway
+    public final static int NUM_BUCKETS = 100;
+
+    public final LatencyHistogram histogram = new LatencyHistogram(NUM_BUCKETS, 1.0);
+
+    long lastTimestamp = 0;
+    long minOffsetMs = Long.MAX_VALUE;
+    double pendingMs = -1.0;
+
+    /**
+     * Note the gamepad update the sticks were just read from
+     *
+     * @param stamp     Gamepad timestamp read this loop
+     */
+    public void gamepadRead(long stamp) {
+        if (stamp == lastTimestamp || stamp == 0) {
+            // Nothing new from the driver this loop
+            return;
+        }
+        lastTimestamp = stamp;
+
+        long nowMs = DMTimer.nanoTime() / 1000000L;
+        long offset = nowMs - stamp;
+        if (offset < minOffsetMs) minOffsetMs = offset;
+
+        // Time of the stick event on our clock, best case delivery
+        pendingMs = stamp + minOffsetMs;
+    }
+
+    /**
+     * Drive motors were just given their power -- finish any pending measurement
+     */
+    public void drivePowerSet() {
+        if (pendingMs < 0) return;
+        histogram.add(DMTimer.nanoTime() / 1.0e6 - pendingMs);
+        pendingMs = -1.0;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Driver stick shaping done with a lookup table.  Each driver profile (deadzone, how much
+ * cubic smoothing, and minimum power to get the motors moving) is worked out once for every
+ * stick position when the profile is made.  After that shaping a stick value in the loop is
+ * just a multiply, a cast and an array read.
+ *
+ * Typical use:
+ *      InputShaper shaper = InputShaper.SMOOTH;
+ *      double throttle = shaper.shape(-gamepad1.left_stick_y);
+ */
+public class InputShaper {
+
+    // Table entries per unit of stick travel -- 0.002 resolution, finer than the gamepad sends
+    final static int STEPS = 512;
+
+    // Driver profiles
+    /* Full cubic smoothing, 10% deadzone -- what the TeleOps have always used */
+    public final static InputShaper SMOOTH = new InputShaper(0.10, 1.0, 0.05);
+    /* Half cubic, half linear -- quicker response for drivers who want it */
+    public final static InputShaper BLEND = new InputShaper(0.10, 0.5, 0.05);
+    /* Straight linear with a small deadzone */
+    public final static InputShaper LINEAR = new InputShaper(0.05, 0.0, 0.05);
+
+    /* Shaped output for stick values -1.0 to 1.0 */
+    final float[] table = new float[2 * STEPS + 1];
+
+    /**
+     * Constructor -- builds the lookup table for one profile
+     *
+     * @param dz        Deadzone 0 to 0.999
+     * @param a         Amount of cubic smoothing, 0 (linear) to 1 (full cubic)
+     * @param b         Min power to overcome motor stall
+     */
+    public InputShaper(double dz, double a, double b) {
+        for (int i = 0; i < table.length; i++) {
+            double stick = (i - STEPS) / (double) STEPS;
+            table[i] = (float) smoothPowerCurve(deadzone(stick, dz), a, b);
+        }
+    }
+
+    /**
+     * Shape a raw stick value
+     *
+     * @param rawStick  Raw value from joystick read -1.0 to 1.0
+     * @return          Deadzoned and smoothed power
+     */
+    public double shape(double rawStick) {
+        int i = (int) (rawStick * STEPS + (STEPS + 0.5));
+        if (i < 0) i = 0;
+        else if (i > 2 * STEPS) i = 2 * STEPS;
+        return table[i];
+    }
+
+    /**
+     * This does the cubic smoothing equation on joystick value.
+     * Assumes you have already done any deadzone processing.
+     *
+     * @param x  joystick input
+     * @param a  amount of cubic smoothing
+     * @param b  min power to overcome motor stall
+     * @return  smoothed value
+     */
+    static double smoothPowerCurve(double x, double a, double b) {
+        if (x > 0.0)
+            return (b + (1.0-b)*(a*x*x*x+(1.0-a)*x));
+
+        else if (x<0.0)
+            return (-b + (1.0-b)*(a*x*x*x+(1.0-a)*x));
+        else return 0.0;
+    }
+
+    /**
+     * Add deadzone to a stick value
+     *
+     * @param rawStick  Raw value from joystick read -1.0 to 1.0
+     * @param dz	Deadzone value to use 0 to 0.999
+     * @return		Value after deadzone processing
+     */
+    static double deadzone(double rawStick, double dz) {
+        // Force limit to -1.0 to 1.0
+        double stick = Math.max(-1.0, Math.min(1.0, rawStick));
+
+        // Check if value is inside the dead zone
+        if (Math.abs(stick) < dz) return 0.0;
+        if (stick >= 0.0) return (stick - dz)/(1 -  dz);
+        return (stick + dz)/(1 - dz);
+    }
+}
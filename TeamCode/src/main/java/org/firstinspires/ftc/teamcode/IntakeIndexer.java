@@ -0,0 +1,215 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Parks the intake with a paddle straight up, without blocking the loop and without flipping
+ * motor modes.  start() picks the first paddle position we can stop at from the current speed,
+ * then update() is called every loop and slows the intake down along a constant deceleration
+ * profile so it glides into that position.  isSettled() says when it has stopped there, so the
+ * driver can shoot right away instead of waiting on a fixed timer.
+ *
+ * The motor stays in RUN_USING_ENCODER the whole time -- the power we set is a fraction of max
+ * speed, which is exactly what the profile gives us.
+ */
+public class IntakeIndexer {
+
+    // Encoder counts between paddles -- 2240 counts per intake turn, 3 paddles
+    public final static double CLICKS_PER_INDEX = 2240.0 / 3.0;
+
+    // Intake speed at full power in encoder counts per second
+    public final static double MAX_COUNTS_PER_SEC = 2800.0;
+
+    // How hard we slow down going into a paddle position, counts per second per second
+    public final static double DECEL = 8000.0;
+
+    // Close enough to the target to call it there, in counts
+    public final static int TOLERANCE = 10;
+
+    // Slow enough to call it stopped, in counts per second
+    public final static double SETTLE_SPEED = 100.0;
+
+    // Least power that still moves the intake
+    public final static double MIN_POWER = 0.08;
+
+    // Give up if we haven't settled by now -- something is in the way
+    public final static double TIMEOUT_MS = 1500.0;
+
+    // Indexer states
+    public enum State { IDLE, MOVING, SETTLED, BLOCKED }
+
+    /* Motor being controlled */
+    DcMotor motor;
+
+    State state = State.IDLE;
+    double target = 0;
+    int lastPos = 0;
+    long lastTime = 0;
+    double velocity = 0.0;
+    DMTimer moveTimer = new DMTimer();
+
+    /**
+     * Constructor
+     *
+     * @param motor     Intake motor, in RUN_USING_ENCODER
+     */
+    public IntakeIndexer(DcMotor motor) {
+        this.motor = motor;
+    }
+
+    /**
+     * Start parking on the next paddle position the intake can stop at smoothly, in whichever
+     * direction it is turning
+     */
+    public void start() {
+        int pos = motor.getCurrentPosition();
+        double speed = motor.getPower() * MAX_COUNTS_PER_SEC;
+
+        // Distance needed to stop from this speed, then the first paddle past that
+        double stopDist = speed * Math.abs(speed) / (2.0 * DECEL);
+        double index;
+        if (speed >= 0.0) {
+            index = Math.ceil((pos + stopDist - TOLERANCE) / CLICKS_PER_INDEX);
+        } else {
+            // Reversing -- the next paddle is behind us
+            index = Math.floor((pos + stopDist + TOLERANCE) / CLICKS_PER_INDEX);
+        }
+        moveTo(index * CLICKS_PER_INDEX, speed);
+    }
+
+    /**
+     * Move to an exact encoder position along the same profile
+     *
+     * @param position  Target encoder position
+     */
+    public void moveTo(double position) {
+        moveTo(position, 0.0);
+    }
+
+    void moveTo(double position, double speed) {
+        target = position;
+        lastPos = motor.getCurrentPosition();
+        lastTime = DMTimer.nanoTime();
+        velocity = speed;
+        moveTimer.reset();
+        state = State.MOVING;
+    }
+
+    /**
+     * Stop controlling the intake -- the caller is taking it over
+     */
+    public void cancel() {
+        state = State.IDLE;
+    }
+
+    /**
+     * Call every loop.  Sets the intake power for this cycle while moving.
+     *
+     * @return      true while still moving
+     */
+    public boolean update() {
+        if (state != State.MOVING) return false;
+
+        int pos = motor.getCurrentPosition();
+        long now = DMTimer.nanoTime();
+        if (now > lastTime) {
+            velocity = (pos - lastPos) * 1.0e9 / (now - lastTime);
+        }
+        lastPos = pos;
+        lastTime = now;
+
+        double remaining = target - pos;
+        if (Math.abs(remaining) <= TOLERANCE) {
+            motor.setPower(0.0);
+            if (Math.abs(velocity) < SETTLE_SPEED) {
+                state = State.SETTLED;
+                return false;
+            }
+            return true;
+        }
+
+        if (moveTimer.milliseconds() > TIMEOUT_MS) {
+            motor.setPower(0.0);
+            state = State.BLOCKED;
+            return false;
+        }
+
+        // Fastest speed from which we can still stop at the target
+        double profileSpeed = Math.sqrt(2.0 * DECEL * Math.abs(remaining));
+        double power = Range.clip(profileSpeed / MAX_COUNTS_PER_SEC, MIN_POWER, 1.0);
+        motor.setPower(Math.signum(remaining) * power);
+        return true;
+    }
+
+    /**
+     * @return  true once the intake has stopped on the target
+     */
+    public boolean isSettled() {
+        return state == State.SETTLED;
+    }
+
+    /**
+     * @return  true while the indexer is driving the intake
+     */
+    public boolean isMoving() {
+        return state == State.MOVING;
+    }
+
+    /**
+     * @return  Current state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return  Encoder position we are parking at
+     */
+    public double getTarget() {
+        return target;
+    }
+
+    /**
+     * @return  Paddle number of the target, counting from encoder zero
+     */
+    public int getIndex() {
+        return (int) Math.round(target / CLICKS_PER_INDEX);
+    }
+}
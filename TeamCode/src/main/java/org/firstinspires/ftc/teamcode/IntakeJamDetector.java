@@ -0,0 +1,193 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Watches the intake encoder for jams.  Every control cycle we push the intake position and
+ * the time into a small ring buffer and work out the speed over the last window (about 100 ms).
+ * If the intake is supposed to be running but the speed drops under the stall threshold we
+ * call it jammed, so the OpMode can reverse it right away instead of grinding for a second.
+ *
+ * Typical use:
+ *      jamDetector.reset();                            // when the intake starts
+ *      if (jamDetector.update(robot.intake.getCurrentPosition())) {
+ *          // Jammed -- reverse and clear
+ *      }
+ */
+public class IntakeJamDetector {
+
+    // Default speed window -- short enough to catch a jam in ~150 ms at our loop rate
+    public final static double DEFAULT_WINDOW_MS = 100.0;
+
+    // Default stall speed -- same as the old 1050 counts per 1050 ms check
+    public final static double DEFAULT_STALL_COUNTS_PER_SEC = 1000.0;
+
+    // Default time after starting before we look for stalls, so spin up isn't called a jam
+    public final static double DEFAULT_SPINUP_MS = 250.0;
+
+    // Samples we keep.  They are spaced at least a window / (CAPACITY / 2) apart, so the ring
+    // always reaches back two windows however fast the loop runs.
+    final static int CAPACITY = 32;
+
+    /* Ring buffer of timestamped encoder positions */
+    long[] times = new long[CAPACITY];
+    int[] positions = new int[CAPACITY];
+    int head = 0;           // Next slot to write
+    int count = 0;          // Number of valid samples
+
+    /* Settings */
+    long windowNanos;
+    long spacingNanos;
+    long spinupNanos;
+    double stallCountsPerSec;
+
+    /* State */
+    long startTime = 0;
+    double velocity = 0.0;
+
+    /* Jam event log */
+    int jamCount = 0;
+    long lastJamTime = 0;
+
+    /**
+     * Constructor using the default window and threshold
+     */
+    public IntakeJamDetector() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_STALL_COUNTS_PER_SEC, DEFAULT_SPINUP_MS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param windowMs              Time span the speed is measured over
+     * @param stallCountsPerSec     Speed in encoder counts per second below which we are jammed
+     * @param spinupMs              Time after reset before stalls are checked
+     */
+    public IntakeJamDetector(double windowMs, double stallCountsPerSec, double spinupMs) {
+        this.windowNanos = (long) (windowMs * 1.0e6);
+        this.spacingNanos = windowNanos / (CAPACITY / 2);
+        this.spinupNanos = (long) (spinupMs * 1.0e6);
+        this.stallCountsPerSec = stallCountsPerSec;
+        reset();
+    }
+
+    /**
+     * Forget all history -- call each time the intake starts running forward
+     */
+    public void reset() {
+        head = 0;
+        count = 0;
+        velocity = 0.0;
+        startTime = DMTimer.nanoTime();
+    }
+
+    /**
+     * Add a position sample for this cycle and check for a stall
+     *
+     * @param position      Current intake encoder position
+     * @return              true if the intake has stalled
+     */
+    public boolean update(int position) {
+        return update(position, DMTimer.nanoTime());
+    }
+
+    /**
+     * Add a position sample taken at a given time and check for a stall
+     *
+     * @param position      Intake encoder position
+     * @param nanos         Time the position was read
+     * @return              true if the intake has stalled
+     */
+    public boolean update(int position, long nanos) {
+        // Only keep samples spaced out enough -- a fast loop would otherwise fill the ring
+        // before any sample is a window old.  This cycle's position is used either way.
+        int newest = (head + CAPACITY - 1) % CAPACITY;
+        if (count == 0 || nanos - times[newest] >= spacingNanos) {
+            times[head] = nanos;
+            positions[head] = position;
+            newest = head;
+            head = (head + 1) % CAPACITY;
+            if (count < CAPACITY) count++;
+        }
+
+        // Walk back from the newest sample to the first one at least a window old
+        int index = newest;
+        for (int i = 1; i < count; i++) {
+            if (nanos - times[index] >= windowNanos) break;
+            index = (index + CAPACITY - 1) % CAPACITY;
+        }
+
+        long dt = nanos - times[index];
+        if (dt < windowNanos) {
+            // Not enough history yet to say anything
+            return false;
+        }
+        velocity = Math.abs(position - positions[index]) * 1.0e9 / dt;
+
+        if (nanos - startTime < spinupNanos || velocity >= stallCountsPerSec) {
+            return false;
+        }
+
+        // Stalled -- log it and start over so we don't report the same jam twice
+        jamCount++;
+        lastJamTime = nanos;
+        head = 0;
+        count = 0;
+        return true;
+    }
+
+    /**
+     * @return  Intake speed over the last window in encoder counts per second
+     */
+    public double velocity() {
+        return velocity;
+    }
+
+    /**
+     * @return  Number of jams seen since the OpMode started
+     */
+    public int jamCount() {
+        return jamCount;
+    }
+
+    /**
+     * @return  DMTimer time of the last jam in nanoseconds, 0 if none
+     */
+    public long lastJamTime() {
+        return lastJamTime;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Fixed bucket histogram of times in milliseconds.  Adding a sample is one array increment, so
+ * it is fine to call every loop.  Anything past the last bucket lands in an overflow bucket.
+ */
+public class LatencyHistogram {
+
+    /* Bucket counts -- bucket i holds samples from i to i+1 bucket widths */
+    final int[] buckets;
+    final double bucketMs;
+    int overflow = 0;
+    int count = 0;
+    double maxMs = 0.0;
+    double sumMs = 0.0;
+
+    /**
+     * Constructor
+     *
+     * @param numBuckets    Number of buckets before the overflow bucket
+     * @param bucketMs      Width of each bucket in milliseconds
+     */
+    public LatencyHistogram(int numBuckets, double bucketMs) {
+        this.buckets = new int[numBuckets];
+        this.bucketMs = bucketMs;
+    }
+
+    /**
+     * Add one sample
+     *
+     * @param ms    Time in milliseconds
+     */
+    public void add(double ms) {
+        int i = (int) (ms / bucketMs);
+        if (i < 0) i = 0;
+        if (i >= buckets.length) overflow++;
+        else buckets[i]++;
+
+        count++;
+        sumMs += ms;
+        if (ms > maxMs) maxMs = ms;
+    }
+
+    /**
+     * Drop all samples
+     */
+    public void clear() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = 0;
+        overflow = 0;
+        count = 0;
+        maxMs = 0.0;
+        sumMs = 0.0;
+    }
+
+    /**
+     * @return  Number of samples
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return  Mean of all samples in milliseconds
+     */
+    public double mean() {
+        return (count > 0) ? sumMs / count : 0.0;
+    }
+
+    /**
+     * @return  Largest sample in milliseconds
+     */
+    public double max() {
+        return maxMs;
+    }
+
+    /**
+     * Estimate a percentile from the buckets
+     *
+     * @param p     Percentile 0 to 100
+     * @return      Upper edge of the bucket holding that percentile, in milliseconds
+     */
+    public double percentile(double p) {
+        if (count == 0) return 0.0;
+        int needed = (int) Math.ceil(count * p / 100.0);
+        int seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= needed) return (i + 1) * bucketMs;
+        }
+        return maxMs;
+    }
+
+    /**
+     * @return  One line summary for the log
+     */
+    public String summary() {
+        return String.format(Locale.US, "n=%d mean=%.1f p50=%.1f p95=%.1f p99=%.1f max=%.1f ms",
+                count, mean(), percentile(50), percentile(95), percentile(99), maxMs);
+    }
+
+    /**
+     * @return  Bucket counts for the log, e.g. "0:12 1:340 2:55 ... >100:0"
+     */
+    public String buckets() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] > 0) {
+                text.append((int) (i * bucketMs)).append(':').append(buckets[i]).append(' ');
+            }
+        }
+        text.append('>').append((int) (buckets.length * bucketMs)).append(':').append(overflow);
+        return text.toString();
+    }
+}
@@ -70,6 +70,7 @@ import com.qualcomm.robotcore.hardware.DcMotor;
  */
 @TeleOp(name = "Test Line Finder", group = "Sensor")
 @Disabled                           // Comment this out to add to the opmode list
+@RobotParts(HardwareDM.DRIVE | HardwareDM.COLORS)       // Only map what we use
 public class LineFinderTest extends LinearOpMode {
 
   HardwareDM robot = new HardwareDM();
@@ -77,7 +78,7 @@ public class LineFinderTest extends LinearOpMode {
   @Override
   public void runOpMode() throws InterruptedException {
 
-    robot.init(hardwareMap);
+    robot.init(this);
       // adaHSV is an array that will hold the hue, saturation, and value information.
       float[] adaHSV = {0F, 0F, 0F};
 
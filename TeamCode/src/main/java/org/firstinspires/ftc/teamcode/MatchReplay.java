@@ -0,0 +1,392 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Replays a flight recording back through the real OpMode code on a PC.  Every sensor, encoder,
+ * gamepad and timer reads exactly what it read on the field, cycle by cycle, and each cycle the
+ * powers the OpMode commands are checked against the powers it commanded during the match.
+ * Any mismatch means the code would now behave differently than it did in that match.
+ *
+ * Use it to check a change to the control code against old matches before it goes on the robot:
+ *      java org.firstinspires.ftc.teamcode.MatchReplay TeleOpMain-1487000000000.dmr TeleOpMain
+ *
+ * Autos that tracked the beacon pictures also left a .poses.csv log.  Give it as a third
+ * argument and the vision corrections replay too, each pose on the cycle it was seen:
+ *      java org.firstinspires.ftc.teamcode.MatchReplay Auto100Blue-1487000000000.dmr Auto100Blue
+ *              Auto100Blue-1486999990000.poses.csv
+ *
+ * Needs the SDK libraries and a stub android.jar on the classpath.
+ *
+ * The replay steps to the next record each time the OpMode calls recorder.sample(), so the
+ * OpMode must have been recording when the match was run.  LinearOpMode.sleep() still sleeps
+ * in real time since the SDK won't let us override it.
+ */
+public class MatchReplay {
+
+    // Commanded outputs closer than this to the recorded value count as a match
+    public final static double TOLERANCE = 0.001;
+
+    /* Where the recording comes from and where it plays into */
+    final FlightRecordReader reader;
+    final FlightRecord record = new FlightRecord();
+    final ReplayHardwareMap hwMap = new ReplayHardwareMap(record);
+
+    OpMode opMode = null;
+    ReplayPoseService poses = null;
+    boolean finished = false;
+    int cycles = 0;
+
+    // Per output mismatch stats -- index is the FlightRecord power/position field
+    int[] mismatches = new int[FlightRecord.NUM_FLOATS];
+    double[] maxError = new double[FlightRecord.NUM_FLOATS];
+
+    /**
+     * Open a recording for replay and load the first record
+     *
+     * @param file          Recording written by FlightRecorder
+     * @throws IOException  if the file can't be read or is empty
+     */
+    public MatchReplay(File file) throws IOException {
+        reader = new FlightRecordReader(file);
+        if (!reader.next(record)) {
+            reader.close();
+            throw new IOException(file + " has no records");
+        }
+
+        // Timers the OpMode creates from here on start at the recorded time
+        DMTimer.setReplayTime(record.timestamp);
+
+        // There's no phone storage here, so replay on the built in config unless told otherwise
+        if (RobotConfig.current == null) {
+            RobotConfig.setCurrent(RobotConfig.defaults());
+        }
+    }
+
+    /**
+     * Make one of our recording OpModes by name, hooked up to the replay
+     *
+     * @param name      OpMode class name, e.g. TeleOpMain or Auto100Red
+     * @return          the OpMode, or null if it is not one that records
+     */
+    public OpMode createOpMode(String name) {
+        ReplayRecorder recorder = new ReplayRecorder();
+        if (name.equals("TeleOpMain")) {
+            TeleOpMain op = new TeleOpMain();
+            op.recorder = recorder;
+            opMode = op;
+        } else if (name.equals("TeleOpAlternative")) {
+            TeleOpAlternative op = new TeleOpAlternative();
+            op.recorder = recorder;
+            opMode = op;
+        } else if (name.equals("Auto100Blue") || name.equals("Auto100Red")) {
+            Auto100Blue op = name.equals("Auto100Red") ? new Auto100Red() : new Auto100Blue();
+            op.recorder = recorder;
+            op.profile = new ReplayProfile();
+            // No INIT loop here to fit the gyro bias -- use the one the match locked in
+            if (!Float.isNaN(record.floats[FlightRecord.GYRO_OFFSET])) {
+                op.gyroBias.preset(record.floats[FlightRecord.GYRO_OFFSET], record.floats[FlightRecord.GYRO_DRIFT]);
+            }
+            opMode = op;
+        } else {
+            return null;
+        }
+
+        opMode.hardwareMap = hwMap;
+        opMode.telemetry = ReplayHardwareMap.stub(Telemetry.class, null);
+        opMode.gamepad1 = new Gamepad();
+        opMode.gamepad2 = new Gamepad();
+        loadGamepads();
+        return opMode;
+    }
+
+    /**
+     * Feed the auto the poses it saw on the field instead of a camera.  Call after createOpMode().
+     *
+     * @param file          Pose log written by BeaconPoseService.logTo()
+     * @return              false if the OpMode is not an auto that tracks the beacon pictures
+     * @throws IOException  if the log can't be read
+     */
+    public boolean replayPoses(File file) throws IOException {
+        if (!(opMode instanceof Auto100Blue)) return false;
+        poses = new ReplayPoseService(RecordedPoseSource.load(file));
+        ((Auto100Blue) opMode).vision = poses;
+        return true;
+    }
+
+    /**
+     * Run the OpMode until the recording runs out
+     */
+    public void run() throws InterruptedException {
+        try {
+            if (opMode instanceof LinearOpMode) {
+                // Start is already pressed so waitForStart falls straight through
+                opMode.start();
+                ((LinearOpMode) opMode).runOpMode();
+            } else {
+                opMode.init();
+                opMode.start();
+                while (!finished) {
+                    opMode.loop();
+                }
+                opMode.stop();
+            }
+        } finally {
+            // The interrupt we used to cut the OpMode short is not for our caller
+            Thread.interrupted();
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Done with it anyway
+            }
+            DMTimer.clearReplayTime();
+        }
+    }
+
+    /**
+     * @return  true if every commanded output matched the recording
+     */
+    public boolean matched() {
+        for (int count : mismatches) {
+            if (count > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Print a summary of the outputs that did not match
+     */
+    public void report() {
+        System.out.println("Replayed " + cycles + " cycles");
+        for (int i = 0; i < FlightRecord.NUM_FLOATS; i++) {
+            if (mismatches[i] > 0) {
+                System.out.println(String.format(Locale.US, "  %-16s %6d mismatches, max error %.4f",
+                        FlightRecord.FLOAT_NAMES[i], mismatches[i], maxError[i]));
+            }
+        }
+        System.out.println(matched() ? "Outputs match the recording" : "Outputs DIFFER from the recording");
+    }
+
+    /**
+     * Compare what the OpMode commanded this cycle against the recording
+     */
+    void compareOutputs() {
+        for (ReplayHardwareMap.ReplayMotor motor : hwMap.motors) {
+            compare(motor.powerField, motor.power);
+        }
+        compare(FlightRecord.FIRE_POWER, hwMap.fire.power);
+        for (ReplayHardwareMap.ReplayServo servo : hwMap.servos) {
+            compare(servo.posField, servo.position);
+        }
+    }
+
+    void compare(int field, double commanded) {
+        double error = Math.abs(commanded - record.floats[field]);
+        if (error > TOLERANCE) {
+            mismatches[field]++;
+            maxError[field] = Math.max(maxError[field], error);
+        }
+    }
+
+    /**
+     * Step to the next record, or finish the OpMode if there are no more
+     */
+    void advance() {
+        try {
+            if (!finished && reader.next(record)) {
+                DMTimer.setReplayTime(record.timestamp);
+                loadGamepads();
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Replay read failed: " + e.getMessage());
+        }
+        finish();
+    }
+
+    /**
+     * Out of recording -- get the OpMode to wrap up
+     */
+    void finish() {
+        if (finished) return;
+        finished = true;
+        if (opMode instanceof LinearOpMode) {
+            // Makes opModeIsActive() false and cuts short any sleep in progress
+            opMode.stop();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Put the recorded driver inputs into the OpMode gamepads
+     */
+    void loadGamepads() {
+        unpackGamepad(opMode.gamepad1, FlightRecord.G1_LEFT_X, record.ints[FlightRecord.G1_BUTTONS]);
+        unpackGamepad(opMode.gamepad2, FlightRecord.G2_LEFT_X, record.ints[FlightRecord.G2_BUTTONS]);
+    }
+
+    void unpackGamepad(Gamepad gamepad, int base, int buttons) {
+        float[] floats = record.floats;
+        gamepad.left_stick_x  = floats[base];
+        gamepad.left_stick_y  = floats[base + 1];
+        gamepad.right_stick_x = floats[base + 2];
+        gamepad.right_stick_y = floats[base + 3];
+        gamepad.left_trigger  = floats[base + 4];
+        gamepad.right_trigger = floats[base + 5];
+
+        gamepad.right_bumper       = (buttons & FlightRecord.BTN_RIGHT_BUMPER) != 0;
+        gamepad.left_bumper        = (buttons & FlightRecord.BTN_LEFT_BUMPER) != 0;
+        gamepad.back               = (buttons & FlightRecord.BTN_BACK) != 0;
+        gamepad.start              = (buttons & FlightRecord.BTN_START) != 0;
+        gamepad.guide              = (buttons & FlightRecord.BTN_GUIDE) != 0;
+        gamepad.y                  = (buttons & FlightRecord.BTN_Y) != 0;
+        gamepad.x                  = (buttons & FlightRecord.BTN_X) != 0;
+        gamepad.b                  = (buttons & FlightRecord.BTN_B) != 0;
+        gamepad.a                  = (buttons & FlightRecord.BTN_A) != 0;
+        gamepad.dpad_right         = (buttons & FlightRecord.BTN_DPAD_RIGHT) != 0;
+        gamepad.dpad_left          = (buttons & FlightRecord.BTN_DPAD_LEFT) != 0;
+        gamepad.dpad_down          = (buttons & FlightRecord.BTN_DPAD_DOWN) != 0;
+        gamepad.dpad_up            = (buttons & FlightRecord.BTN_DPAD_UP) != 0;
+        gamepad.right_stick_button = (buttons & FlightRecord.BTN_RIGHT_STICK) != 0;
+        gamepad.left_stick_button  = (buttons & FlightRecord.BTN_LEFT_STICK) != 0;
+    }
+
+    /**
+     * Stands in for the OpMode's flight recorder.  Each sample() is the end of a control cycle:
+     * check the outputs, then load the next cycle.
+     */
+    class ReplayRecorder extends FlightRecorder {
+        @Override
+        public boolean open(String name) {
+            return true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !finished;
+        }
+
+        @Override
+        public void sample(HardwareDM robot, Gamepad gamepad1, Gamepad gamepad2, double heading, double accel) {
+            if (finished) return;
+            cycles++;
+            compareOutputs();
+            advance();
+            if (poses != null) poses.poll(DMTimer.nanoTime());
+        }
+
+        @Override
+        public void close() {
+            finish();
+        }
+    }
+
+    /**
+     * Plays the pose log on the replay thread, once per cycle, rather than on the service's own
+     * thread -- so the vision fixes land on the same cycles every replay.
+     */
+    class ReplayPoseService extends BeaconPoseService {
+        ReplayPoseService(PoseSource source) {
+            super(source);
+        }
+
+        @Override
+        public synchronized void start() {
+            if (running) return;
+            running = true;
+            source.start();
+            poll(DMTimer.nanoTime());
+        }
+
+        @Override
+        public synchronized void stop() {
+            running = false;
+        }
+
+        @Override
+        void poll(long nanos) {
+            if (running) super.poll(nanos);
+        }
+    }
+
+    /**
+     * Keeps the auto step profile of a replay in memory instead of writing it next to the real
+     * match profiles, where it would throw off AutoProfileReport.
+     */
+    class ReplayProfile extends AutoProfile {
+        @Override
+        public void close() {
+            System.out.println("Replay profiled " + numSteps + " auto steps");
+            name = null;
+        }
+    }
+
+    /**
+     * Command line replay
+     *
+     * @param args      recording file, OpMode class name and optionally the auto's pose log
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: MatchReplay <recording.dmr> <TeleOpMain|TeleOpAlternative|Auto100Blue|Auto100Red> [poses.csv]");
+            System.exit(1);
+        }
+
+        MatchReplay replay = new MatchReplay(new File(args[0]));
+        if (replay.createOpMode(args[1]) == null) {
+            System.err.println(args[1] + " is not an OpMode that records");
+            System.exit(1);
+        }
+        if (args.length > 2 && !replay.replayPoses(new File(args[2]))) {
+            System.err.println(args[1] + " does not track the beacon pictures");
+            System.exit(1);
+        }
+        replay.run();
+        replay.report();
+        System.exit(replay.matched() ? 0 : 2);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Plays back poses a BeaconPoseService logged with logTo(), at the times they were seen.  Used to
+ * run the vision corrections on the JVM without a camera.  Times in the file are DMTimer nanos,
+ * the same clock the flight recording is stamped with, so during a MatchReplay each pose comes
+ * back on the cycle it was seen on the field.
+ */
+public class RecordedPoseSource implements BeaconPoseService.PoseSource {
+
+    final List<BeaconPoseService.Pose> poses;
+    int next = 0;
+
+    /**
+     * @param poses     Poses in time order
+     */
+    public RecordedPoseSource(List<BeaconPoseService.Pose> poses) {
+        this.poses = poses;
+    }
+
+    /**
+     * Read a pose log
+     *
+     * @param file      CSV written by BeaconPoseService.logTo()
+     */
+    public static RecordedPoseSource load(File file) throws IOException {
+        List<BeaconPoseService.Pose> poses = new ArrayList<BeaconPoseService.Pose>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine();        // Header
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 5) continue;
+                poses.add(new BeaconPoseService.Pose(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                        Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                        Double.parseDouble(fields[4])));
+            }
+        } finally {
+            in.close();
+        }
+        return new RecordedPoseSource(poses);
+    }
+
+    @Override
+    public void start() {
+        next = 0;
+    }
+
+    @Override
+    public BeaconPoseService.Pose read(long nanos) {
+        // Newest pose that is due -- skip any we were too slow for, like Vuforia would
+        BeaconPoseService.Pose due = null;
+        while (next < poses.size() && poses.get(next).nanos <= nanos) {
+            due = poses.get(next++);
+        }
+        return due;
+    }
+
+    @Override
+    public void stop() {
+    }
+}
@@ -0,0 +1,398 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.hardware.adafruit.BNO055IMU;
+import com.qualcomm.hardware.modernrobotics.ModernRoboticsI2cRangeSensor;
+import com.qualcomm.robotcore.hardware.CRServo;
+import com.qualcomm.robotcore.hardware.ColorSensor;
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.DcMotorSimple;
+import com.qualcomm.robotcore.hardware.DeviceInterfaceModule;
+import com.qualcomm.robotcore.hardware.HardwareDevice;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+import com.qualcomm.robotcore.hardware.I2cAddr;
+import com.qualcomm.robotcore.hardware.I2cDeviceSynch;
+import com.qualcomm.robotcore.hardware.Servo;
+import com.qualcomm.robotcore.hardware.ServoController;
+import com.qualcomm.robotcore.hardware.TouchSensor;
+
+import org.firstinspires.ftc.robotcore.external.navigation.Acceleration;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * This is NOT an opmode.
+ *
+ * A HardwareMap full of fake devices that play back a flight recording.  It has every device
+ * HardwareDM asks for, under the same names.  Sensors and encoders return whatever is in the
+ * current FlightRecord; motors, servos and the CR servo just remember what they were told so
+ * MatchReplay can compare it against what the robot was told on the field.
+ *
+ * Runs on the JVM -- no phone or controllers needed.
+ */
+public class ReplayHardwareMap extends HardwareMap {
+
+    /* The record the devices are reading from -- MatchReplay loads each cycle into it */
+    final FlightRecord record;
+
+    /* Replay devices, kept so MatchReplay can read back commanded outputs */
+    final ReplayMotor[] motors;
+    final ReplayCRServo fire;
+    final ReplayServo[] servos;
+
+    /**
+     * Constructor -- creates and registers all the fake devices
+     *
+     * @param record    Record the devices read from
+     */
+    public ReplayHardwareMap(FlightRecord record) {
+        super(null);
+        this.record = record;
+
+        motors = new ReplayMotor[] {
+                new ReplayMotor(record, FlightRecord.LF_ENC, FlightRecord.LF_POWER),
+                new ReplayMotor(record, FlightRecord.LR_ENC, FlightRecord.LR_POWER),
+                new ReplayMotor(record, FlightRecord.RF_ENC, FlightRecord.RF_POWER),
+                new ReplayMotor(record, FlightRecord.RR_ENC, FlightRecord.RR_POWER),
+                new ReplayMotor(record, FlightRecord.L_SHOOT_ENC, FlightRecord.L_SHOOT_POWER),
+                new ReplayMotor(record, FlightRecord.R_SHOOT_ENC, FlightRecord.R_SHOOT_POWER),
+                new ReplayMotor(record, FlightRecord.INTAKE_ENC, FlightRecord.INTAKE_POWER),
+                new ReplayMotor(record, FlightRecord.LIFT_ENC, FlightRecord.LIFT_POWER)
+        };
+        String[] motorNames = {"lf motor", "lr motor", "rf motor", "rr motor",
+                "l shoot", "r shoot", "intake", "lift"};
+        for (int i = 0; i < motors.length; i++) {
+            dcMotor.put(motorNames[i], motors[i]);
+        }
+
+        fire = new ReplayCRServo();
+        crservo.put("fire", fire);
+
+        servos = new ReplayServo[] {
+                new ReplayServo(FlightRecord.BEACON_POS),
+                new ReplayServo(FlightRecord.PIVOT_POS),
+                new ReplayServo(FlightRecord.LIFT_DEPLOY_POS),
+                new ReplayServo(FlightRecord.CAPHOLD_POS)
+        };
+        String[] servoNames = {"beacon", "pivot", "lift deploy", "cap hold"};
+        for (int i = 0; i < servos.length; i++) {
+            servo.put(servoNames[i], servos[i]);
+        }
+
+        touchSensor.put("ts", new ReplayTouchSensor(record, 1));
+        touchSensor.put("cs", new ReplayTouchSensor(record, 2));
+
+        colorSensor.put("color", new ReplayColorSensor(record, FlightRecord.BEACON_RED));
+        colorSensor.put("stripe", new ReplayColorSensor(record, FlightRecord.STRIPE_RED));
+
+        // These are only looked up with get(Class, name) so the generic put is enough
+        deviceInterfaceModule.put("dim", stub(DeviceInterfaceModule.class, null));
+        put("range", new ReplayRangeSensor(record));
+        put("gyro", (HardwareDevice) stub(BNO055IMU.class, new ReplayGyro(record), HardwareDevice.class));
+    }
+
+    /**
+     * Make an object implementing an interface where every method does nothing and returns
+     * zero / false / null -- or another do-nothing object for interface return types.
+     *
+     * @param iface     Interface to implement
+     * @param handler   Optional handler tried first; return NOT_HANDLED to fall back to the default
+     * @param extra     Any other interfaces it should implement, e.g. HardwareDevice
+     * @return          Do-nothing implementation
+     */
+    static <T> T stub(final Class<T> iface, final InvocationHandler handler, Class<?>... extra) {
+        Class<?>[] ifaces = new Class<?>[extra.length + 1];
+        ifaces[0] = iface;
+        System.arraycopy(extra, 0, ifaces, 1, extra.length);
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), ifaces,
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (handler != null) {
+                            Object result = handler.invoke(proxy, method, args);
+                            if (result != NOT_HANDLED) return result;
+                        }
+                        return defaultValue(method.getReturnType());
+                    }
+                }));
+    }
+
+    // Marker a stub handler returns to get the default behavior
+    static final Object NOT_HANDLED = new Object();
+
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0f;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == char.class) return (char) 0;
+        if (type.isInterface()) return stub(type, null);
+        return null;
+    }
+
+    /**
+     * Motor -- encoder from the record, remembers commanded power, mode and target
+     */
+    @SuppressWarnings("deprecation")    // DcMotor still has setPowerFloat() to implement
+    static class ReplayMotor implements DcMotor {
+        final FlightRecord record;
+        final int encField;
+        final int powerField;
+        double power = 0.0;
+        int target = 0;
+        RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+        ZeroPowerBehavior zeroPower = ZeroPowerBehavior.FLOAT;
+        Direction direction = Direction.FORWARD;
+        int maxSpeed = 0;
+
+        // Counts from target that the controller calls done in RUN_TO_POSITION
+        static final int BUSY_TOLERANCE = 10;
+
+        ReplayMotor(FlightRecord record, int encField, int powerField) {
+            this.record = record;
+            this.encField = encField;
+            this.powerField = powerField;
+        }
+
+        @Override public void setPower(double power) { this.power = power; }
+        @Override public double getPower() { return power; }
+        @Override public int getCurrentPosition() { return record.ints[encField]; }
+        @Override public void setTargetPosition(int position) { target = position; }
+        @Override public int getTargetPosition() { return target; }
+        @Override public void setMode(RunMode mode) { this.mode = mode; }
+        @Override public RunMode getMode() { return mode; }
+        @Override public boolean isBusy() {
+            return mode == RunMode.RUN_TO_POSITION &&
+                    Math.abs(target - getCurrentPosition()) > BUSY_TOLERANCE;
+        }
+        @Override public void setZeroPowerBehavior(ZeroPowerBehavior behavior) { zeroPower = behavior; }
+        @Override public ZeroPowerBehavior getZeroPowerBehavior() { return zeroPower; }
+        @Override public void setPowerFloat() { zeroPower = ZeroPowerBehavior.FLOAT; power = 0.0; }
+        @Override public boolean getPowerFloat() { return zeroPower == ZeroPowerBehavior.FLOAT && power == 0.0; }
+        @Override public void setDirection(Direction direction) { this.direction = direction; }
+        @Override public Direction getDirection() { return direction; }
+        @Override public void setMaxSpeed(int encoderTicksPerSecond) { maxSpeed = encoderTicksPerSecond; }
+        @Override public int getMaxSpeed() { return maxSpeed; }
+        @Override public DcMotorController getController() { return stub(DcMotorController.class, null); }
+        @Override public int getPortNumber() { return 0; }
+        @Override public Manufacturer getManufacturer() { return Manufacturer.Other; }
+        @Override public String getDeviceName() { return "Replay Motor"; }
+        @Override public String getConnectionInfo() { return "replay"; }
+        @Override public int getVersion() { return 1; }
+        @Override public void resetDeviceConfigurationForOpMode() { }
+        @Override public void close() { }
+    }
+
+    /**
+     * Continuous rotation servo -- remembers commanded power
+     */
+    static class ReplayCRServo implements CRServo {
+        double power = 0.0;
+        DcMotorSimple.Direction direction = DcMotorSimple.Direction.FORWARD;
+
+        @Override public void setPower(double power) { this.power = power; }
+        @Override public double getPower() { return power; }
+        @Override public void setDirection(DcMotorSimple.Direction direction) { this.direction = direction; }
+        @Override public DcMotorSimple.Direction getDirection() { return direction; }
+        @Override public ServoController getController() { return stub(ServoController.class, null); }
+        @Override public int getPortNumber() { return 0; }
+        @Override public Manufacturer getManufacturer() { return Manufacturer.Other; }
+        @Override public String getDeviceName() { return "Replay CR Servo"; }
+        @Override public String getConnectionInfo() { return "replay"; }
+        @Override public int getVersion() { return 1; }
+        @Override public void resetDeviceConfigurationForOpMode() { }
+        @Override public void close() { }
+    }
+
+    /**
+     * Servo -- remembers commanded position
+     */
+    static class ReplayServo implements Servo {
+        final int posField;
+        double position = 0.0;
+        Direction direction = Direction.FORWARD;
+
+        ReplayServo(int posField) {
+            this.posField = posField;
+        }
+
+        @Override public void setPosition(double position) { this.position = position; }
+        @Override public double getPosition() { return position; }
+        @Override public void scaleRange(double min, double max) { }
+        @Override public void setDirection(Direction direction) { this.direction = direction; }
+        @Override public Direction getDirection() { return direction; }
+        @Override public ServoController getController() { return stub(ServoController.class, null); }
+        @Override public int getPortNumber() { return 0; }
+        @Override public Manufacturer getManufacturer() { return Manufacturer.Other; }
+        @Override public String getDeviceName() { return "Replay Servo"; }
+        @Override public String getConnectionInfo() { return "replay"; }
+        @Override public int getVersion() { return 1; }
+        @Override public void resetDeviceConfigurationForOpMode() { }
+        @Override public void close() { }
+    }
+
+    /**
+     * Touch sensor -- one bit of the recorded TOUCH_BITS field
+     */
+    static class ReplayTouchSensor implements TouchSensor {
+        final FlightRecord record;
+        final int bit;
+
+        ReplayTouchSensor(FlightRecord record, int bit) {
+            this.record = record;
+            this.bit = bit;
+        }
+
+        @Override public boolean isPressed() { return (record.ints[FlightRecord.TOUCH_BITS] & bit) != 0; }
+        @Override public double getValue() { return isPressed() ? 1.0 : 0.0; }
+        @Override public Manufacturer getManufacturer() { return Manufacturer.Other; }
+        @Override public String getDeviceName() { return "Replay Touch Sensor"; }
+        @Override public String getConnectionInfo() { return "replay"; }
+        @Override public int getVersion() { return 1; }
+        @Override public void resetDeviceConfigurationForOpMode() { }
+        @Override public void close() { }
+    }
+
+    /**
+     * Color sensor -- four recorded channels starting at the red field
+     */
+    static class ReplayColorSensor implements ColorSensor {
+        final FlightRecord record;
+        final int redField;
+        I2cAddr address = I2cAddr.zero();
+
+        ReplayColorSensor(FlightRecord record, int redField) {
+            this.record = record;
+            this.redField = redField;
+        }
+
+        @Override public int red() { return record.ints[redField]; }
+        @Override public int green() { return record.ints[redField + 1]; }
+        @Override public int blue() { return record.ints[redField + 2]; }
+        @Override public int alpha() { return record.ints[redField + 3]; }
+        @Override public int argb() { return (alpha() << 24) | (red() << 16) | (green() << 8) | blue(); }
+        @Override public void enableLed(boolean enable) { }
+        @Override public void setI2cAddress(I2cAddr newAddress) { address = newAddress; }
+        @Override public I2cAddr getI2cAddress() { return address; }
+        @Override public Manufacturer getManufacturer() { return Manufacturer.Other; }
+        @Override public String getDeviceName() { return "Replay Color Sensor"; }
+        @Override public String getConnectionInfo() { return "replay"; }
+        @Override public int getVersion() { return 1; }
+        @Override public void resetDeviceConfigurationForOpMode() { }
+        @Override public void close() { }
+    }
+
+    /**
+     * Range sensor -- recorded distance.  Sits on a do-nothing I2C client.
+     */
+    static class ReplayRangeSensor extends ModernRoboticsI2cRangeSensor {
+        final FlightRecord record;
+
+        ReplayRangeSensor(FlightRecord record) {
+            super(stub(I2cDeviceSynch.class, null));
+            this.record = record;
+        }
+
+        @Override
+        public double getDistance(DistanceUnit unit) {
+            return unit.fromCm(record.floats[FlightRecord.RANGE_CM]);
+        }
+    }
+
+    /**
+     * IMU behavior -- reports the recorded heading and that it is calibrated
+     */
+    static class ReplayGyro implements InvocationHandler {
+        final FlightRecord record;
+
+        /* Heading at the last rate read, to work the rate out from the recorded headings */
+        float lastHeading = Float.NaN;
+        long lastTime = 0;
+        float lastRate = 0f;
+
+        ReplayGyro(FlightRecord record) {
+            this.record = record;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getAngularOrientation")) {
+                float heading = record.floats[FlightRecord.HEADING];
+                return new Orientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.DEGREES,
+                        Float.isNaN(heading) ? 0f : heading, 0f, 0f, record.timestamp);
+            }
+            if (name.equals("getAngularVelocity")) {
+                // Rate isn't recorded, so difference the recorded heading between cycles
+                float heading = record.floats[FlightRecord.HEADING];
+                if (Float.isNaN(heading)) heading = 0f;
+                if (record.timestamp != lastTime) {
+                    if (!Float.isNaN(lastHeading)) {
+                        // Wrap the change -- red runs hold 180, where the heading flips sign
+                        lastRate = (float) GyroBiasEstimator.wrap(heading - lastHeading) /
+                                ((record.timestamp - lastTime) / 1.0e9f);
+                    }
+                    lastHeading = heading;
+                    lastTime = record.timestamp;
+                }
+                return new AngularVelocity(AngleUnit.DEGREES, 0f, 0f, lastRate, record.timestamp);
+            }
+            if (name.equals("getLinearAcceleration")) {
+                // Only the horizontal size is recorded -- hand it back along X so the OpMode's
+                // hypot(x, y) gets it again.  NaN if it wasn't read that cycle.
+                return new Acceleration(DistanceUnit.METER, record.floats[FlightRecord.ACCEL], 0.0, 0.0,
+                        record.timestamp);
+            }
+            if (name.equals("initialize") || name.equals("isSystemCalibrated") ||
+                    name.equals("isGyroCalibrated")) {
+                return true;
+            }
+            return NOT_HANDLED;
+        }
+    }
+}
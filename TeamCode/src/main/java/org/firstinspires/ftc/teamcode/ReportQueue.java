@@ -0,0 +1,166 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Lock free queue of telemetry values and log lines from one thread (the control loop) to one
+ * other thread (the reporter), so the control loop never waits on telemetry or the log.
+ *
+ * Entries live in preallocated parallel arrays used as a ring.  The producer owns tail and the
+ * consumer owns head; each only reads the other's with a volatile read and publishes its own
+ * with lazySet, which is all the ordering one producer and one consumer need.  If the reporter
+ * falls so far behind that the ring is full, new entries are dropped and counted rather than
+ * making the control loop wait.
+ *
+ * Exactly one thread may put and exactly one may drain.
+ */
+public class ReportQueue {
+
+    final static int DOUBLE = 0;
+    final static int INT = 1;
+    final static int BOOLEAN = 2;
+    final static int LOG = 3;
+
+    final int mask;
+    final int[] kind;
+    final int[] slot;
+    final double[] value;
+    final String[] text;
+
+    final AtomicLong head = new AtomicLong();       // Next entry to read -- consumer only writes
+    final AtomicLong tail = new AtomicLong();       // Next entry to write -- producer only writes
+
+    volatile int dropped = 0;                       // Producer only writes
+
+    /**
+     * Constructor
+     *
+     * @param capacity  Most entries waiting at once, rounded up to a power of 2
+     */
+    public ReportQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        mask = size - 1;
+        kind = new int[size];
+        slot = new int[size];
+        value = new double[size];
+        text = new String[size];
+    }
+
+    /**
+     * Producer side: queue a TelemetryDM slot value
+     *
+     * @return  false if the queue was full and it was dropped
+     */
+    public boolean setDouble(int slot, double value) {
+        return put(DOUBLE, slot, value, null);
+    }
+
+    public boolean setInt(int slot, int value) {
+        return put(INT, slot, value, null);
+    }
+
+    public boolean setBoolean(int slot, boolean value) {
+        return put(BOOLEAN, slot, value ? 1.0 : 0.0, null);
+    }
+
+    /**
+     * Producer side: queue a line for DbgLog
+     */
+    public boolean log(String message) {
+        return put(LOG, 0, 0.0, message);
+    }
+
+    boolean put(int kind, int slot, double value, String text) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int i = (int) t & mask;
+        this.kind[i] = kind;
+        this.slot[i] = slot;
+        this.value[i] = value;
+        this.text[i] = text;
+        tail.lazySet(t + 1);            // Entry is written before it is visible
+        return true;
+    }
+
+    /**
+     * Consumer side: apply everything queued so far
+     *
+     * @param tel   Telemetry to write the values into
+     * @return      Number of entries applied
+     */
+    public int drainTo(TelemetryDM tel) {
+        long h = head.get();
+        long t = tail.get();
+        int count = 0;
+        for (; h < t; h++) {
+            int i = (int) h & mask;
+            switch (kind[i]) {
+                case DOUBLE:
+                    tel.setDouble(slot[i], value[i]);
+                    break;
+                case INT:
+                    tel.setInt(slot[i], (int) value[i]);
+                    break;
+                case BOOLEAN:
+                    tel.setBoolean(slot[i], value[i] != 0.0);
+                    break;
+                case LOG:
+                    DbgLog.msg(text[i]);
+                    text[i] = null;
+                    break;
+            }
+            count++;
+        }
+        head.lazySet(h);                // Slots are free for the producer again
+        return count;
+    }
+
+    /**
+     * @return  Entries dropped because the queue was full
+     */
+    public int dropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,426 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Robot configuration that can be changed on the phone without a redeploy: device names, motor
+ * directions, servo positions and speeds, and drive train dimensions.  Everything has a built in
+ * default, and any of them can be overridden in FIRST/DM10337/robot.cfg, one "key = value" per
+ * line:
+ *
+ *      # Beacon pusher swings a little further on the new servo
+ *      servo.beacon.max = 0.85
+ *      name.gyro = imu
+ *      direction.intake = REVERSE
+ *
+ * If robot.cfg isn't there a copy with all the defaults is written so there's something to edit.
+ *
+ * Parsing the text only happens when robot.cfg changes.  The parsed values are saved as a flat
+ * binary file (robot.cfg.bin) along with the size and time of the robot.cfg it came from, and
+ * after that INIT just reads the binary straight into the value tables.  Within one run of the
+ * app the loaded config is shared by every OpMode, and loaded again at the next OpMode INIT if
+ * robot.cfg has changed, so values can be tuned between matches without restarting the app.
+ *
+ * Values are looked up by index, e.g. config.number(RobotConfig.PIVOT_HOME), so there are no
+ * string lookups after loading.
+ */
+public class RobotConfig {
+
+    // Numbers
+    public final static int PIVOT_HOME                  = 0;
+    public final static int BEACON_HOME                 = 1;
+    public final static int CAPHOLD_HOME                = 2;
+    public final static int LIFT_DEPLOY_HOME            = 3;
+    public final static int PIVOT_MIN_RANGE             = 4;
+    public final static int PIVOT_MAX_RANGE             = 5;
+    public final static int BEACON_MIN_RANGE            = 6;
+    public final static int BEACON_MAX_RANGE            = 7;
+    public final static int LIFT_DEPLOY_MIN_RANGE       = 8;
+    public final static int LIFT_DEPLOY_MAX_RANGE       = 9;
+    public final static int CAPHOLD_DEPLOY_MIN_RANGE    = 10;
+    public final static int CAPHOLD_DEPLOY_MAX_RANGE    = 11;
+    public final static int DRIVE_GEAR_REDUCTION        = 12;
+    public final static int WHEEL_DIAMETER_INCHES       = 13;
+    public final static int WHEELBASE_INCHES            = 14;
+    public final static int SHOOT_DEFAULT               = 15;
+    public final static int PIVOT_SWEEP_SEC             = 16;   // Seconds for a full 0 to 1 move
+    public final static int BEACON_SWEEP_SEC            = 17;
+    public final static int LIFT_DEPLOY_SWEEP_SEC       = 18;
+    public final static int CAPHOLD_SWEEP_SEC           = 19;
+    final static int NUM_NUMBERS = 20;
+
+    final static String[] NUMBER_KEYS = {
+            "servo.pivot.home", "servo.beacon.home", "servo.caphold.home", "servo.liftdeploy.home",
+            "servo.pivot.min", "servo.pivot.max", "servo.beacon.min", "servo.beacon.max",
+            "servo.liftdeploy.min", "servo.liftdeploy.max", "servo.caphold.min", "servo.caphold.max",
+            "drive.gear.reduction", "drive.wheel.diameter", "drive.wheelbase",
+            "shoot.default",
+            "servo.pivot.sweep", "servo.beacon.sweep", "servo.liftdeploy.sweep", "servo.caphold.sweep"};
+    final static double[] NUMBER_DEFAULTS = {
+            0.025, 0.22, 0.0, 0.27,
+            0.025, 0.55, 0.22, 0.82,
+            0.0, 0.27, 0.0, 0.80,
+            40.0, 4.0, 16.0,
+            0.925,
+            0.6, 0.25, 0.55, 0.6};
+
+    // Device names
+    public final static int LF_MOTOR        = 0;
+    public final static int LR_MOTOR        = 1;
+    public final static int RF_MOTOR        = 2;
+    public final static int RR_MOTOR        = 3;
+    public final static int L_SHOOT         = 4;
+    public final static int R_SHOOT         = 5;
+    public final static int INTAKE          = 6;
+    public final static int LIFT            = 7;
+    public final static int FIRE            = 8;
+    public final static int BEACON          = 9;
+    public final static int PIVOT           = 10;
+    public final static int LIFT_DEPLOY     = 11;
+    public final static int CAP_HOLD        = 12;
+    public final static int LIFT_LIMIT      = 13;
+    public final static int CAM_SWITCH      = 14;
+    public final static int RANGE           = 15;
+    public final static int BEACON_COLOR    = 16;
+    public final static int DIM             = 17;
+    public final static int STRIPE_COLOR    = 18;
+    public final static int GYRO            = 19;
+
+    // Motor directions
+    public final static int LEFT_DRIVE_DIR  = 20;
+    public final static int RIGHT_DRIVE_DIR = 21;
+    public final static int L_SHOOT_DIR     = 22;
+    public final static int R_SHOOT_DIR     = 23;
+    public final static int INTAKE_DIR      = 24;
+    public final static int LIFT_DIR        = 25;
+
+    // Vuforia license key -- vision is off if this is blank
+    public final static int VUFORIA_KEY     = 26;
+    // Half of the camera picture the beacon color sensor is in front of, LEFT or RIGHT
+    public final static int VISION_SENSOR_HALF = 27;
+    final static int NUM_STRINGS = 28;
+
+    final static String[] STRING_KEYS = {
+            "name.lf motor", "name.lr motor", "name.rf motor", "name.rr motor",
+            "name.l shoot", "name.r shoot", "name.intake", "name.lift",
+            "name.fire", "name.beacon", "name.pivot", "name.lift deploy", "name.cap hold",
+            "name.ts", "name.cs", "name.range", "name.color", "name.dim", "name.stripe", "name.gyro",
+            "direction.left drive", "direction.right drive", "direction.l shoot", "direction.r shoot",
+            "direction.intake", "direction.lift",
+            "vision.key", "vision.sensor.half"};
+    final static String[] STRING_DEFAULTS = {
+            "lf motor", "lr motor", "rf motor", "rr motor",
+            "l shoot", "r shoot", "intake", "lift",
+            "fire", "beacon", "pivot", "lift deploy", "cap hold",
+            "ts", "cs", "range", "color", "dim", "stripe", "gyro",
+            "REVERSE", "FORWARD", "REVERSE", "FORWARD",
+            "FORWARD", "FORWARD",
+            "", "RIGHT"};
+
+    // Files
+    public final static String CONFIG_FILE = "robot.cfg";
+    public final static String CACHE_FILE = "robot.cfg.bin";
+    final static int CACHE_MAGIC = 0x444D4346;      // "DMCF"
+    final static int CACHE_VERSION = 1;
+
+    /* The config every OpMode in this run of the app shares, and the robot.cfg it came from */
+    static RobotConfig current = null;
+    static boolean pinned = false;          // Set by setCurrent() -- never reload
+    static long loadedModified = 0;
+    static long loadedLength = 0;
+
+    double[] numbers = new double[NUM_NUMBERS];
+    String[] strings = new String[NUM_STRINGS];
+
+    /**
+     * @return  Config with every value at its built in default
+     */
+    public static RobotConfig defaults() {
+        RobotConfig config = new RobotConfig();
+        System.arraycopy(NUMBER_DEFAULTS, 0, config.numbers, 0, NUM_NUMBERS);
+        System.arraycopy(STRING_DEFAULTS, 0, config.strings, 0, NUM_STRINGS);
+        return config;
+    }
+
+    /**
+     * The robot's config, loaded the first time anything asks for it and again whenever
+     * robot.cfg has been edited since.  Checking costs two file stats.
+     *
+     * @return  Shared config
+     */
+    public static synchronized RobotConfig get() {
+        if (pinned) return current;
+
+        File folder = FlightRecorder.recordFolder();
+        File text = new File(folder, CONFIG_FILE);
+        if (current == null || text.lastModified() != loadedModified || text.length() != loadedLength) {
+            if (current != null) DbgLog.msg("DM10337 -- Robot config changed, reloading");
+            current = load(folder);
+
+            // After the load, which writes robot.cfg if it wasn't there
+            loadedModified = text.lastModified();
+            loadedLength = text.length();
+        }
+        return current;
+    }
+
+    /**
+     * Use this config from now on instead of the one on the phone (e.g. for replays)
+     */
+    public static synchronized void setCurrent(RobotConfig config) {
+        current = config;
+        pinned = (config != null);
+    }
+
+    /**
+     * @return  Number value, e.g. number(PIVOT_HOME)
+     */
+    public double number(int key) {
+        return numbers[key];
+    }
+
+    /**
+     * @return  String value, e.g. string(LF_MOTOR)
+     */
+    public String string(int key) {
+        return strings[key];
+    }
+
+    /**
+     * @return  Motor direction value, e.g. direction(INTAKE_DIR)
+     */
+    public DcMotor.Direction direction(int key) {
+        return DcMotor.Direction.valueOf(strings[key]);
+    }
+
+    /**
+     * Load from a folder -- the binary cache if it is up to date, otherwise parse the text and
+     * refresh the cache.  Anything that goes wrong leaves us on the defaults.
+     *
+     * @param folder    Folder with robot.cfg
+     * @return          Config
+     */
+    static RobotConfig load(File folder) {
+        File text = new File(folder, CONFIG_FILE);
+        File cache = new File(folder, CACHE_FILE);
+        RobotConfig config = defaults();
+
+        if (!text.exists()) {
+            try {
+                folder.mkdirs();
+                config.writeText(text);
+                DbgLog.msg("DM10337 -- Wrote default robot config to " + text.getPath());
+            } catch (IOException e) {
+                DbgLog.error("DM10337 -- Could not write default robot config: " + e.getMessage());
+            }
+            return config;
+        }
+
+        try {
+            if (config.readCache(cache, text)) {
+                DbgLog.msg("DM10337 -- Robot config loaded from cache");
+                return config;
+            }
+        } catch (IOException e) {
+            // Fall through and parse the text
+            config = defaults();
+        }
+
+        try {
+            int entries = config.parse(text);
+            DbgLog.msg("DM10337 -- Robot config parsed, " + entries + " entries read");
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Robot config could not be read, using defaults: " + e.getMessage());
+            return defaults();
+        }
+
+        try {
+            config.writeCache(cache, text);
+        } catch (IOException e) {
+            DbgLog.error("DM10337 -- Robot config cache could not be written: " + e.getMessage());
+        }
+        return config;
+    }
+
+    /**
+     * Parse the text form over the current values
+     *
+     * @return  Number of values set
+     */
+    int parse(File text) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(text));
+        int count = 0;
+        int lineNum = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNum++;
+                int hash = line.indexOf('#');
+                if (hash >= 0) line = line.substring(0, hash);
+                line = line.trim();
+                if (line.length() == 0) continue;
+
+                int equals = line.indexOf('=');
+                if (equals < 0) {
+                    DbgLog.error("DM10337 -- robot.cfg line " + lineNum + ": no '='");
+                    continue;
+                }
+                String key = line.substring(0, equals).trim();
+                String value = line.substring(equals + 1).trim();
+                if (set(key, value)) {
+                    count++;
+                } else {
+                    DbgLog.error("DM10337 -- robot.cfg line " + lineNum + ": bad entry " + key + " = " + value);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    /**
+     * Set one value by key
+     *
+     * @return  false if the key is unknown or the value doesn't fit it
+     */
+    boolean set(String key, String value) {
+        for (int i = 0; i < NUM_NUMBERS; i++) {
+            if (NUMBER_KEYS[i].equals(key)) {
+                try {
+                    numbers[i] = Double.parseDouble(value);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < NUM_STRINGS; i++) {
+            if (STRING_KEYS[i].equals(key)) {
+                if (i >= LEFT_DRIVE_DIR && i <= LIFT_DIR) {
+                    value = value.toUpperCase();
+                    if (!value.equals("FORWARD") && !value.equals("REVERSE")) return false;
+                }
+                strings[i] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write every value out in the text form
+     */
+    void writeText(File text) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(text));
+        try {
+            out.println("# DM10337 robot config -- key = value, # starts a comment");
+            out.println("# Delete this file to get the defaults back");
+            for (int i = 0; i < NUM_NUMBERS; i++) {
+                out.println(NUMBER_KEYS[i] + " = " + numbers[i]);
+            }
+            for (int i = 0; i < NUM_STRINGS; i++) {
+                out.println(STRING_KEYS[i] + " = " + strings[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Save the parsed values, stamped with the text file they came from
+     */
+    void writeCache(File cache, File text) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cache)));
+        try {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(text.lastModified());
+            out.writeLong(text.length());
+            out.writeInt(NUM_NUMBERS);
+            out.writeInt(NUM_STRINGS);
+            for (int i = 0; i < NUM_NUMBERS; i++) {
+                out.writeDouble(numbers[i]);
+            }
+            for (int i = 0; i < NUM_STRINGS; i++) {
+                out.writeUTF(strings[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read the saved values if they still match the text file
+     *
+     * @return  false if there is no cache or it is out of date
+     */
+    boolean readCache(File cache, File text) throws IOException {
+        if (!cache.exists()) return false;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)));
+        try {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) return false;
+            if (in.readLong() != text.lastModified() || in.readLong() != text.length()) return false;
+            if (in.readInt() != NUM_NUMBERS || in.readInt() != NUM_STRINGS) return false;
+            for (int i = 0; i < NUM_NUMBERS; i++) {
+                numbers[i] = in.readDouble();
+            }
+            for (int i = 0; i < NUM_STRINGS; i++) {
+                strings[i] = in.readUTF();
+            }
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -58,46 +58,62 @@ public class TeleOpAlternative extends OpMode{
     /* Declare OpMode members. */
     HardwareDM robot       = new HardwareDM(); // use the class created to define a robot hardware
 
+    // Rate limited telemetry and the lines we show on it
+    TelemetryDM          tel;
+    int                  g1LeftTriggerSlot;
+    int                  g1RightTriggerSlot;
+    int                  g2LeftTriggerSlot;
+    int                  g2RightTriggerSlot;
+    int                  shotsSlot;
+    int                  jamsSlot;
+    int                  latencySlot;
+    int                  holdSlot;
+    int                  batterySlot;
+
+    // Records every loop for after match analysis
+    FlightRecorder       recorder                = new FlightRecorder();
+
+    // Driver gamepads, read once per loop -- triggers and right stick count as buttons past these
+    GamepadEvents        pad1                    = new GamepadEvents(0.6, 0.6, 0.2);
+    GamepadEvents        pad2                    = new GamepadEvents(0.2, 0.25, 0.2);
+
+    // Driver stick shaping profile and stick-to-motor latency
+    InputShaper          driveShaper             = InputShaper.SMOOTH;
+    InputLatencyMonitor  inputLatency            = new InputLatencyMonitor();
+    int                  intakePosSlot;
+    int                  intakeTargetSlot;
+    int                  intakeRotationSlot;
+    int                  intakeReadySlot;
+
     // Drivetrain constants when in Cap Ball Mode
     final double         CAP_DRIVE_SPEED         = -1.0;        // Reverse the direction
     final double         CAP_TURN_SPEED          = 1.0;         // Slow down the turns a bit
 
-    // Brake mode status on drive train
-    boolean              braked                  = false;       // Not in brake mode initially
-    int                  lfBrakedPosn;
-    int                  lrBrakedPosn;
-    int                  rfBrakedPosn;
-    int                  rrBrakedPosn;
+    // Brake mode holds the drive train in place against defense
+    DriveHold            driveHold               = null;
+    boolean              pushed                  = false;
 
     /* Shooter status */
     double               shootSpeed              = robot.SHOOT_DEFAULT;
-    static boolean       shootPressed            = false;
-    boolean              shooterHot              = false;
 
 
     boolean camIsPressedTrue = false;
 
     // Keep track of the status of the intake
     boolean              intakeReset             = false;
-    boolean              intakeStop              = false;
     boolean              intakeStopped           = false;
-    boolean              intakeStopInPos         = false;
     boolean              intakeIn                = false;    // intake running forward
     boolean              intakeOut               = false;    // intake running backward
-    boolean              intakeInPressed         = false;    // Is intake button pressed
-    boolean              intakeOutPressed        = false;    // Is intake button pressed
     boolean              intakeTimerOn           = false;
     boolean              intakeJammedTimerOn     = false;
     boolean              intakePausedTimerOn     = false;
-    ElapsedTime          intakeTimer             = new ElapsedTime();
-    ElapsedTime          intakeJammedTimer       = new ElapsedTime();
-    ElapsedTime          intakePausedTimer       = new ElapsedTime();
-    int                  previousIntakePos       = 0;
-    int                  currentIntakePos        = 0;
-    int                  difference              = 0;
-    double               intakeTargetPos         = 0;
-    double               intakeRotation          = 0;
-    double               INTAKE_CLICKS           = 746 + (2/3);
+    ElapsedTime          intakeJammedTimer       = new DMTimer();
+    ElapsedTime          intakePausedTimer       = new DMTimer();
+    IntakeJamDetector    jamDetector             = new IntakeJamDetector();
+    IntakeIndexer        indexer                 = null;
+
+    // Counts to turn past the mark before zeroing the intake encoder
+    final static int     INTAKE_RESET_OFFSET     = 74;
 
     /* Servo current positions */
     double               beaconPos               = robot.BEACON_HOME;
@@ -105,7 +121,6 @@ public class TeleOpAlternative extends OpMode{
     double               liftDeployPos           = robot.LIFT_DEPLOY_HOME;
     double               capholdPos              = robot.CAPHOLD_HOME;
 
-    boolean              beaconDeployed          = false;
     boolean              pivotDeployed           = false;
 
     /*  Keep track of whether we have deployed the ball pickup.  Can't move the lift or pivot
@@ -114,7 +129,6 @@ public class TeleOpAlternative extends OpMode{
     boolean              pickupDeployed          = false;
     boolean              liftMotorUp             = false;
     boolean              liftMotorDown           = false;
-    ElapsedTime          pickupDeployTimer       = new ElapsedTime();
 
     /* Conditions for setting drive train back to normal after cap ball is dropped in vortex
 
@@ -134,8 +148,8 @@ public class TeleOpAlternative extends OpMode{
     boolean camReverse = false;
     boolean camReverseStop = false;
     public double REVERSE_TIME = 100;
-    ElapsedTime pausedTime = new ElapsedTime();
-    ElapsedTime camReverseTimer = new ElapsedTime();
+    ElapsedTime pausedTime = new DMTimer();
+    ElapsedTime camReverseTimer = new DMTimer();
 
 
 
@@ -151,9 +165,18 @@ public class TeleOpAlternative extends OpMode{
          * Specifically don't need gyro and range finder so skip it to save time.
          */
         robot.init(hardwareMap, false);
+        driveHold = new DriveHold(robot);
+        indexer = new IntakeIndexer(robot.intake);
 
         DbgLog.msg("DM10337 -- Finished robot.init");
 
+        // Setup telemetry lines once so the loops only need to store values
+        tel = new TelemetryDM(telemetry);
+        g1LeftTriggerSlot = tel.addDouble("G1 Left Trigger: ", "%.2f");
+        g1RightTriggerSlot = tel.addDouble("G1 Right Trigger: ", "%.2f");
+        g2LeftTriggerSlot = tel.addDouble("G2 Left Trigger: ", "%.2f");
+        g2RightTriggerSlot = tel.addDouble("G2 Right Trigger: ", "%.2f");
+
     }
 
     /*
@@ -162,15 +185,13 @@ public class TeleOpAlternative extends OpMode{
     @Override
     public void init_loop() {
 
-        float g1_right_trigger = gamepad1.right_trigger;
-        float g1_left_trigger = gamepad1.left_trigger;
-        float g2_right_trigger = gamepad2.right_trigger;
-        float g2_left_trigger = gamepad2.left_trigger;
-        telemetry.addData("G1 Left Trigger: ", g1_left_trigger);
-        telemetry.addData("G1 Right Trigger: ", g1_right_trigger);
-        telemetry.addData("G2 Left Trigger: ", g2_left_trigger);
-        telemetry.addData("G2 Right Trigger: ", g2_right_trigger);
-        telemetry.update();
+        pad1.update(gamepad1);
+        pad2.update(gamepad2);
+        tel.setDouble(g1LeftTriggerSlot, pad1.leftTrigger);
+        tel.setDouble(g1RightTriggerSlot, pad1.rightTrigger);
+        tel.setDouble(g2LeftTriggerSlot, pad2.leftTrigger);
+        tel.setDouble(g2RightTriggerSlot, pad2.rightTrigger);
+        tel.update();
 
     }
 
@@ -180,6 +201,21 @@ public class TeleOpAlternative extends OpMode{
     @Override
     public void start() {
         DbgLog.msg("DM10337 -- Start pressed.");
+
+        recorder.open("TeleOpAlternative");
+        recorder.watch(HardwareDM.SHOOTER | HardwareDM.INTAKE | HardwareDM.LIFT);
+
+        // Switch telemetry over from the init display to the driving display
+        tel.clear();
+        shotsSlot = tel.addInt("Shots: ");
+        jamsSlot = tel.addInt("Jams: ");
+        latencySlot = tel.addDouble("Input p95 ms: ", "%.0f");
+        holdSlot = tel.addDouble("Hold effort: ", "%.2f");
+        batterySlot = tel.addDouble("Battery V: ", "%.1f");
+        intakePosSlot = tel.addInt("Current Pos: ");
+        intakeTargetSlot = tel.addInt("Target Pos: ");
+        intakeRotationSlot = tel.addInt("Rotations: ");
+        intakeReadySlot = tel.addBoolean("Intake Ready: ");
     }
 
     /*
@@ -188,6 +224,11 @@ public class TeleOpAlternative extends OpMode{
     @Override
     public void loop() {
 
+        // Read the gamepads and the cam switch once for this whole loop
+        pad1.update(gamepad1);
+        pad2.update(gamepad2);
+        boolean camSwitchDown = robot.camSwitch.isPressed();
+
         // Temporary read of cam switch
         //telemetry.addData("Cam Switch :", robot.camSwitch.isPressed());
         //telemetry.addData("Pos: ", liftDeployPos );
@@ -197,36 +238,36 @@ public class TeleOpAlternative extends OpMode{
         //liftDeployPos = Range.clip(liftDeployPos, 0.0, 1.0);
         //robot.liftDeploy.setPosition(liftDeployPos);
 
-        //telemetry.addData("intakePos: ", previousIntakePos);
-        //telemetry.addData("currentPos: ", currentIntakePos);
-        //telemetry.addData("difference: ", difference);
         //telemetry.addData("Shoot: ", shootSpeed);
         //telemetry.addData("Cam: ", fireCamHot);
-        telemetry.addData("Shots: ", shotsMade);
-        telemetry.addData("Current Pos: ", robot.intake.getCurrentPosition());
-        telemetry.addData("Target Pos: ", (int)intakeTargetPos);
-        telemetry.addData("Rotations: ", (int)intakeRotation);
-        updateTelemetry(telemetry);
-
-
-        if (robot.camSwitch.isPressed() && !camIsPressedTrue) {
+        tel.setInt(shotsSlot, (int)shotsMade);
+        tel.setInt(jamsSlot, jamDetector.jamCount());
+        tel.setDouble(latencySlot, inputLatency.histogram.percentile(95));
+        tel.setDouble(holdSlot, driveHold.effort());
+        tel.setDouble(batterySlot, robot.batteryVoltage());
+        tel.setInt(intakePosSlot, robot.intake.getCurrentPosition());
+        tel.setInt(intakeTargetSlot, (int)indexer.getTarget());
+        tel.setInt(intakeRotationSlot, indexer.getIndex());
+        tel.setBoolean(intakeReadySlot, indexer.isSettled());
+        tel.update();
+
+
+        if (camSwitchDown && !camIsPressedTrue) {
                 shotsMade = shotsMade + 1.0;
                 DbgLog.msg("DM10334switch -- limit switch pressed! Shots: " + shotsMade);
                 camIsPressedTrue = true;
             }
-        if (!robot.camSwitch.isPressed()) camIsPressedTrue = false;
+        if (!camSwitchDown) camIsPressedTrue = false;
 
         /*
            Driving code -- read joysticks and drive the motors
         */
 
         //Read thejoysticks -- Y axis is reversed so negate it
-        double throttle = -gamepad1.left_stick_y;
-        double direction = gamepad1.right_stick_x;
-
-        // Smooth and deadzone the joytick values
-        throttle = smoothPowerCurve(deadzone(throttle,0.10));
-        direction = smoothPowerCurve(deadzone(direction,0.10));
+        // Smooth and deadzone the joytick values with the driver's lookup table
+        double throttle = driveShaper.shape(-pad1.leftStickY);
+        double direction = driveShaper.shape(pad1.rightStickX);
+        inputLatency.gamepadRead(pad1.timestamp);
 
         // If we deployed into Cap Ball mode the robot drives differently
         if (pickupDeployed && !endGameDrive) {
@@ -251,99 +292,77 @@ public class TeleOpAlternative extends OpMode{
 
 
         // If we aren't moving right now check for "brake mode" to hold position
-        if ((Math.abs(right) < 0.1) && ((Math.abs(left) < 0.1) && gamepad1.x)) {
+        if ((Math.abs(right) < 0.1) && ((Math.abs(left) < 0.1) && pad1.isDown(GamepadEvents.X)) &&
+                !driveHold.isEngaged()) {
             // Requesting brake mode to hold position against defense (e.g. for shooting)
-            if (!braked) {
-                // First time we see this condition to setup brake mode
-                DbgLog.msg("DM10337 -- Setting braked mode.");
-                braked = true;
-                robot.setDriveZeroPower(DcMotor.ZeroPowerBehavior.BRAKE);
-                // Record where we are at and set it as motor target to hold
-                lfBrakedPosn = robot.lfDrive.getCurrentPosition();
-                lrBrakedPosn = robot.lrDrive.getCurrentPosition();
-                rfBrakedPosn = robot.rfDrive.getCurrentPosition();
-                rrBrakedPosn = robot.rrDrive.getCurrentPosition();
-                robot.lfDrive.setTargetPosition(lfBrakedPosn);
-                robot.lrDrive.setTargetPosition(lrBrakedPosn);
-                robot.rfDrive.setTargetPosition(rfBrakedPosn);
-                robot.rrDrive.setTargetPosition(rrBrakedPosn);
-                robot.setDriveMode(DcMotor.RunMode.RUN_TO_POSITION);
-                // Allow up to max power to hold our position
-                robot.lfDrive.setPower(1.0);
-                robot.rfDrive.setPower(1.0);
-                robot.rfDrive.setPower(1.0);
-                robot.rrDrive.setPower(1.0);
-            } else {
-                // already in brake mode -- nothing to do but log if we are having to push
-                if (robot.lfDrive.isBusy() || robot.lrDrive.isBusy() ||
-                        robot.rfDrive.isBusy() || robot.rrDrive.isBusy()) {
-                    DbgLog.msg("DM10337 -- Being pushed and fighting back.");
-                }
-            }
+            DbgLog.msg("DM10337 -- Setting braked mode.");
+            driveHold.engage();
+            pushed = false;
         }
 
+        if (driveHold.isEngaged() && !pad1.isDown(GamepadEvents.X)) {
+            // We are leaving braked mode -- joysticks take over below this same cycle
+            DbgLog.msg("DM10337 -- Leaving brake mode.  Peak hold effort: " + driveHold.peakEffort());
+            driveHold.release();
+        }
 
-        if (braked && !gamepad1.x) {
-            // We are leaving braked mode
-            braked = false;
-            DbgLog.msg("DM10337 -- Leaving brake mode");
-            robot.setDriveZeroPower(DcMotor.ZeroPowerBehavior.FLOAT);
-            robot.lfDrive.setPower(0.0);
-            robot.lrDrive.setPower(0.0);
-            robot.rfDrive.setPower(0.0);
-            robot.rrDrive.setPower(0.0);
-            robot.setDriveMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        if (driveHold.isEngaged()) {
+            // Push each wheel back to where we braked
+            driveHold.update();
+            if (driveHold.isPushed() != pushed) {
+                pushed = driveHold.isPushed();
+                DbgLog.msg(pushed ? "DM10337 -- Being pushed and fighting back.  Effort: " + driveHold.effort() :
+                        "DM10337 -- Done being pushed.");
+            }
         }
 
-        if (!braked) {
+        if (!driveHold.isEngaged()) {
             // Not braked so we can set the motors to power requested by joysticks
             // And lets drive
-            robot.lfDrive.setPower(left);
-            robot.lrDrive.setPower(left);
-            robot.rfDrive.setPower(right);
-            robot.rrDrive.setPower(right);
+            robot.setDrivePower(left, right);
+            inputLatency.drivePowerSet();
         }
 
         /*
             Code for the shooter firing cam
          */
 
-        if (gamepad2.right_trigger > 0.25 && !camPaused && pausedTime.milliseconds() > 50) {
+        if (pad2.isDown(GamepadEvents.RIGHT_TRIGGER) && !camPaused && pausedTime.milliseconds() > 50) {
             robot.fire.setPower(1.0);
             camStopped = false;
 
-        } else if (gamepad2.right_trigger > 0.25 && camPaused) {
+        } else if (pad2.isDown(GamepadEvents.RIGHT_TRIGGER) && camPaused) {
             robot.fire.setPower(0.0);
             camPaused = false;
             pausedTime.reset();
         }
 
 
-        if (robot.camSwitch.isPressed() && !camPaused && !camSwitchPressed) {
+        if (camSwitchDown && !camPaused && !camSwitchPressed) {
             camSwitchPressed = true;
             camPaused = true;
             pausedTime.reset();
         }
 
-        if (!robot.camSwitch.isPressed()) {
+        if (!camSwitchDown) {
             camSwitchPressed = false;
         }
 
 
-        if (gamepad2.right_trigger < 0.25) {
+        if (!pad2.isDown(GamepadEvents.RIGHT_TRIGGER)) {
             camPaused = false;
             camStopped = true;
             pausedTime.reset();
         }
 
-        if (camStopped && robot.camSwitch.isPressed()) {
+        if (camStopped && camSwitchDown) {
             robot.fire.setPower(0.0);
             camSwitchPressed = true;
             camPaused = false;
             camReverse = true;
         }
 
-        if (gamepad2.right_trigger < 0.25 && camReverse) {
+        if (!pad2.isDown(GamepadEvents.RIGHT_TRIGGER) && camReverse) {
             robot.fire.setPower(-0.1);
             camReverseTimer.reset();
             camReverse = false;
@@ -351,7 +370,7 @@ public class TeleOpAlternative extends OpMode{
             REVERSE_TIME = 100;
         }
 
-        if (gamepad2.right_trigger < 0.25 && camReverseStop && camReverseTimer.milliseconds() > REVERSE_TIME)
+        if (!pad2.isDown(GamepadEvents.RIGHT_TRIGGER) && camReverseStop && camReverseTimer.milliseconds() > REVERSE_TIME)
         {
             robot.fire.setPower(0.0);
             camReverseStop = false;
@@ -370,43 +389,31 @@ public class TeleOpAlternative extends OpMode{
             Code to adjust the shooter flywheel speed
          */
         // Adjust shooter speed
-        if (gamepad2.dpad_down && !shootPressed) {
+        if (pad2.pressed(GamepadEvents.DPAD_DOWN)) {
             // Newly pressed  speed down button
             shootSpeed -= robot.SHOOT_SPEED_INCR;
-            shootPressed = true;
             DbgLog.msg("DM10337 -- Shooter speed adjusted to " + shootSpeed);
-        } else if (gamepad2.dpad_up && !shootPressed) {
+        } else if (pad2.pressed(GamepadEvents.DPAD_UP)) {
             // Newly pressed speed up button
             shootSpeed += robot.SHOOT_SPEED_INCR;
-            shootPressed = true;
             DbgLog.msg("DM10337 -- Shooter speed adjusted to " + shootSpeed);
         }
-        if (shootPressed && !gamepad2.dpad_down && !gamepad2.dpad_up) {
-            // Reset flag since no shoot speed adjustment pressed
-            shootPressed = false;
-        }
         shootSpeed = Range.clip(shootSpeed, 0.0, 1.0);
 
         /*
             Code for the shooter flywheels
          */
-        if (gamepad2.left_trigger <= 0.2) {
+        if (!pad2.isDown(GamepadEvents.LEFT_TRIGGER)) {
             // Stopped when not pressed
-            robot.lShoot.setPower(0.0);
-            robot.rShoot.setPower(0.0);
-            if (shooterHot) {
-                //  already running so log stop event
-                shooterHot = false;
+            robot.setShootPower(0.0);
+            if (pad2.released(GamepadEvents.LEFT_TRIGGER)) {
                 DbgLog.msg("DM10337 -- Stopping shooter flywheels");
             }
 
-        } else if (gamepad2.left_trigger > 0.2) {
+        } else {
             // Running when pressed
-            robot.lShoot.setPower(shootSpeed);
-            robot.rShoot.setPower(shootSpeed);
-            if (!shooterHot) {
-                // Was not running before so log stop event
-                shooterHot = true;
+            robot.setShootPower(shootSpeed);
+            if (pad2.pressed(GamepadEvents.LEFT_TRIGGER)) {
                 DbgLog.msg("DM10337 -- Starting shooter flywheels");
             }
         }
@@ -417,57 +424,51 @@ public class TeleOpAlternative extends OpMode{
         /*
             Beacon pusher code
          */
-        if (gamepad1.right_bumper) {
+        if (pad1.isDown(GamepadEvents.RIGHT_BUMPER)) {
             // Pressed so deploy the beacon pusher
             beaconPos = robot.BEACON_MAX_RANGE;
-            if (!beaconDeployed) {
-                // Newly pressed so log beacon deploy
-                beaconDeployed = true;
+            if (pad1.pressed(GamepadEvents.RIGHT_BUMPER)) {
                 DbgLog.msg("DM10337 -- Deploying beacon presser");
             }
         } else {
             // Not pressed so retract it
             beaconPos = robot.BEACON_MIN_RANGE;
-            if (beaconDeployed) {
-                // Was deployed so log beacon withdrawal
-                beaconDeployed = false;
+            if (pad1.released(GamepadEvents.RIGHT_BUMPER)) {
                 DbgLog.msg("DM10337 == Beacon presser off");
-
             }
         }
 
         // Set the beacon pusher
         beaconPos = Range.clip(beaconPos, robot.BEACON_MIN_RANGE, robot.BEACON_MAX_RANGE);
-        robot.beacon.setPosition(beaconPos);
+        robot.beaconMove.setPosition(beaconPos);
 
         /*
             Cap ball forks deployment code.  Keep track of whether the cap ball list if deployed.
             For safety, both drivers have to press a button simultaneously to deploy!
-            We will use a timer to make sure we don't try and move it too quickly, to propect
-            hardware from damage.  Cap ball lift and pivot are disabled until after this timer expires.
+            We wait for the forks servo to get there before moving anything else, to protect
+            hardware from damage.  Cap ball lift and pivot are disabled until then.
          */
-        if (gamepad1.left_bumper && gamepad2.left_bumper) {
+        if (pad1.isDown(GamepadEvents.LEFT_BUMPER) && pad2.isDown(GamepadEvents.LEFT_BUMPER)) {
             if (pickupDeployed == false) {
                 // First time we are trying to deploy
                 pickupDeployed = true;
-                pickupDeployTimer.reset();      // Set timer of how long to wait
 
                 // Deploy the cap ball lift forks
-                robot.liftDeploy.setPosition(robot.LIFT_DEPLOY_MIN_RANGE);
+                robot.liftDeployMove.setPosition(robot.LIFT_DEPLOY_MIN_RANGE);
 
                 DbgLog.msg("DM10337 -- Deploying the cap ball lift forks");
             }
         }
 
         /*
-            Code for the cap ball lift.  It is disabled until lift forks deployed and enough time
-            has elapsed to safely move it.
+            Code for the cap ball lift.  It is disabled until lift forks deployed and the forks
+            servo has had time to get there.
          */
-        if (pickupDeployed == true && pickupDeployTimer.milliseconds() > robot.DEPLOY_WAIT) {
+        if (pickupDeployed == true && robot.liftDeployMove.isArrived()) {
             // The cap ball lift mechanism is ready to go!
 
             // Process the pivot servo
-            if (gamepad1.left_bumper) {
+            if (pad1.isDown(GamepadEvents.LEFT_BUMPER)) {
                 // Pressed stick so pivot the lift down
                 pivotPos = robot.PIVOT_MAX_RANGE;
 
@@ -487,23 +488,27 @@ public class TeleOpAlternative extends OpMode{
             }
 
             // Process for moving cap ball holder. Y deploys cap holder. B releases cap holder.
-            if (gamepad1.y || gamepad2.y) {
+            if (pad1.pressed(GamepadEvents.Y) || pad2.pressed(GamepadEvents.Y)) {
                 capholdPos = robot.CAPHOLD_DEPLOY_MAX_RANGE;
                 DbgLog.msg("DM10337 -- Cap Hold Deployed");
             }
-            if (gamepad1.b || gamepad2.b) {
+            if (pad1.pressed(GamepadEvents.B) || pad2.pressed(GamepadEvents.B)) {
                 capholdPos = robot.CAPHOLD_DEPLOY_MIN_RANGE;
                 DbgLog.msg("DM10337 -- Cap Hold Released");
             }
 
             // For safety verify pivot and cap hold servo positions and then move them
             pivotPos = Range.clip(pivotPos, robot.PIVOT_MIN_RANGE, robot.PIVOT_MAX_RANGE);
-            robot.pivot.setPosition(pivotPos);
+            robot.pivotMove.setPosition(pivotPos);
             capholdPos = Range.clip(capholdPos, robot.CAPHOLD_DEPLOY_MIN_RANGE, robot.CAPHOLD_DEPLOY_MAX_RANGE);
-            robot.caphold.setPosition(capholdPos);
+            robot.capholdMove.setPosition(capholdPos);
+
+            // Both are rate limited so step them along
+            robot.pivotMove.update();
+            robot.capholdMove.update();
 
             // And process the lift motor
-            if ((gamepad2.right_stick_y < -0.2) && (!robot.liftLimit.isPressed())) {
+            if (pad2.isDown(GamepadEvents.RIGHT_STICK_UP) && (!robot.liftLimit.isPressed())) {
                 // Move cap ball holder out of the way when lifting
                 capholdPos = robot.CAPHOLD_DEPLOY_MIN_RANGE;
                 liftCap = true;
@@ -516,7 +521,7 @@ public class TeleOpAlternative extends OpMode{
                     liftMotorDown = false;
                     DbgLog.msg("DM10337 -- Cap Ball Lift moving up");
                 }
-            } else if (gamepad2.right_stick_y > 0.2 && !gamepad2.left_bumper) {
+            } else if (pad2.isDown(GamepadEvents.RIGHT_STICK_DOWN) && !pad2.isDown(GamepadEvents.LEFT_BUMPER)) {
                 // Or drop it down
                 robot.liftMotor.setPower(robot.LIFT_DOWN_SPEED);
                 if (!liftMotorDown) {
@@ -526,7 +531,7 @@ public class TeleOpAlternative extends OpMode{
                     DbgLog.msg("DM10337 -- Cap Ball Lift moving down");
                 }
 
-            } else if (gamepad2.right_stick_y > 0.2 && gamepad2.left_bumper) {
+            } else if (pad2.isDown(GamepadEvents.RIGHT_STICK_DOWN) && pad2.isDown(GamepadEvents.LEFT_BUMPER)) {
                 // Or drop it down
                 robot.liftMotor.setPower(robot.LIFT_DOWN_SPEED_FAST);
                 if (!liftMotorDown) {
@@ -538,7 +543,7 @@ public class TeleOpAlternative extends OpMode{
 
             } else robot.liftMotor.setPower(0.0);
 
-            if (gamepad1.dpad_down && capBallDropped) endGameDrive = true;
+            if (pad1.isDown(GamepadEvents.DPAD_DOWN) && capBallDropped) endGameDrive = true;
 
 
         }
@@ -547,154 +552,103 @@ public class TeleOpAlternative extends OpMode{
         /*
             Code for the ball intake
          */
-        if (gamepad1.left_trigger > 0.6) {
-            // Pressing intake reverse button
-            if (!intakeOutPressed) {
-                // Haven't read this button press yet so process it
-                intakeOutPressed = true;
-                // Not already in reverse so set it so
-                    robot.intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-                    robot.intake.setPower(robot.INTAKE_OUT_SPEED);
-                    intakeStop = false;
-                    intakeStopped = false;
-                    intakeTimerOn = false;
-                    intakeOut = true;
-                    intakeIn = false;
-                    intakeJammedTimerOn = false;
-                    intakePausedTimerOn = false;
-                    DbgLog.msg("DM10337 -- Intake start reverse");
-                }
-            }
-        else {
-            // Intake reverse button is not pressed
-            intakeOutPressed = false;
+        if (pad1.pressed(GamepadEvents.LEFT_TRIGGER)) {
+            // Newly pressed intake reverse button
+            indexer.cancel();
+            robot.intake.setPower(robot.INTAKE_OUT_SPEED);
+            intakeStopped = false;
+            intakeTimerOn = false;
+            intakeOut = true;
+            intakeIn = false;
+            intakeJammedTimerOn = false;
+            intakePausedTimerOn = false;
+            DbgLog.msg("DM10337 -- Intake start reverse");
         }
-        if (gamepad1.right_trigger > 0.6) {
-            // Pressing intake forward button
-            if (!intakeInPressed) {
-                // Haven't read this button press yet so process it
-                intakeInPressed = true;
-                } else {
-                    // Not already in forward so set it so
-                    robot.intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-                    robot.intake.setPower(robot.INTAKE_IN_SPEED);
-                    intakeStop = false;
-                    intakeStopped = false;
-                    intakeTimerOn = false;
-                    intakeOut = false;
-                    intakeIn = true;
-                    intakeJammedTimerOn = false;
-                    intakePausedTimerOn = false;
-                    DbgLog.msg("DM10337 -- Intake start forward");
-                }
-            }
-        else {
-            // Intake reverse button is not pressed
-            intakeInPressed = false;
+        if (pad1.pressed(GamepadEvents.RIGHT_TRIGGER)) {
+            // Newly pressed intake forward button
+            indexer.cancel();
+            robot.intake.setPower(robot.INTAKE_IN_SPEED);
+            intakeStopped = false;
+            intakeTimerOn = false;
+            intakeOut = false;
+            intakeIn = true;
+            intakeJammedTimerOn = false;
+            intakePausedTimerOn = false;
+            DbgLog.msg("DM10337 -- Intake start forward");
         }
 
         // All stop and reset variables on intake
-        if (gamepad1.dpad_up) {
+        if (pad1.isDown(GamepadEvents.DPAD_UP)) {
              intakeReset             = false;
-             intakeStop              = false;
              intakeStopped           = false;
-             intakeStopInPos         = false;
              intakeIn                = false;
              intakeOut               = false;
-             intakeInPressed         = false;
-             intakeOutPressed        = false;
              intakeTimerOn           = false;
              intakeJammedTimerOn     = false;
              intakePausedTimerOn     = false;
 
-            robot.intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+            indexer.cancel();
             robot.intake.setPower(0.0);
         }
 
         // Adds driver control to reset intake position and intake encoders to 0
-        if ((gamepad1.dpad_left || gamepad2.x) && !intakeReset && !intakeIn && !intakeOut) {
+        // On the press only -- holding the button must not start another move when this one ends
+        if ((pad1.pressed(GamepadEvents.DPAD_LEFT) || pad2.pressed(GamepadEvents.X)) && !intakeReset && !intakeIn && !intakeOut) {
             intakeReset = true;
-            currentIntakePos = robot.intake.getCurrentPosition();
-            intakeTargetPos = (74 + currentIntakePos);
-            robot.intake.setTargetPosition((int)Math.round(intakeTargetPos));
-            robot.intake.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-            robot.intake.setPower(1.0);
-            // reset intake timer - used to determine
-            intakeTimer.reset();
-        } else if (intakeReset && intakeTimer.milliseconds() > 200) {
+            intakeStopped = false;
+            indexer.moveTo(robot.intake.getCurrentPosition() + INTAKE_RESET_OFFSET);
+        } else if (intakeReset && !indexer.isMoving()) {
+            // At the mark (or as close as it would go) so call this zero
             robot.intake.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
             robot.intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
             robot.intake.setPower(0.0);
             intakeReset = false;
         }
 
-        // Initiate stop intake
-        if (gamepad1.a && !intakeStopped) {
+        // Initiate stop intake -- park with a paddle in vertical orientation
+        if (pad1.pressed(GamepadEvents.A) && !intakeStopped && !intakeReset) {
             intakeIn = false;
             intakeOut = false;
             intakeTimerOn = false;
             intakeJammedTimerOn = false;
-            intakeStopInPos = true;
-            //DbgLog.msg("DM10337 intake stopped");
-        }
-
-        // If intake has been initiated by driver to stop, then stop intake in vertical orientation using encoders
-        if (intakeStopInPos) {
-            intakeStopInPos = false;
+            intakePausedTimerOn = false;
             intakeStopped = true;
-            currentIntakePos = robot.intake.getCurrentPosition();
-            intakeTargetPos = (INTAKE_CLICKS  - (currentIntakePos % INTAKE_CLICKS)) + currentIntakePos;
-            intakeRotation = intakeTargetPos / INTAKE_CLICKS;
-            DbgLog.msg("Stopping intake at rotation #" + Math.round(intakeRotation));
-            robot.intake.setTargetPosition((int)Math.round(intakeTargetPos));
-            robot.intake.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-            robot.intake.setPower(1.0);
-            // reset intake timer - used to determine
-            intakeTimer.reset();
+            indexer.start();
+            DbgLog.msg("DM10337 -- Stopping intake at rotation #" + indexer.getIndex());
         }
-        // intake has attempted to stop using encoders. If intake motor is not busy, then target must have been reached.
-        else if (intakeStopped && !robot.intake.isBusy()) {
-            //set intake run mode back to using encoder and set power to 0
-            if (robot.intake.getMode() == DcMotor.RunMode.RUN_TO_POSITION) {
-                DbgLog.msg("Intake stopped at rotation #" + Math.round(intakeRotation) + "in" + intakeTimer.milliseconds() +" milliseconds. Setting intake to RUN_USING_ENCODER");
-                robot.intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-                robot.intake.setPower(0.0);
+
+        // Glide the intake into position.  No fixed timers -- the indexer knows when it is there.
+        if (intakeStopped && !indexer.update() && indexer.getState() != IntakeIndexer.State.IDLE) {
+            if (indexer.isSettled()) {
+                DbgLog.msg("DM10337 -- Intake stopped at rotation #" + indexer.getIndex());
+            } else {
+                // Something is stopping intake from reaching target position. We don't want to burn out motors.
+                DbgLog.msg("DM10337 -- Intake was unable to run to position " + Math.round(indexer.getTarget()));
             }
+            intakeStopped = false;
         }
-        // intake has attempted to stop, but is still busy trying to run to target position after 1.5 seconds. Something is stopping intake from reaching target position, so stop intake. We don't want to burn out motors.
-        else if (intakeStopped && robot.intake.isBusy() && intakeTimer.milliseconds() > 1500) {
-            //set intake run mode back to using encoder and set power to 0
-            if (robot.intake.getMode() == DcMotor.RunMode.RUN_TO_POSITION) {
-                DbgLog.msg("Intake was unable to run to position" + Math.round(intakeTargetPos) + ". Setting intake to RUN_USING_ENCODER");
-                robot.intake.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-                robot.intake.setPower(0.0);
-            }
+        if (intakeReset) {
+            indexer.update();
         }
 
-        // Turn intake timer on at the start of intaking
+        // Start watching for jams at the start of intaking
         if (intakeIn && !intakeTimerOn) {
-            previousIntakePos = robot.intake.getCurrentPosition();
+            jamDetector.reset();
             intakeTimerOn = true;
-            intakeTimer.reset();
         }
 
-        // Check rotation of intake with encoders after 1750 ms
-        if (intakeIn && intakeTimerOn && intakeTimer.milliseconds() > 1050) {
+        // Check intake speed every cycle so a jam is caught within a window or so
+        if (intakeIn && intakeTimerOn && jamDetector.update(robot.intake.getCurrentPosition())) {
             intakeTimerOn = false;
-            currentIntakePos = robot.intake.getCurrentPosition();
-            difference = Math.abs(Math.abs(previousIntakePos) - Math.abs(currentIntakePos));
-            previousIntakePos = robot.intake.getCurrentPosition();
-
-            // If intake has slowed down to near stall or stalled due to jam, reverse intake and start timer for clearing jam
-            if (difference < 1050) {
-                robot.intake.setPower(robot.INTAKE_OUT_SPEED);
-                intakeOut = true;
-                intakeIn = false;
-                intakePausedTimerOn = true;
-                intakePausedTimer.reset();
-                DbgLog.msg("DM10337 -- Intake JAMMED! Reversing! Difference: " + difference);
-            }
 
+            // Intake has slowed down to near stall or stalled due to jam, reverse intake and start timer for clearing jam
+            robot.intake.setPower(robot.INTAKE_OUT_SPEED);
+            intakeOut = true;
+            intakeIn = false;
+            intakePausedTimerOn = true;
+            intakePausedTimer.reset();
+            DbgLog.msg("DM10337 -- Intake JAMMED! Reversing! Speed: " + (int) jamDetector.velocity() +
+                    " Jams: " + jamDetector.jamCount());
         }
 
         // Stop intake before reversing direction rotation.
@@ -715,12 +669,14 @@ public class TeleOpAlternative extends OpMode{
             intakeOut = false;
             intakeIn = true;
             intakeJammedTimerOn = false;
-            DbgLog.msg("DM10337 -- Intake done reversing. Returning to intake. Difference: " + difference);
+            DbgLog.msg("DM10337 -- Intake done reversing. Returning to intake.");
         }
 
 
 
 
+        // Capture everything about this cycle
+        recorder.sample(robot, gamepad1, gamepad2, Double.NaN, Double.NaN);
     }
 
 
@@ -733,71 +689,18 @@ public class TeleOpAlternative extends OpMode{
         robot.lrDrive.setPower(0.0);
         robot.rfDrive.setPower(0.0);
         robot.rrDrive.setPower(0.0);
-        robot.lShoot.setPower(0.0);
-        robot.rShoot.setPower(0.0);
+        robot.setShootPower(0.0);
         robot.intake.setPower(0.0);
         robot.liftMotor.setPower(0.0);
         robot.fire.setPower(0.0);
+        recorder.close();
+        DbgLog.msg("DM10337 -- Intake jams this match: " + jamDetector.jamCount());
+        DbgLog.msg("DM10337 -- Input latency " + inputLatency.histogram.summary());
+        DbgLog.msg("DM10337 -- Input latency buckets " + inputLatency.histogram.buckets());
         DbgLog.msg("Teleop Stop Pressed");
     }
 
 
-    /**
-     * This does the cubic smoothing equation on joystick value.
-     * Assumes you have already done any deadzone processing.
-     *
-     * @param x  joystick input
-     * @return  smoothed value
-     */
-    protected double smoothPowerCurve (double x) {
-        //double a = this.getThrottle();
-        double a = 1.0;         // Hard code to max smoothing
-        double b = 0.05;		// Min power to overcome motor stall
-
-        if (x > 0.0)
-            return (b + (1.0-b)*(a*x*x*x+(1.0-a)*x));
-
-        else if (x<0.0)
-            return (-b + (1.0-b)*(a*x*x*x+(1.0-a)*x));
-        else return 0.0;
-    }
-
-    /**
-     * Add deadzone to a stick value
-     *
-     * @param rawStick  Raw value from joystick read -1.0 to 1.0
-     * @param dz	Deadzone value to use 0 to 0.999
-     * @return		Value after deadzone processing
-     */
-    protected double deadzone(double rawStick, double dz) {
-        double stick;
-
-        // Force limit to -1.0 to 1.0
-        if (rawStick > 1.0) {
-            stick = 1.0;
-        } else if (rawStick < -1.0) {
-            stick = -1.0;
-        } else {
-            stick = rawStick;
-        }
-
-        // Check if value is inside the dead zone
-        if (stick >= 0.0){
-            if (Math.abs(stick) >= dz)
-                return (stick - dz)/(1 -  dz);
-            else
-                return 0.0;
-
-        }
-        else {
-            if (Math.abs(stick) >= dz)
-                return (stick + dz)/(1 - dz);
-            else
-                return 0.0;
-
-        }
-    }
-
     /**
      * Start the firing cam
      */
@@ -0,0 +1,265 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.util.ElapsedTime;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.Locale;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Rate limited telemetry publisher for the Dark Matter OpModes.
+ *
+ * Each telemetry line is registered once (usually in init) and gets a slot number back.  The
+ * control loop then writes raw primitive values into the slots, which is just an array store and
+ * a compare.  Only when it is time to transmit do we format the lines whose values actually
+ * changed, and then hand the whole thing to the SDK telemetry to send.
+ *
+ * Typical use:
+ *      TelemetryDM tel = new TelemetryDM(telemetry);
+ *      int shotsSlot = tel.addInt("Shots");
+ *      ...
+ *      tel.setInt(shotsSlot, shots);       // every loop -- cheap
+ *      tel.update();                       // every loop -- only sends at the capped rate
+ */
+public class TelemetryDM {
+
+    // Default transmit rate cap -- 4 updates a second is plenty for a driver to read
+    public final static double DEFAULT_RATE_HZ = 4.0;
+
+    // Max number of lines we will keep track of
+    public final static int MAX_SLOTS = 32;
+
+    // Slot value types
+    static final int TYPE_DOUBLE = 0;
+    static final int TYPE_INT = 1;
+    static final int TYPE_BOOLEAN = 2;
+
+    /* The SDK telemetry we publish through */
+    Telemetry telemetry = null;
+
+    /* Slot storage -- parallel primitive arrays indexed by slot number */
+    int numSlots = 0;
+    int[] types = new int[MAX_SLOTS];
+    double[] values = new double[MAX_SLOTS];
+    boolean[] changed = new boolean[MAX_SLOTS];
+    String[] formats = new String[MAX_SLOTS];
+    Telemetry.Item[] items = new Telemetry.Item[MAX_SLOTS];
+
+    // Transmit timing
+    double intervalMs;
+    ElapsedTime transmitTimer = new DMTimer();
+    boolean anyChanged = false;
+
+    /**
+     * Constructor using the default transmit rate
+     *
+     * @param telemetry     OpMode telemetry to publish through
+     */
+    public TelemetryDM(Telemetry telemetry) {
+        this(telemetry, DEFAULT_RATE_HZ);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param telemetry     OpMode telemetry to publish through
+     * @param rateHz        Max number of transmissions per second
+     */
+    public TelemetryDM(Telemetry telemetry, double rateHz) {
+        this.telemetry = telemetry;
+
+        // Our items live for the whole OpMode so don't let the SDK clear them out on each update
+        telemetry.setAutoClear(false);
+        telemetry.clearAll();
+        setRate(rateHz);
+    }
+
+    /**
+     * Change the transmit rate cap
+     *
+     * @param rateHz        Max number of transmissions per second
+     */
+    public void setRate(double rateHz) {
+        intervalMs = 1000.0 / Math.max(rateHz, 0.1);
+
+        // Keep the SDK from sending any more often than we do
+        telemetry.setMsTransmissionInterval((int) intervalMs);
+    }
+
+    /**
+     * Drop all registered lines, e.g. when going from init to running displays
+     */
+    public void clear() {
+        telemetry.clearAll();
+        numSlots = 0;
+        anyChanged = true;
+    }
+
+    /**
+     * Register a line showing a floating point value
+     *
+     * @param caption       Caption shown on driver station
+     * @param format        String.format style format for the value, e.g. "%.2f"
+     * @return              Slot number to use in setDouble
+     */
+    public int addDouble(String caption, String format) {
+        return addSlot(caption, TYPE_DOUBLE, format);
+    }
+
+    /**
+     * Register a line showing an integer value
+     *
+     * @param caption       Caption shown on driver station
+     * @return              Slot number to use in setInt
+     */
+    public int addInt(String caption) {
+        return addSlot(caption, TYPE_INT, null);
+    }
+
+    /**
+     * Register a line showing a true/false value
+     *
+     * @param caption       Caption shown on driver station
+     * @return              Slot number to use in setBoolean
+     */
+    public int addBoolean(String caption) {
+        return addSlot(caption, TYPE_BOOLEAN, null);
+    }
+
+    /**
+     * Create the telemetry item backing a slot
+     *
+     * @param caption       Caption shown on driver station
+     * @param type          One of the TYPE_ constants
+     * @param format        Format string for doubles, null otherwise
+     * @return              New slot number
+     */
+    int addSlot(String caption, int type, String format) {
+        if (numSlots >= MAX_SLOTS) {
+            throw new IllegalStateException("TelemetryDM out of slots: " + caption);
+        }
+
+        int slot = numSlots++;
+        types[slot] = type;
+        formats[slot] = format;
+        values[slot] = 0.0;
+        items[slot] = telemetry.addData(caption, "");
+        items[slot].setRetained(true);
+
+        // Make sure the first transmission shows something for the new line
+        changed[slot] = true;
+        anyChanged = true;
+        return slot;
+    }
+
+    /**
+     * Record a new floating point value for a slot.  Does no formatting.
+     */
+    public void setDouble(int slot, double value) {
+        if (values[slot] != value) {
+            values[slot] = value;
+            changed[slot] = true;
+            anyChanged = true;
+        }
+    }
+
+    /**
+     * Record a new integer value for a slot.  Does no formatting.
+     */
+    public void setInt(int slot, int value) {
+        setDouble(slot, value);
+    }
+
+    /**
+     * Record a new true/false value for a slot.  Does no formatting.
+     */
+    public void setBoolean(int slot, boolean value) {
+        setDouble(slot, value ? 1.0 : 0.0);
+    }
+
+    /**
+     * Call every loop.  Formats the changed lines and sends them if the rate cap allows it.
+     *
+     * @return      true if we transmitted this time
+     */
+    public boolean update() {
+        if (transmitTimer.milliseconds() < intervalMs) {
+            // Too soon -- just keep buffering
+            return false;
+        }
+        return forceUpdate();
+    }
+
+    /**
+     * Format any changed lines and send right away, ignoring the rate cap.
+     * Nothing is sent if no value changed since the last transmission.
+     *
+     * @return      true if we transmitted
+     */
+    public boolean forceUpdate() {
+        transmitTimer.reset();
+        if (!anyChanged) {
+            return false;
+        }
+
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (changed[slot]) {
+                items[slot].setValue(format(slot));
+                changed[slot] = false;
+            }
+        }
+        anyChanged = false;
+
+        return telemetry.update();
+    }
+
+    /**
+     * Turn a slot value into display text
+     */
+    String format(int slot) {
+        switch (types[slot]) {
+            case TYPE_INT:
+                return Integer.toString((int) values[slot]);
+            case TYPE_BOOLEAN:
+                return (values[slot] != 0.0) ? "true" : "false";
+            default:
+                return String.format(Locale.US, formats[slot], values[slot]);
+        }
+    }
+}
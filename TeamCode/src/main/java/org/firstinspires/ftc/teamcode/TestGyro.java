@@ -37,9 +37,8 @@ import com.qualcomm.hardware.adafruit.JustLoggingAccelerationIntegrator;
 import com.qualcomm.hardware.modernrobotics.ModernRoboticsI2cRangeSensor;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 import com.qualcomm.robotcore.eventloop.opmode.Disabled;
-import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.util.ElapsedTime;
 
-import org.firstinspires.ftc.robotcore.external.Func;
 import org.firstinspires.ftc.robotcore.external.navigation.Acceleration;
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
@@ -48,8 +47,6 @@ import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 import org.firstinspires.ftc.robotcore.external.navigation.Position;
 import org.firstinspires.ftc.robotcore.external.navigation.Velocity;
 
-import java.util.Locale;
-
 /**
  * {@link TestGyro} gives a short demo on how to use the BNO055 Inertial Motion Unit (IMU) from AdaFruit.
  *
@@ -61,7 +58,7 @@ import java.util.Locale;
 
 @TeleOp(name = "Sensor: Adafruit IMU", group = "Sensor")
 @Disabled                            // Uncomment this to add to the opmode list
-public class TestGyro extends LinearOpMode
+public class TestGyro extends ControlOpMode
     {
     //----------------------------------------------------------------------------------------------
     // State
@@ -76,11 +73,22 @@ public class TestGyro extends LinearOpMode
 
     ModernRoboticsI2cRangeSensor range;
 
+    // Telemetry lines -- tel itself comes from ControlOpMode
+    int calibSlot;
+    int headingSlot;
+    int rollSlot;
+    int pitchSlot;
+    int gravitySlot;
+
+    // Calibration status is another I2C read -- only take it as often as telemetry goes out
+    final static double CALIB_PERIOD_MS = 1000.0 / TelemetryDM.DEFAULT_RATE_HZ;
+    ElapsedTime calibTimer = new DMTimer();
+
     //----------------------------------------------------------------------------------------------
     // Main logic
     //----------------------------------------------------------------------------------------------
 
-    @Override public void runOpMode() throws InterruptedException {
+    @Override protected void setup() throws InterruptedException {
 
         // Set up the parameters with which we will use our IMU. Note that integration
         // algorithm here just reports accelerations to the logcat log; it doesn't actually
@@ -102,17 +110,32 @@ public class TestGyro extends LinearOpMode
         // Set up our telemetry dashboard
         composeTelemetry();
 
-        // Wait until we're told to go
-        waitForStart();
+        // IMU reads take a few ms each over I2C, so don't ask for 100 Hz
+        setPeriod(20.0);
+    }
 
+    @Override protected void starting() {
         // Start the logging of measured acceleration
         imu.startAccelerationIntegration(new Position(), new Velocity(), 1000);
+    }
+
+    @Override protected boolean controlStep() {
+        // Acquiring the angles is relatively expensive; do it once per step and
+        // just queue the numbers.  The reporter thread formats and sends at its own rate.
+        angles   = imu.getAngularOrientation().toAxesReference(AxesReference.INTRINSIC).toAxesOrder(AxesOrder.ZYX);
+        gravity  = imu.getGravity();
 
-        // Loop and update the dashboard
-        while (opModeIsActive()) {
-            telemetry.update();
-            idle();
+        if (calibTimer.milliseconds() >= CALIB_PERIOD_MS) {
+            calibTimer.reset();
+            report.setInt(calibSlot, imu.getCalibrationStatus().calibrationStatus & 0xFF);
         }
+        report.setDouble(headingSlot, normalizeAngle(angles.angleUnit, angles.firstAngle));
+        report.setDouble(rollSlot, normalizeAngle(angles.angleUnit, angles.secondAngle));
+        report.setDouble(pitchSlot, normalizeAngle(angles.angleUnit, angles.thirdAngle));
+        report.setDouble(gravitySlot, Math.sqrt(gravity.xAccel*gravity.xAccel
+                                + gravity.yAccel*gravity.yAccel
+                                + gravity.zAccel*gravity.zAccel));
+        return true;
     }
 
     //----------------------------------------------------------------------------------------------
@@ -121,72 +144,19 @@ public class TestGyro extends LinearOpMode
 
     void composeTelemetry() {
 
-        // At the beginning of each telemetry update, grab a bunch of data
-        // from the IMU that we will then display in separate lines.
-        telemetry.addAction(new Runnable() { @Override public void run()
-                {
-                // Acquiring the angles is relatively expensive; we don't want
-                // to do that in each of the three items that need that info, as that's
-                // three times the necessary expense.
-                angles   = imu.getAngularOrientation().toAxesReference(AxesReference.INTRINSIC).toAxesOrder(AxesOrder.ZYX);
-                gravity  = imu.getGravity();
-                }
-            });
-
-        telemetry.addLine()
-            .addData("status", new Func<String>() {
-                @Override public String value() {
-                    return imu.getSystemStatus().toShortString();
-                    }
-                })
-            .addData("calib", new Func<String>() {
-                @Override public String value() {
-                    return imu.getCalibrationStatus().toString();
-                    }
-                });
-
-        telemetry.addLine()
-            .addData("heading", new Func<String>() {
-                @Override public String value() {
-                    return formatAngle(angles.angleUnit, angles.firstAngle);
-                    }
-                })
-            .addData("roll", new Func<String>() {
-                @Override public String value() {
-                    return formatAngle(angles.angleUnit, angles.secondAngle);
-                    }
-                })
-            .addData("pitch", new Func<String>() {
-                @Override public String value() {
-                    return formatAngle(angles.angleUnit, angles.thirdAngle);
-                    }
-                });
-
-        telemetry.addLine()
-            .addData("grvty", new Func<String>() {
-                @Override public String value() {
-                    return gravity.toString();
-                    }
-                })
-            .addData("mag", new Func<String>() {
-                @Override public String value() {
-                    return String.format(Locale.getDefault(), "%.3f",
-                            Math.sqrt(gravity.xAccel*gravity.xAccel
-                                    + gravity.yAccel*gravity.yAccel
-                                    + gravity.zAccel*gravity.zAccel));
-                    }
-                });
+        // Register each line once; the control step only queues raw values for the slots
+        calibSlot   = tel.addInt("calib");
+        headingSlot = tel.addDouble("heading", "%.1f");
+        rollSlot    = tel.addDouble("roll", "%.1f");
+        pitchSlot   = tel.addDouble("pitch", "%.1f");
+        gravitySlot = tel.addDouble("mag", "%.3f");
     }
 
     //----------------------------------------------------------------------------------------------
     // Formatting
     //----------------------------------------------------------------------------------------------
 
-    String formatAngle(AngleUnit angleUnit, double angle) {
-        return formatDegrees(AngleUnit.DEGREES.fromUnit(angleUnit, angle));
-    }
-
-    String formatDegrees(double degrees){
-        return String.format(Locale.getDefault(), "%.1f", AngleUnit.DEGREES.normalize(degrees));
+    double normalizeAngle(AngleUnit angleUnit, double angle) {
+        return AngleUnit.DEGREES.normalize(AngleUnit.DEGREES.fromUnit(angleUnit, angle));
     }
 }
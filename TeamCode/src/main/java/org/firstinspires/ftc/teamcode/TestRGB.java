@@ -72,13 +72,14 @@ import com.qualcomm.robotcore.hardware.DigitalChannelController;
  */
 @TeleOp(name = "Test RGB Sensors", group = "Sensor")
 //@Disabled                           // Comment this out to add to the opmode list
+@RobotParts(HardwareDM.COLORS)       // Only map what we use
 public class TestRGB extends LinearOpMode {
 
   HardwareDM robot = new HardwareDM();
 
   @Override
   public void runOpMode() throws InterruptedException {
-    robot.init(hardwareMap, false);
+    robot.init(this);
 
       // adaHSV is an array that will hold the hue, saturation, and value information.
       float[] adaHSV = {0F, 0F, 0F};
@@ -0,0 +1,211 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.hardware.Servo;
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Wraps a servo with a model of how long it takes to get where it was sent.  Servos don't tell
+ * us where they are, so instead of sleeping a fixed time after a move we work out the travel
+ * time from how far it was told to go and how fast that servo is (seconds for a full 0 to 1
+ * sweep, set in robot.cfg), and callers can go on as soon as the servo should be there.
+ *
+ * The model keeps an estimate of the real position.  Each new command first moves the estimate
+ * along for the time since the last one, so changing your mind halfway through a move still
+ * gives the right arrival time.  Until the first command we don't know where the servo is, so
+ * the first move is assumed to be a full sweep.
+ *
+ * Optionally the servo can be rate limited: setPosition() then only sets the target and
+ * update() walks the position sent to the servo towards it at no more than maxRate per second.
+ * Use it for servos that throw things around if moved at full speed, and call update() every
+ * loop.
+ */
+public class TimedServo {
+
+    Servo servo;
+    double fullTravelSec;           // Seconds for a 0 to 1 sweep
+
+    double target = Double.NaN;     // Where we want to end up
+    double output = Double.NaN;     // Last position sent to the servo
+    double estimate = Double.NaN;   // Where we think the servo really is
+    long estimateNanos = 0;
+
+    double maxRate = 0.0;           // Position units per second, 0 for no limit
+    long lastUpdateNanos = 0;
+
+    /**
+     * Constructor
+     *
+     * @param servo             Servo to drive
+     * @param fullTravelSec     Seconds the servo takes to go from 0 to 1
+     */
+    public TimedServo(Servo servo, double fullTravelSec) {
+        this.servo = servo;
+        this.fullTravelSec = fullTravelSec;
+    }
+
+    /**
+     * Limit how fast the position sent to the servo can change.  Turning it on or off doesn't
+     * move the servo; the next update() or setPosition() does.
+     *
+     * @param maxRate   Position units per second, 0 to turn the limit off
+     */
+    public void setMaxRate(double maxRate) {
+        this.maxRate = Math.max(0.0, maxRate);
+        lastUpdateNanos = DMTimer.nanoTime();
+    }
+
+    /**
+     * Send the servo somewhere.  Calling again with the same position does nothing, so it's fine
+     * to call every loop.
+     *
+     * @param position  0 to 1
+     */
+    public void setPosition(double position) {
+        setPosition(position, DMTimer.nanoTime());
+    }
+
+    void setPosition(double position, long nanos) {
+        position = Range.clip(position, 0.0, 1.0);
+        if (position == target) return;
+        boolean idle = (output == target);
+        target = position;
+        if (maxRate > 0.0 && !Double.isNaN(output)) {
+            // Ramp time only counts from when there was somewhere to go
+            if (idle) lastUpdateNanos = nanos;
+            step(nanos);
+        } else {
+            command(position, nanos);
+        }
+    }
+
+    /**
+     * One loop of the rate limited motion.  Does nothing if there is no rate limit.
+     */
+    public void update() {
+        update(DMTimer.nanoTime());
+    }
+
+    void update(long nanos) {
+        if (maxRate > 0.0 && !Double.isNaN(target)) step(nanos);
+    }
+
+    /**
+     * Move the output towards the target by as much as the rate limit allows since last time
+     */
+    void step(long nanos) {
+        double dt = (nanos - lastUpdateNanos) / 1.0e9;
+        lastUpdateNanos = nanos;
+        if (output == target) return;
+        double maxStep = maxRate * Math.max(0.0, dt);
+        if (Math.abs(target - output) <= maxStep) {
+            command(target, nanos);
+        } else {
+            command(output + Math.signum(target - output) * maxStep, nanos);
+        }
+    }
+
+    /**
+     * Send a position to the servo and bring the estimate up to date
+     */
+    void command(double position, long nanos) {
+        estimate = estimateAt(nanos);
+        estimateNanos = nanos;
+        output = position;
+        servo.setPosition(position);
+    }
+
+    /**
+     * @return  Where we think the servo is at that time
+     */
+    double estimateAt(long nanos) {
+        if (Double.isNaN(output)) return Double.NaN;
+        if (Double.isNaN(estimate)) {
+            // Unknown start -- assume it came from the far end
+            estimate = (output >= 0.5) ? 0.0 : 1.0;
+        }
+        double moved = (nanos - estimateNanos) / 1.0e9 / fullTravelSec;
+        if (Math.abs(output - estimate) <= moved) return output;
+        return estimate + Math.signum(output - estimate) * moved;
+    }
+
+    /**
+     * @return  Where the servo was last told to end up, NaN if never set
+     */
+    public double getPosition() {
+        return target;
+    }
+
+    /**
+     * @return  Where we think the servo is right now, NaN if never set
+     */
+    public double estimatedPosition() {
+        return estimateAt(DMTimer.nanoTime());
+    }
+
+    /**
+     * @return  Estimated time until the servo reaches its target, in msec.  0 once there.
+     */
+    public double millisToArrive() {
+        return millisToArrive(DMTimer.nanoTime());
+    }
+
+    double millisToArrive(long nanos) {
+        if (Double.isNaN(target)) return 0.0;
+        double left = Math.abs(target - estimateAt(nanos)) * fullTravelSec;
+        if (maxRate > 0.0) {
+            // Output still ramping -- the servo can't get there before the output does
+            left = Math.max(left, Math.abs(target - output) / maxRate);
+        }
+        return left * 1000.0;
+    }
+
+    /**
+     * @return  true once the servo should be at its target
+     */
+    public boolean isArrived() {
+        return millisToArrive() <= 0.0;
+    }
+
+    /**
+     * @return  The servo itself, e.g. for reading back what it was sent
+     */
+    public Servo servo() {
+        return servo;
+    }
+}
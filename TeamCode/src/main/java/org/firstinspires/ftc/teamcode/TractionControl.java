@@ -0,0 +1,260 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Traction control for autonomous drives.  Each cycle we work out every drive wheel's speed from
+ * its encoder and check it against what the rest of the robot says is really happening:
+ *
+ *      front vs rear       wheels on the same side are on the same frame rail, so they should
+ *                          turn at the same speed -- the faster one is spinning
+ *      left vs right       the difference between the sides should match how fast the gyro
+ *                          heading turned over the same time, times the track width
+ *      wheels vs IMU       the wheels can't speed up faster than the IMU says the robot is
+ *                          speeding up
+ *
+ * If any check fails we are slipping.  The power limit is cut back while slipping and recovers
+ * when we have grip again, so a move can launch at full power and only back off on a bad
+ * floor.  The counts a wheel spun beyond the other wheel on its side are added up as slip,
+ * so the caller can push that wheel's target out and still drive the right distance.
+ *
+ * Wheel order everywhere is lf, lr, rf, rr to match HardwareDM.
+ */
+public class TractionControl {
+
+    // Slack in the checks, in/sec.  Plus a share of the speed for the front/rear check.
+    public final static double SPEED_MARGIN = 4.0;
+    public final static double SPEED_RATIO = 0.10;
+
+    // Wheels can't speed up more than this faster than the IMU measures, in/sec/sec
+    public final static double ACCEL_MARGIN = 40.0;
+
+    // Power limit is multiplied by this each slipping cycle...
+    public final static double BACKOFF = 0.85;
+
+    // ...down to no less than this
+    public final static double MIN_LIMIT = 0.30;
+
+    // And grows by this much each cycle with grip
+    public final static double RECOVER = 0.05;
+
+    // Don't trust a speed worked out over less time than this
+    public final static double MIN_DT = 0.015;
+
+    final static double INCHES_PER_METER = 39.37;
+    final static int NUM_WHEELS = 4;
+    final static int LF = 0, LR = 1, RF = 2, RR = 3;
+
+    double countsPerInch;
+    double trackWidth;
+
+    /* Per wheel state */
+    int[] lastPos = new int[NUM_WHEELS];
+    double[] speed = new double[NUM_WHEELS];
+    int[] slipCounts = new int[NUM_WHEELS];
+
+    boolean first = true;
+    long lastTime = 0;
+    double lastMeanSpeed = Double.NaN;
+    double lastHeading = Double.NaN;
+
+    double limit = 1.0;
+    boolean slipping = false;
+    int slipCycles = 0;
+
+    /**
+     * Constructor
+     *
+     * @param countsPerInch     Drive encoder counts per inch of travel
+     * @param trackWidth        Inches between left and right wheels
+     */
+    public TractionControl(double countsPerInch, double trackWidth) {
+        this.countsPerInch = countsPerInch;
+        this.trackWidth = trackWidth;
+    }
+
+    /**
+     * Start a new move.  Limit starts at full power.
+     */
+    public void reset() {
+        first = true;
+        limit = 1.0;
+        slipping = false;
+        slipCycles = 0;
+        lastMeanSpeed = Double.NaN;
+        lastHeading = Double.NaN;
+        for (int i = 0; i < NUM_WHEELS; i++) {
+            speed[i] = 0.0;
+            slipCounts[i] = 0;
+        }
+    }
+
+    /**
+     * One control cycle
+     *
+     * @param lf, lr, rf, rr    Drive encoder positions
+     * @param accel             Horizontal acceleration from the IMU in m/sec/sec, NaN if not read
+     * @param heading           Gyro heading in degrees, CCW +ve, NaN if not read.  Only the change
+     *                          matters, so pass one that doesn't get corrected mid move.
+     * @return                  Power limit to apply to the drive, 0 to 1
+     */
+    public double update(int lf, int lr, int rf, int rr, double accel, double heading) {
+        return update(lf, lr, rf, rr, accel, heading, DMTimer.nanoTime());
+    }
+
+    double update(int lf, int lr, int rf, int rr, double accel, double heading, long nanos) {
+        if (first) {
+            first = false;
+            lastPos[LF] = lf;
+            lastPos[LR] = lr;
+            lastPos[RF] = rf;
+            lastPos[RR] = rr;
+            lastTime = nanos;
+            lastHeading = heading;
+            return limit;
+        }
+
+        double dt = (nanos - lastTime) / 1.0e9;
+        if (dt < MIN_DT) return limit;
+
+        int dLF = lf - lastPos[LF];
+        int dLR = lr - lastPos[LR];
+        int dRF = rf - lastPos[RF];
+        int dRR = rr - lastPos[RR];
+        speed[LF] = dLF / countsPerInch / dt;
+        speed[LR] = dLR / countsPerInch / dt;
+        speed[RF] = dRF / countsPerInch / dt;
+        speed[RR] = dRR / countsPerInch / dt;
+
+        boolean slip = false;
+
+        // Front and rear on each side should match -- the faster one is spinning
+        int leftSlip = sideSlip(dLF, dLR, speed[LF], speed[LR]);
+        int rightSlip = sideSlip(dRF, dRR, speed[RF], speed[RR]);
+        if (leftSlip != 0 || rightSlip != 0) slip = true;
+        if (leftSlip > 0) slipCounts[LF] += Math.abs(dLF) - Math.abs(dLR);
+        if (leftSlip < 0) slipCounts[LR] += Math.abs(dLR) - Math.abs(dLF);
+        if (rightSlip > 0) slipCounts[RF] += Math.abs(dRF) - Math.abs(dRR);
+        if (rightSlip < 0) slipCounts[RR] += Math.abs(dRR) - Math.abs(dRF);
+
+        // Side to side difference should match how fast the gyro says we turned over the same
+        // time as the wheel speeds
+        double left = slower(speed[LF], speed[LR]);
+        double right = slower(speed[RF], speed[RR]);
+        if (!Double.isNaN(heading) && !Double.isNaN(lastHeading)) {
+            double yawRate = GyroBiasEstimator.wrap(heading - lastHeading) / dt;
+            double expected = Math.toRadians(yawRate) * trackWidth;
+            if (Math.abs((right - left) - expected) > SPEED_MARGIN + SPEED_RATIO * Math.abs(right + left) / 2.0) {
+                slip = true;
+            }
+        }
+
+        // Wheels can't gain speed faster than the robot does.  Needs two speeds to compare.
+        double meanSpeed = (Math.abs(left) + Math.abs(right)) / 2.0;
+        if (!Double.isNaN(accel) && !Double.isNaN(lastMeanSpeed)) {
+            double wheelAccel = (meanSpeed - lastMeanSpeed) / dt;
+            if (wheelAccel > Math.abs(accel) * INCHES_PER_METER + ACCEL_MARGIN) {
+                slip = true;
+            }
+        }
+        lastMeanSpeed = meanSpeed;
+
+        if (slip) {
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF);
+            slipCycles++;
+        } else {
+            limit = Math.min(1.0, limit + RECOVER);
+        }
+        slipping = slip;
+
+        lastPos[LF] = lf;
+        lastPos[LR] = lr;
+        lastPos[RF] = rf;
+        lastPos[RR] = rr;
+        lastTime = nanos;
+        lastHeading = heading;
+        return limit;
+    }
+
+    /**
+     * Check one side's front and rear wheels
+     *
+     * @return  +1 if the front is spinning, -1 if the rear is, 0 if they agree
+     */
+    int sideSlip(int dFront, int dRear, double front, double rear) {
+        double margin = SPEED_MARGIN + SPEED_RATIO * Math.max(Math.abs(front), Math.abs(rear));
+        if (Math.abs(front - rear) <= margin) return 0;
+        return (Math.abs(dFront) > Math.abs(dRear)) ? 1 : -1;
+    }
+
+    /**
+     * @return  Whichever of two wheel speeds is closer to stopped -- that one has grip
+     */
+    static double slower(double a, double b) {
+        return (Math.abs(a) < Math.abs(b)) ? a : b;
+    }
+
+    /**
+     * @return  Power limit from the last update
+     */
+    public double limit() {
+        return limit;
+    }
+
+    /**
+     * @return  true if the last update saw slip
+     */
+    public boolean isSlipping() {
+        return slipping;
+    }
+
+    /**
+     * @return  Cycles with slip since reset
+     */
+    public int slipCycles() {
+        return slipCycles;
+    }
+
+    /**
+     * Encoder counts a wheel has turned beyond the grip wheel on its side since reset
+     *
+     * @param wheel     0..3 in lf, lr, rf, rr order
+     */
+    public int slipCounts(int wheel) {
+        return slipCounts[wheel];
+    }
+}
@@ -0,0 +1,165 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Heading controller for turning in place.  The plain proportional turn slows down as it gets
+ * close but has nothing to stop it coasting past, and once the power drops below what it takes
+ * to get the drive train moving it just sits there a few degrees off.  So this one adds:
+ *
+ *      damping         the gyro's rotation rate pulls the power back as we swing in, so we can
+ *                      run a stiffer gain without overshooting
+ *      min power       a small push in the direction of the error while we are outside the
+ *                      threshold, enough to get past stiction for the last few degrees
+ *      settling        done only once the error AND the rate are small and have stayed that
+ *                      way for SETTLE_MS, so we don't stop while still swinging through
+ *      timeout         always finishes -- a turn that can't settle gives up instead of eating
+ *                      the rest of autonomous
+ *
+ * Typical use:
+ *      turn.start(speed, PCoeff, timeout);
+ *      while (opModeIsActive() && !turn.isDone()) {
+ *          double power = turn.update(getError(angle), readGyroRate());
+ *          // right side gets +power, left side -power
+ *      }
+ */
+public class TurnController {
+
+    // Damping in power per degree/sec of rotation rate, before scaling by speed
+    public final static double D_TURN_COEFF = 0.0012;
+
+    // Least power that still turns the robot in place
+    public final static double MIN_POWER = 0.10;
+
+    // Settled when within this many degrees...
+    public final static double SETTLE_ERROR = 2.0;
+
+    // ...turning slower than this in degrees/sec...
+    public final static double SETTLE_RATE = 10.0;
+
+    // ...for this long
+    public final static double SETTLE_MS = 60.0;
+
+    double speed;
+    double pCoeff;
+    double timeout;
+    DMTimer turnTimer = new DMTimer();
+    DMTimer settleTimer = new DMTimer();
+    boolean settling = false;
+    boolean done = true;
+    boolean timedOut = false;
+
+    /**
+     * Start a new turn
+     *
+     * @param speed     Most power to use
+     * @param pCoeff    Proportional gain, power per degree before scaling by speed
+     * @param timeout   Seconds before we give up
+     */
+    public void start(double speed, double pCoeff, double timeout) {
+        this.speed = speed;
+        this.pCoeff = pCoeff;
+        this.timeout = timeout;
+        turnTimer.reset();
+        settling = false;
+        done = false;
+        timedOut = false;
+    }
+
+    /**
+     * One control cycle
+     *
+     * @param error     Heading error in degrees, +ve means turn left (CCW)
+     * @param rate      Rotation rate in degrees/sec, +ve is turning left (CCW)
+     * @return          Turn power, +ve turns left.  0 once done.
+     */
+    public double update(double error, double rate) {
+        if (done) return 0.0;
+
+        if (turnTimer.seconds() >= timeout) {
+            done = true;
+            timedOut = true;
+            return 0.0;
+        }
+
+        if (Math.abs(error) <= SETTLE_ERROR && Math.abs(rate) <= SETTLE_RATE) {
+            if (!settling) {
+                settling = true;
+                settleTimer.reset();
+            } else if (settleTimer.milliseconds() >= SETTLE_MS) {
+                done = true;
+                return 0.0;
+            }
+        } else {
+            settling = false;
+        }
+
+        // Close enough to hold -- let it coast to a stop rather than hunting
+        if (Math.abs(error) <= SETTLE_ERROR) return 0.0;
+
+        double power = speed * Range.clip(error * pCoeff - rate * D_TURN_COEFF, -1.0, 1.0);
+
+        // Keep pushing towards the target unless the damping says we are coming in too fast
+        if (power * error > 0 && Math.abs(power) < MIN_POWER) {
+            power = Math.signum(error) * MIN_POWER;
+        }
+        return power;
+    }
+
+    /**
+     * @return  true once settled or timed out
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return  true if the last turn gave up on its timeout
+     */
+    public boolean timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return  Seconds since the turn started
+     */
+    public double elapsed() {
+        return turnTimer.seconds();
+    }
+}
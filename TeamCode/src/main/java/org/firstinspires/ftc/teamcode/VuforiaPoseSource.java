@@ -0,0 +1,214 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.ftccommon.DbgLog;
+import com.vuforia.HINT;
+import com.vuforia.Image;
+import com.vuforia.PIXEL_FORMAT;
+import com.vuforia.Vuforia;
+
+import org.firstinspires.ftc.robotcore.external.ClassFactory;
+import org.firstinspires.ftc.robotcore.external.matrices.OpenGLMatrix;
+import org.firstinspires.ftc.robotcore.external.matrices.VectorF;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaLocalizer;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackable;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackableDefaultListener;
+import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Robot poses from Vuforia tracking the four FTC_2016-17 beacon targets, for BeaconPoseService.
+ * Set up as in ConceptVuforiaNavigation, but with the real target positions and no camera
+ * monitor view (drawing it costs the phone CPU we want for the control loop).  Vuforia is told
+ * to track one target at a time -- we only ever face one beacon.
+ *
+ * Each time we are asked for a pose we also take the newest camera frame, if there is one, and
+ * run it through a BeaconClassifier.  That happens on the BeaconPoseService thread, so the
+ * beacon colors are there for the taking by the time the robot stops at the line.
+ */
+public class VuforiaPoseSource implements BeaconPoseService.PoseSource {
+
+    final static float MM_PER_INCH = 25.4f;
+    final static float FIELD_WIDTH = (float) BeaconPoseService.FIELD_WIDTH_MM;
+
+    // Target centers along their walls, in inches
+    final static float[] TARGET_ALONG_WALL = {12, 36, -36, -12};
+
+    // Where the phone is on the robot: right hand side, screen in, landscape.  In mm.
+    public final static float PHONE_X = 9 * MM_PER_INCH;
+    public final static float PHONE_Y = 0;
+    public final static float PHONE_Z = 0;
+
+    final String licenseKey;
+
+    VuforiaLocalizer vuforia = null;
+    VuforiaTrackables targets = null;
+    VuforiaTrackableDefaultListener[] listeners = new VuforiaTrackableDefaultListener[BeaconPoseService.TARGET_NAMES.length];
+
+    /* Beacon colors from the camera frames */
+    final BeaconClassifier classifier = new BeaconClassifier();
+    volatile BeaconClassifier.Reading beacon = null;
+    volatile File saveFile = null;
+
+    /**
+     * @param licenseKey    Vuforia license key
+     */
+    public VuforiaPoseSource(String licenseKey) {
+        this.licenseKey = licenseKey;
+    }
+
+    @Override
+    public void start() {
+        VuforiaLocalizer.Parameters parameters = new VuforiaLocalizer.Parameters();
+        parameters.vuforiaLicenseKey = licenseKey;
+        parameters.cameraDirection = VuforiaLocalizer.CameraDirection.BACK;
+        vuforia = ClassFactory.createVuforiaLocalizer(parameters);
+        Vuforia.setHint(HINT.HINT_MAX_SIMULTANEOUS_IMAGE_TARGETS, 1);
+
+        // Only ever keep the newest frame, as RGB565 for the beacon classifier
+        Vuforia.setFrameFormat(PIXEL_FORMAT.RGB565, true);
+        vuforia.setFrameQueueCapacity(1);
+
+        OpenGLMatrix phoneLocation = OpenGLMatrix
+                .translation(PHONE_X, PHONE_Y, PHONE_Z)
+                .multiplied(Orientation.getRotationMatrix(
+                        AxesReference.EXTRINSIC, AxesOrder.YZY, AngleUnit.DEGREES, -90, 0, 0));
+
+        targets = vuforia.loadTrackablesFromAsset("FTC_2016-17");
+        for (int i = 0; i < listeners.length; i++) {
+            VuforiaTrackable target = targets.get(i);
+            target.setName(BeaconPoseService.TARGET_NAMES[i]);
+            target.setLocation(targetLocation(i));
+            listeners[i] = (VuforiaTrackableDefaultListener) target.getListener();
+            listeners[i].setPhoneInformation(phoneLocation, parameters.cameraDirection);
+        }
+        targets.activate();
+        DbgLog.msg("DM10337 -- Vuforia tracking beacon targets");
+    }
+
+    /**
+     * Blue targets stand upright on the +Y wall facing in, red ones on the -X wall
+     */
+    static OpenGLMatrix targetLocation(int target) {
+        float along = TARGET_ALONG_WALL[target] * MM_PER_INCH;
+        if (target == BeaconPoseService.WHEELS || target == BeaconPoseService.LEGOS) {
+            return OpenGLMatrix.translation(along, FIELD_WIDTH / 2, 0)
+                    .multiplied(Orientation.getRotationMatrix(
+                            AxesReference.EXTRINSIC, AxesOrder.XZX, AngleUnit.DEGREES, 90, 0, 0));
+        }
+        return OpenGLMatrix.translation(-FIELD_WIDTH / 2, along, 0)
+                .multiplied(Orientation.getRotationMatrix(
+                        AxesReference.EXTRINSIC, AxesOrder.XZX, AngleUnit.DEGREES, 90, 90, 0));
+    }
+
+    @Override
+    public BeaconPoseService.Pose read(long nanos) {
+        classifyFrame(nanos);
+
+        for (int i = 0; i < listeners.length; i++) {
+            OpenGLMatrix location = listeners[i].getUpdatedRobotLocation();
+            if (location == null) continue;
+
+            VectorF translation = location.getTranslation();
+            Orientation orientation = Orientation.getOrientation(location,
+                    AxesReference.EXTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
+            return new BeaconPoseService.Pose(nanos, i, translation.get(0), translation.get(1),
+                    orientation.thirdAngle);
+        }
+        return null;
+    }
+
+    /**
+     * Classify the newest camera frame, if there is one
+     */
+    void classifyFrame(long nanos) {
+        VuforiaLocalizer.CloseableFrame frame = vuforia.getFrameQueue().poll();
+        if (frame == null) return;
+        try {
+            for (int i = 0; i < frame.getNumImages(); i++) {
+                Image image = frame.getImage(i);
+                if (image.getFormat() != PIXEL_FORMAT.RGB565) continue;
+
+                ByteBuffer pixels = image.getPixels();
+                beacon = classifier.classify(pixels, image.getWidth(), image.getHeight(), image.getStride(), nanos);
+
+                File file = saveFile;
+                if (file != null) {
+                    saveFile = null;
+                    try {
+                        BeaconClassifier.writeFrame(file, pixels, image.getWidth(), image.getHeight(), image.getStride());
+                    } catch (IOException e) {
+                        DbgLog.error("DM10337 -- Could not save frame: " + e.getMessage());
+                    }
+                }
+                break;
+            }
+        } finally {
+            frame.close();
+        }
+    }
+
+    /**
+     * @param maxAgeMs  Oldest reading worth having
+     * @return          Beacon colors from the newest frame if it is recent enough, else null
+     */
+    public BeaconClassifier.Reading beacon(double maxAgeMs) {
+        BeaconClassifier.Reading reading = beacon;
+        if (reading == null || DMTimer.nanoTime() - reading.nanos > maxAgeMs * 1.0e6) return null;
+        return reading;
+    }
+
+    /**
+     * Save the next frame we classify, to build up test pictures for BeaconClassifier
+     */
+    public void saveNextFrame(File file) {
+        saveFile = file;
+    }
+
+    @Override
+    public void stop() {
+        if (targets != null) targets.deactivate();
+    }
+}
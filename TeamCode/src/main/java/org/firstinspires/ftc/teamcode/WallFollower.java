@@ -0,0 +1,193 @@
+/*
+Copyright (c) 2017 Dark Matter FTC 10337
+
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted (subject to the limitations in the disclaimer below) provided that
+the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list
+of conditions and the following disclaimer.
+
+Redistributions in binary form must reproduce the above copyright notice, this
+list of conditions and the following disclaimer in the documentation and/or
+other materials provided with the distribution.
+
+Neither the name of Robert Atkinson nor the names of his contributors may be used to
+endorse or promote products derived from this software without specific prior
+written permission.
+
+NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY THIS
+LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESSFOR A PARTICULAR PURPOSE
+ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import com.qualcomm.robotcore.util.Range;
+
+/**
+ * This is NOT an opmode.
+ *
+ * Holds the robot a set distance from a wall while driving along it.  The distance off the wall
+ * and the heading are really one problem: the only way to move sideways is to angle towards or
+ * away from the wall, and how fast we close on it is our speed times the sine of that angle.
+ * So instead of jumping the heading target whenever the range is a whole cm off, we work out
+ * a heading offset from both the range error and how fast the range is changing:
+ *
+ *      offset = -direction * (P_RANGE * rangeError + D_RANGE * rangeRate)
+ *
+ * The range rate comes from two places.  Differencing the range sensor is direct but it only
+ * reads whole cm and drops out now and then.  Speed times sin(heading offset) is smooth but
+ * doesn't know about the wall being crooked.  We blend the two, leaning on the heading.
+ *
+ * The offset is continuous, so there is no flip-flopping at a threshold, and the damping lets
+ * us follow the wall at a higher speed without weaving.
+ */
+public class WallFollower {
+
+    // Degrees of heading offset per cm off the wall
+    public final static double P_RANGE = 1.25;
+
+    // Degrees of heading offset per cm/sec of closing speed
+    public final static double D_RANGE = 0.35;
+
+    // Never angle more than this off the wall heading
+    public final static double MAX_OFFSET = 15.0;
+
+    // Share of the range rate taken from the range sensor, the rest from speed and heading
+    public final static double SENSOR_WEIGHT = 0.2;
+
+    // Low pass on the range rate, 0..1 -- higher follows faster
+    public final static double RATE_FILTER = 0.5;
+
+    // Range readings past this are no echo, and jumps bigger than this are noise
+    public final static double MAX_RANGE = 200.0;
+    public final static double MAX_JUMP = 10.0;
+
+    // After this many good echoes in a row that all jump, believe them and start over from there
+    public final static int MAX_REJECTS = 5;
+
+    final static double CM_PER_INCH = 2.54;
+
+    double target;
+    double direction;
+
+    /* State from the last update */
+    boolean first = true;
+    long lastTime = 0;
+    boolean haveRange = false;
+    double lastRange = 0.0;
+    long lastRangeTime = 0;
+    int rejects = 0;
+    double lastTravel = 0.0;
+    double speed = 0.0;
+    double rate = 0.0;
+    double rangeError = 0.0;
+
+    /**
+     * Start following a wall
+     *
+     * @param target        Distance to hold from the wall in cm
+     * @param direction     +1 driving forward, -1 driving backward
+     */
+    public void start(double target, double direction) {
+        this.target = target;
+        this.direction = Math.signum(direction);
+        first = true;
+        haveRange = false;
+        rejects = 0;
+        rate = 0.0;
+        speed = 0.0;
+        rangeError = 0.0;
+    }
+
+    /**
+     * One control cycle
+     *
+     * @param range         Range sensor reading in cm
+     * @param headingOffset Actual heading minus the wall heading, in degrees
+     * @param travel        Distance driven so far in inches (average of the drive encoders)
+     * @return              Heading offset to steer to, in degrees from the wall heading
+     */
+    public double update(double range, double headingOffset, double travel) {
+        return update(range, headingOffset, travel, DMTimer.nanoTime());
+    }
+
+    double update(double range, double headingOffset, double travel, long nanos) {
+        // A reading is good if it is close to the last good one.  Without one to compare to --
+        // or once readings have jumped MAX_REJECTS times running -- take it as a new start.
+        boolean valid = range > 0.0 && range < MAX_RANGE;
+        boolean rangeOK = false;
+        boolean reseed = false;
+        if (valid && haveRange && Math.abs(range - lastRange) <= MAX_JUMP) {
+            rangeOK = true;
+            rejects = 0;
+        } else if (valid && (!haveRange || ++rejects >= MAX_REJECTS)) {
+            reseed = true;
+            rejects = 0;
+        }
+
+        if (first) {
+            first = false;
+            lastTime = nanos;
+            lastTravel = travel;
+            if (reseed) newRange(range, nanos);
+            return offset();
+        }
+
+        double dt = (nanos - lastTime) / 1.0e9;
+        if (dt <= 0.0) return offset();
+
+        // Speed along the wall in cm/sec, signed with the drive direction
+        speed = (travel - lastTravel) * CM_PER_INCH / dt;
+        double headingRate = speed * Math.sin(Math.toRadians(headingOffset));
+
+        double measured = headingRate;
+        if (rangeOK) {
+            double rangeDt = (nanos - lastRangeTime) / 1.0e9;
+            measured = SENSOR_WEIGHT * (range - lastRange) / rangeDt + (1.0 - SENSOR_WEIGHT) * headingRate;
+        }
+        if (rangeOK || reseed) newRange(range, nanos);
+        rate += RATE_FILTER * (measured - rate);
+
+        lastTime = nanos;
+        lastTravel = travel;
+        return offset();
+    }
+
+    void newRange(double range, long nanos) {
+        haveRange = true;
+        lastRange = range;
+        lastRangeTime = nanos;
+        rangeError = range - target;
+    }
+
+    double offset() {
+        return Range.clip(-direction * (P_RANGE * rangeError + D_RANGE * rate), -MAX_OFFSET, MAX_OFFSET);
+    }
+
+    /**
+     * @return  cm off the target distance at the last good reading, +ve is too far from the wall
+     */
+    public double rangeError() {
+        return rangeError;
+    }
+
+    /**
+     * @return  Estimated closing speed in cm/sec, +ve is moving away from the wall
+     */
+    public double rangeRate() {
+        return rate;
+    }
+}